@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2016, Michael Thorsager <thorsager@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice, this
+ *    list of conditions and the following disclaimer in the documentation and/or
+ *    other materials provided with the distribution.
+ *
+ *  * Neither the name of Open Solutions nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.krakow.jnettelnet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of telnet option handling: building option replies with
+ * <code>SessionOptionList</code>, and decoding received data interleaved
+ * with option negotiations and subnegotiations with <code>TelnetDecoder</code>.
+ *
+ * @author Michael Thorsager &lt;thorsager@gmail.com&gt;
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OptionBenchmark {
+
+	/** Number of option negotiations in the data */
+	@Param({"4", "64"})
+	public int options;
+
+	/** Bytes of plain data following each negotiation */
+	@Param({"80"})
+	public int spacing;
+
+	private byte[] received;
+	private byte[] work;
+	private TelnetDecoder decoder;
+
+	@Setup
+	public void setup() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for (int i = 0; i < options; i++) {
+			int option = i % 40;
+			if (i % 4 == 3) {
+				// Subnegotiation with an escaped IAC in the parameters
+				out.write(TelnetDecoder.IAC);
+				out.write(TelnetDecoder.SB);
+				out.write(option);
+				out.write(1);
+				out.write(TelnetDecoder.IAC);
+				out.write(TelnetDecoder.IAC);
+				out.write(TelnetDecoder.IAC);
+				out.write(TelnetDecoder.SE);
+			} else {
+				out.write(TelnetDecoder.IAC);
+				out.write(i % 2 == 0 ? TelnetDecoder.DO : TelnetDecoder.WILL);
+				out.write(option);
+			}
+			for (int j = 0; j < spacing; j++) {
+				out.write(j % 64 == 63 ? '\n' : 'a' + j % 26);
+			}
+		}
+		received = out.toByteArray();
+		work = new byte[received.length];
+		decoder = new TelnetDecoder(new TelnetDecoder.Listener() {
+			@Override
+			public boolean acceptLocal(int option) {
+				return false;
+			}
+
+			@Override
+			public boolean acceptRemote(int option) {
+				return false;
+			}
+
+			@Override
+			public void onOptionChanged(int option, boolean local, boolean enabled) {
+			}
+
+			@Override
+			public void onSubnegotiation(int option, byte[] data, int off, int len) {
+			}
+
+			@Override
+			public void send(byte[] data, int off, int len) {
+			}
+		});
+	}
+
+	/**
+	 * Build the replies to the options, the way the legacy
+	 * <code>SessionOptionHandler</code> bridge does
+	 */
+	@Benchmark
+	public byte[] optionList() {
+		SessionOptionList list = new SessionOptionList();
+		for (int i = 0; i < options; i++) {
+			list.add(new SessionOption(SessionOption.WONT, i % 40));
+		}
+		return list.getBytes();
+	}
+
+	/**
+	 * Decode the data in place, includes copying it into the work buffer
+	 */
+	@Benchmark
+	public int decode() throws Exception {
+		System.arraycopy(received, 0, work, 0, received.length);
+		return decoder.decode(work, 0, work.length);
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2016, Michael Thorsager <thorsager@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice, this
+ *    list of conditions and the following disclaimer in the documentation and/or
+ *    other materials provided with the distribution.
+ *
+ *  * Neither the name of Open Solutions nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.krakow.jnettelnet;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of looking for the prompt, with the prompt pattern of each vendor
+ * session.
+ * <p>
+ * The <i>regex</i> benchmarks run the pattern over the whole line, as the
+ * original read path did for every line. The <i>matcher</i> benchmarks add
+ * the line a character at the time and check for a prompt after each, as
+ * the read path does now, using <code>PromptMatcher</code>.
+ * </p>
+ *
+ * @author Michael Thorsager &lt;thorsager@gmail.com&gt;
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PromptPatternBenchmark {
+
+	private static final String OUTPUT_LINE = " description Uplink to dist-sw02 GigabitEthernet1/0/48 (trunk, 802.1q)";
+
+	@Param({"CiscoSession", "BrocadeSession", "OmniStackSession", "AlliedTelesisSession"})
+	public String vendor;
+
+	private Pattern pattern;
+	private String prompt;
+	private StringBuilder line;
+	private PromptMatcher matcher;
+
+	@Setup
+	public void setup() throws Exception {
+		Field field = Class.forName("dk.krakow.jnettelnet." + vendor).getDeclaredField("PROMPT_PATTERN");
+		field.setAccessible(true);
+		pattern = Pattern.compile((String) field.get(null));
+		prompt = "AlliedTelesisSession".equals(vendor) ? "Manager core-sw01-->" : "core-sw01#";
+		line = new StringBuilder(256);
+		matcher = new PromptMatcher(pattern, line);
+	}
+
+	@Benchmark
+	public boolean regexOutputLine() {
+		return pattern.matcher(OUTPUT_LINE).find();
+	}
+
+	@Benchmark
+	public boolean regexPromptLine() {
+		return pattern.matcher(prompt).find();
+	}
+
+	@Benchmark
+	public boolean matcherOutputLine() {
+		return scan(OUTPUT_LINE);
+	}
+
+	@Benchmark
+	public boolean matcherPromptLine() {
+		return scan(prompt);
+	}
+
+	private boolean scan(String text) {
+		line.setLength(0);
+		for (int i = 0; i < text.length(); i++) {
+			line.append(text.charAt(i));
+			if (matcher.find()) return true;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2016, Michael Thorsager <thorsager@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice, this
+ *    list of conditions and the following disclaimer in the documentation and/or
+ *    other materials provided with the distribution.
+ *
+ *  * Neither the name of Open Solutions nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.krakow.jnettelnet;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Throughput of the <code>Session</code> read path, reading the output of a
+ * command up to the prompt, from a recorded transcript.
+ * <p>
+ * Besides operations per second, the <i>bytes</i> and <i>lines</i> counters
+ * report the read rate in bytes and lines per second. Run with
+ * <code>-prof gc</code> and divide <i>gc.alloc.rate.norm</i> by the lines
+ * of the transcript, to get the allocations per line.
+ * </p>
+ *
+ * @author Michael Thorsager &lt;thorsager@gmail.com&gt;
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReadBenchmark {
+
+	@Param({"cisco-show-running", "brocade-show-interfaces-brief"})
+	public String transcript;
+
+	/** Bytes returned by each read, 1460 is a typical TCP segment */
+	@Param({"1460", "65536"})
+	public int segment;
+
+	@Param({"1048576"})
+	public int size;
+
+	/** Whether the prompt is learned, as the vendor sessions do after login */
+	@Param({"false", "true"})
+	public boolean learnPrompt;
+
+	private Transcript output;
+	private Transcript.Replay input;
+	private CiscoSession session;
+
+	/**
+	 * Bytes and lines read, reported per second by JMH.
+	 */
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	@State(Scope.Thread)
+	public static class Counters {
+		public long bytes;
+		public long lines;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			bytes = 0;
+			lines = 0;
+		}
+	}
+
+	@Setup
+	public void setup() throws IOException {
+		output = new Transcript(transcript, "show running", "core-sw01#", size);
+		input = output.replay(segment);
+		session = new CiscoSession("localhost", 23);
+		session.input = input;
+		session.output = new Transcript.Discard();
+		if (learnPrompt) {
+			session._learnPrompt();
+			session._read2prompt(); // learns the prompt
+			input.rewind();
+		}
+	}
+
+	/**
+	 * Stream the lines to a handler, the cheapest way to read
+	 */
+	@Benchmark
+	public String read2promptHandler(Counters counters, final Blackhole bh) throws IOException {
+		input.rewind();
+		String prompt = session._read2prompt(new LineHandler() {
+			@Override
+			public void onLine(CharSequence line) {
+				bh.consume(line);
+			}
+		});
+		counters.bytes += output.getData().length;
+		counters.lines += output.getLines();
+		return prompt;
+	}
+
+	/**
+	 * Collect the lines as Strings, like <code>cmd(String)</code>
+	 */
+	@Benchmark
+	public Object read2prompt(Counters counters) throws IOException {
+		input.rewind();
+		Object data = session._read2prompt();
+		counters.bytes += output.getData().length;
+		counters.lines += output.getLines();
+		return data;
+	}
+
+	/**
+	 * Read line by line, as the original read path did
+	 */
+	@Benchmark
+	public void readln(Counters counters, Blackhole bh) throws IOException {
+		input.rewind();
+		for (int i = 0; i <= output.getLines(); i++) {
+			bh.consume(session._readln());
+		}
+		counters.bytes += output.getData().length;
+		counters.lines += output.getLines();
+	}
+}
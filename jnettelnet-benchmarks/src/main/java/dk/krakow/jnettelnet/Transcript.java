@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2016, Michael Thorsager <thorsager@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice, this
+ *    list of conditions and the following disclaimer in the documentation and/or
+ *    other materials provided with the distribution.
+ *
+ *  * Neither the name of Open Solutions nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.krakow.jnettelnet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Recorded device output, replayed to a <code>Session</code> in place of the
+ * socket streams.
+ *
+ * @author Michael Thorsager &lt;thorsager@gmail.com&gt;
+ */
+final class Transcript {
+
+	private final byte[] data;
+	private final int lines;
+
+	/**
+	 * Build the output of a command, from a transcript resource repeated
+	 * until it holds at least <code>size</code> bytes.
+	 * @param name name of the transcript, in the <i>transcripts</i> resource folder
+	 * @param command command echoed before the output
+	 * @param prompt prompt following the output
+	 * @param size min. size of the output
+	 * @throws IOException if the transcript can not be read
+	 */
+	Transcript(String name, String command, String prompt, int size) throws IOException {
+		byte[] body = load(name);
+		ByteArrayOutputStream out = new ByteArrayOutputStream(size + body.length + 256);
+		out.write((command + "\r\n").getBytes("ISO-8859-1"));
+		int n = 1;
+		do {
+			for (byte b : body) {
+				if (b == '\n') {
+					out.write('\r');
+					n++;
+				}
+				out.write(b);
+			}
+		} while (out.size() < size);
+		out.write(prompt.getBytes("ISO-8859-1"));
+		this.data = out.toByteArray();
+		this.lines = n;
+	}
+
+	/**
+	 * @return the raw bytes, as sent by the device
+	 */
+	byte[] getData() {
+		return data;
+	}
+
+	/**
+	 * @return number of lines before the prompt, including the echo of the command
+	 */
+	int getLines() {
+		return lines;
+	}
+
+	/**
+	 * Create a stream replaying the transcript, a segment at the time.
+	 * @param segment max. bytes returned by a read, like a TCP segment
+	 * @return stream
+	 */
+	Replay replay(int segment) {
+		return new Replay(data, segment);
+	}
+
+	private static byte[] load(String name) throws IOException {
+		InputStream in = Transcript.class.getResourceAsStream("transcripts/" + name + ".txt");
+		if (in == null) throw new IOException("No such transcript: " + name);
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buf = new byte[4096];
+			int n;
+			while ((n = in.read(buf)) != -1) {
+				out.write(buf, 0, n);
+			}
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Stream replaying a transcript, which can be rewound between benchmark operations.
+	 */
+	static final class Replay extends InputStream {
+		private final byte[] data;
+		private final int segment;
+		private int pos = 0;
+
+		Replay(byte[] data, int segment) {
+			this.data = data;
+			this.segment = segment;
+		}
+
+		void rewind() {
+			pos = 0;
+		}
+
+		@Override
+		public int read() {
+			return pos < data.length ? data[pos++] & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (pos == data.length) return -1;
+			int n = Math.min(Math.min(len, segment), data.length - pos);
+			System.arraycopy(data, pos, b, off, n);
+			pos += n;
+			return n;
+		}
+
+		@Override
+		public int available() {
+			return 0; // Like a socket, nothing more until the next segment arrives
+		}
+	}
+
+	/**
+	 * Output stream throwing away everything written.
+	 */
+	static final class Discard extends OutputStream {
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	}
+}
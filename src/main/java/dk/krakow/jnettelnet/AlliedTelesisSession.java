@@ -37,17 +37,20 @@ import java.util.regex.Pattern;
  * authentication and such.
  * <p>
  * Please note that this Class has an Internal <code>SessionOptionHandler</code>
- * that will automatically turn of anything the server wants it to do. This means
- * that no Terminal size negotiation will take place.
+ * that will automatically turn of anything the server wants it to do, except
+ * for the Terminal size (NAWS), which is offered so the remote host will not page
+ * the output. If the remote host refuses the Terminal size, any pages are
+ * answered as they are read.
  * </p>
  *
  *
  * @author Michael Thorsager &lt;thorsager@gmail.com&gt;
  */
-public class AlliedTelesisSession extends Session implements SessionOptionHandler {
+public class AlliedTelesisSession extends Session implements CommandSession, SessionOptionHandler {
 
 	/** String Containing the regex. to find prompts */
 	private static final String PROMPT_PATTERN = "(Login:|Password:|-->)$" ;
+	private static final String PAGER_PATTERN = "\\s?(--More--|Press any key to continue \\(Q to quit\\))\\s?$";
 
 	private boolean authenticated = false;
 
@@ -57,6 +60,8 @@ public class AlliedTelesisSession extends Session implements SessionOptionHandle
 	 */
 	public AlliedTelesisSession(String hostname) {
         super(hostname, null, null,Pattern.compile(PROMPT_PATTERN));
+		_setWindowSize(DEFAULT_WINDOW_WIDTH, DEFAULT_WINDOW_HEIGHT);
+		setPagerPattern(Pattern.compile(PAGER_PATTERN));
 	}
 
 	/**
@@ -68,6 +73,8 @@ public class AlliedTelesisSession extends Session implements SessionOptionHandle
 	public AlliedTelesisSession(String hostname, Integer port) {
 		super(hostname, port, null,Pattern.compile(PROMPT_PATTERN));
 		this.setSessionOptionHandler(this);
+		_setWindowSize(DEFAULT_WINDOW_WIDTH, DEFAULT_WINDOW_HEIGHT);
+		setPagerPattern(Pattern.compile(PAGER_PATTERN));
 	}
 
 	/**
@@ -85,6 +92,7 @@ public class AlliedTelesisSession extends Session implements SessionOptionHandle
 	 */
 	public void login(String username, String password) throws SessionException, IOException {
 		if ( ! socket.isConnected() ) throw new SessionException("Not Connected!");
+		long started = System.nanoTime();
 		ReadData read = _read2prompt();
 
 		if ( read.getPrompt().equals("Login:") ) {
@@ -103,26 +111,19 @@ public class AlliedTelesisSession extends Session implements SessionOptionHandle
 			throw new SessionException("Authentication failed") ;
 		} else  {
 			authenticated = true;
+			_loggedIn(started);
 		}
 
 	}
 
 	/**
-	 * Execute a command on the remote host, and retrieve the resulting
-	 * output.
-	 * @param command Command line to be executed on remote host
-	 * @return Remote host output
-	 * @throws SessionException If unable to execute command.
+	 * Allied Telesis devices have no enabled mode, logging in as a manager
+	 * already gives full privileges.
+	 * @param password not used
+	 * @throws SessionException always, as enable is not supported.
 	 */
-	public String[] cmd(String command) throws SessionException {
-		try {
-			_sendln(command);
-			ReadData read = _read2prompt();
-			if (!read.isEmpty() && read.get(0).equals(command) ) read.remove(0);
-			return read.getDataAsStringArray();
-		} catch (IOException ex) {
-			throw new SessionException("Unable to send command",ex);
-		}
+	public void enable(String password) throws SessionException {
+		throw new SessionException("Allied Telesis devices have no enabled mode");
 	}
 
 	/**
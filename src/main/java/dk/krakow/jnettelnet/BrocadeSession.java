@@ -42,20 +42,23 @@ import java.util.regex.Pattern;
  * authentication and such.
  * <p>
  * Please note that this Class has an Internal <code>SessionOptionHandler</code>
- * that will automatically turn of anything the server wants it to do. This means
- * that no Terminal size negotiation will take place.
+ * that will automatically turn of anything the server wants it to do, except
+ * for the Terminal size (NAWS), which is offered so the remote host will not page
+ * the output. If the remote host refuses the Terminal size, paging is turned
+ * off with "terminal length 0" after login.
  * </p>
  *
  *
  * @author Michael Thorsager &lt;thorsager@gmail.com&gt;
  */
-public class BrocadeSession extends Session implements SessionOptionHandler {
+public class BrocadeSession extends Session implements CommandSession, SessionOptionHandler {
 
 	/** String that is the last char of an Enabled prompt */
 	private static final String ENABLED_PROMPT_CHR = "#";
 
 	/** String Containing the regex. to find prompts */
 	private static final String PROMPT_PATTERN = "(User:|Password:|\\w+[>#]|\\w+\\(config\\)#|\\w+\\(config-\\w+\\)#)$" ;
+	private static final String PAGER_PATTERN = "\\s?--More--(, next page: Space, next line: Return key, quit: Control-c)?\\s?$";
 
 	private boolean authenticated = false;
 	private boolean enabled = false;
@@ -66,6 +69,8 @@ public class BrocadeSession extends Session implements SessionOptionHandler {
 	 */
 	public BrocadeSession(String hostname) {
         super(hostname, null, null,Pattern.compile(PROMPT_PATTERN));
+		_setWindowSize(DEFAULT_WINDOW_WIDTH, DEFAULT_WINDOW_HEIGHT);
+		setPagerPattern(Pattern.compile(PAGER_PATTERN));
 	}
 
 	/**
@@ -77,6 +82,8 @@ public class BrocadeSession extends Session implements SessionOptionHandler {
 	public BrocadeSession(String hostname, Integer port) {
 		super(hostname, port, null,Pattern.compile(PROMPT_PATTERN));
 		this.setSessionOptionHandler(this);
+		_setWindowSize(DEFAULT_WINDOW_WIDTH, DEFAULT_WINDOW_HEIGHT);
+		setPagerPattern(Pattern.compile(PAGER_PATTERN));
 	}
 
 	/**
@@ -94,14 +101,13 @@ public class BrocadeSession extends Session implements SessionOptionHandler {
 	 */
 	public void login(String username, String password) throws SessionException, IOException {
 		if ( ! socket.isConnected() ) throw new SessionException("Not Connected!");
+		long started = System.nanoTime();
 		ReadData read = _read2prompt();
 
-        System.out.println(read);
-
 		if ( read.getPrompt().endsWith("User:") ) {
 			if ( username == null ) throw new SessionException("Need username to Authenticate");
 			_sendln(username);
-			_read2prompt();
+			read = _read2prompt();
 		}
 
 		if ( read.getPrompt().equals("Password:")) {
@@ -113,30 +119,14 @@ public class BrocadeSession extends Session implements SessionOptionHandler {
 		if ( read.getPrompt().endsWith("User:") || read.getPrompt().equals("Password:") ) {
 			throw new SessionException("Authentication failed") ;
 		} else  {
-            cmd("terminal length 0");
+			if ( ! _isWindowSizeNegotiated() ) cmd("terminal length 0");
 			authenticated = true;
+			_loggedIn(started);
+			_learnPrompt();
 		}
 
 	}
 
-	/**
-	 * Execute a command on the remote host, and retrieve the resulting
-	 * output.
-	 * @param command Command line to be executed on remote host
-	 * @return Remote host output
-	 * @throws dk.krakow.jnettelnet.SessionException If unable to execute command.
-	 */
-	public String[] cmd(String command) throws SessionException {
-		try {
-			_sendln(command);
-			ReadData read = _read2prompt();
-			if ( read.get(0).equals(command) ) read.remove(0);
-			return read.getDataAsStringArray();
-		} catch (IOException ex) {
-			throw new SessionException("Unable to send command",ex);
-		}
-	}
-
 	/**
 	 * Switch to enabled mode on remote host
 	 * @param password enable secret to be used on the remote host
@@ -155,6 +145,7 @@ public class BrocadeSession extends Session implements SessionOptionHandler {
 				throw new SessionException("Failed to enable");
 			} else {
 				enabled = true;
+				_learnPrompt();
 			}
 
 		} catch (IOException ex) {
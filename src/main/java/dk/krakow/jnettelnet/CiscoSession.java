@@ -37,23 +37,26 @@ import java.util.regex.Pattern;
  * authentication and such.
  * <p>
  * Please note that this Class has an Internal <code>SessionOptionHandler</code>
- * that will automatically turn of anything the server wants it to do. This means
- * that no Terminal size negotiation will take place.
+ * that will automatically turn of anything the server wants it to do, except
+ * for the Terminal size (NAWS), which is offered so the remote host will not page
+ * the output. If the remote host refuses the Terminal size, paging is turned
+ * off with "terminal length 0" after login.
  * </p>
  *
  *
  * @author Michael Thorsager &lt;thorsager@gmail.com&gt;
  */
-public class CiscoSession extends dk.krakow.jnettelnet.Session implements SessionOptionHandler {
+public class CiscoSession extends dk.krakow.jnettelnet.Session implements CommandSession, SessionOptionHandler {
 
 	/** String that is the last char of an Enabled prompt */
-	private static final String ENABLED_PROMPT_CHR = "#";
+	static final String ENABLED_PROMPT_CHR = "#";
 
 	/** String Containing the regex. to find prompts */
-	private static final String PROMPT_PATTERN = "([Uu]sername:|[Uu]ser:|[Pp]assword:|\\w+[>#]|\\w+\\(config\\)#|\\w+\\(config-\\w+\\)#)\\s?$" ;
+	static final String PROMPT_PATTERN = "([Uu]sername:|[Uu]ser:|[Pp]assword:|\\w+[>#]|\\w+\\(config\\)#|\\w+\\(config-\\w+\\)#)\\s?$" ;
+	private static final String PAGER_PATTERN = "\\s?--More--\\s?$";
 
-	private static final String USER_PROMPT_PATTERN = "([Uu]ser:|[Uu]sername:)\\s?$";
-	private static final String PASSWORD_PROMPT_PATTERN = "([Pp]assword:)\\s?$";
+	static final String USER_PROMPT_PATTERN = "([Uu]ser:|[Uu]sername:)\\s?$";
+	static final String PASSWORD_PROMPT_PATTERN = "([Pp]assword:)\\s?$";
 
 	private boolean authenticated = false;
 	private boolean enabled = false;
@@ -68,6 +71,8 @@ public class CiscoSession extends dk.krakow.jnettelnet.Session implements Sessio
 	 */
 	public CiscoSession(String hostname) {
         super(hostname, null, null,Pattern.compile(PROMPT_PATTERN));
+		_setWindowSize(DEFAULT_WINDOW_WIDTH, DEFAULT_WINDOW_HEIGHT);
+		setPagerPattern(Pattern.compile(PAGER_PATTERN));
 	}
 
 	/**
@@ -79,6 +84,8 @@ public class CiscoSession extends dk.krakow.jnettelnet.Session implements Sessio
 	public CiscoSession(String hostname, Integer port) {
 		super(hostname, port, null,Pattern.compile(PROMPT_PATTERN));
 		this.setSessionOptionHandler(this);
+		_setWindowSize(DEFAULT_WINDOW_WIDTH, DEFAULT_WINDOW_HEIGHT);
+		setPagerPattern(Pattern.compile(PAGER_PATTERN));
 	}
 
 	/**
@@ -96,6 +103,7 @@ public class CiscoSession extends dk.krakow.jnettelnet.Session implements Sessio
 	 */
 	public void login(String username, String password) throws SessionException, IOException {
 		if ( ! socket.isConnected() ) throw new SessionException("Not Connected!");
+		long started = System.nanoTime();
 		ReadData read = _read2prompt();
 
 
@@ -114,30 +122,14 @@ public class CiscoSession extends dk.krakow.jnettelnet.Session implements Sessio
 		if ( userPromptPattern.matcher(read.getPrompt()).find() || passwordPromptPattern.matcher(read.getPrompt()).find() ) {
 			throw new SessionException("Authentication failed") ;
 		} else  {
-            cmd("terminal length 0");
+			if ( ! _isWindowSizeNegotiated() ) cmd("terminal length 0");
 			authenticated = true;
+			_loggedIn(started);
+			_learnPrompt();
 		}
 
 	}
 
-	/**
-	 * Execute a command on the remote host, and retrieve the resulting
-	 * output.
-	 * @param command Command line to be executed on remote host
-	 * @return Remote host output
-	 * @throws SessionException If unable to execute command.
-	 */
-	public String[] cmd(String command) throws SessionException {
-		try {
-			_sendln(command);
-			ReadData read = _read2prompt();
-			if ( read.get(0).equals(command) ) read.remove(0);
-			return read.getDataAsStringArray();
-		} catch (IOException ex) {
-			throw new SessionException("Unable to send command",ex);
-		}
-	}
-
 	/**
 	 * Switch to enabled mode on remote host
 	 * @param password enable secret to be used on the remote host
@@ -149,7 +141,10 @@ public class CiscoSession extends dk.krakow.jnettelnet.Session implements Sessio
 			ReadData read = _read2prompt();
 
 			// if we are already enabled just move along
-			if ( read.getPrompt().endsWith(ENABLED_PROMPT_CHR) ) return;
+			if ( read.getPrompt().endsWith(ENABLED_PROMPT_CHR) ) {
+				_learnPrompt();
+				return;
+			}
 
 			if ( read.getPrompt().equals("Password:") ) {
 				_sendln(password);
@@ -160,6 +155,7 @@ public class CiscoSession extends dk.krakow.jnettelnet.Session implements Sessio
 				throw new SessionException("Failed to enable");
 			} else {
 				enabled = true;
+				_learnPrompt();
 			}
 
 		} catch (IOException ex) {
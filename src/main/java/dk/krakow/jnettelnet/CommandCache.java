@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2016, Michael Thorsager <thorsager@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice, this
+ *    list of conditions and the following disclaimer in the documentation and/or
+ *    other materials provided with the distribution.
+ *
+ *  * Neither the name of Open Solutions nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.krakow.jnettelnet;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of command output, shared by the sessions it is set on, for
+ * commands like "show version" whose output rarely changes.
+ * <p>
+ * Output is kept per host, mode and command, where the mode is the prompt
+ * the command was sent at, so "show running" on "sw1&gt;" and "sw1#" are
+ * cached apart. Only commands with a time to live are cached, and only if
+ * the prompt is unchanged by the command and the session is not in
+ * configuration mode. All output of a host is invalidated when a
+ * configure command, or any command in configuration mode, is sent to it.
+ * </p>
+ * <p>
+ * The cache is bounded by the approximate heap use of the output, the
+ * least recently used output is evicted first.
+ * </p>
+ * <pre>
+ * CommandCache cache = new CommandCache(16 * 1024 * 1024);
+ * cache.setTtl("show version", 300000);
+ * session.setCommandCache(cache);
+ * </pre>
+ *
+ * @author Michael Thorsager &lt;thorsager@gmail.com&gt;
+ */
+public class CommandCache {
+
+	private final long maxBytes;
+	private final HashMap<String, Long> ttls = new HashMap<String, Long>();
+	private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(64, 0.75f, true);
+	private final HashMap<String, Integer> hosts = new HashMap<String, Integer>();
+	private long defaultTtl = 0;
+	private long bytes = 0;
+	private long hits = 0;
+	private long misses = 0;
+
+	/**
+	 * Create a cache
+	 * @param maxBytes max. approximate heap use of the cached output
+	 */
+	public CommandCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Set the time to live of the output of a command
+	 * @param command command line, as sent
+	 * @param ttl time to live in ms, 0 to not cache the command
+	 */
+	public synchronized void setTtl(String command, long ttl) {
+		ttls.put(command, ttl);
+	}
+
+	/**
+	 * Set the time to live of commands without their own, defaults to 0
+	 * @param ttl time to live in ms, 0 to only cache commands with a time to live
+	 */
+	public synchronized void setDefaultTtl(long ttl) {
+		this.defaultTtl = ttl;
+	}
+
+	/**
+	 * Get the cached output of a command
+	 * @param host name of the host
+	 * @param mode prompt the command is sent at
+	 * @param command command line
+	 * @return copy of the output, or null if not cached or expired
+	 */
+	public synchronized String[] get(String host, String mode, String command) {
+		Key key = new Key(host, mode, command);
+		Entry e = entries.get(key);
+		if (e != null && e.expires - System.nanoTime() <= 0) {
+			remove(key);
+			e = null;
+		}
+		if (e == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return e.output.clone();
+	}
+
+	/**
+	 * Cache the output of a command, if it has a time to live
+	 * @param host name of the host
+	 * @param mode prompt the command was sent at
+	 * @param command command line
+	 * @param output output of the command
+	 */
+	public synchronized void put(String host, String mode, String command, String[] output) {
+		Long ttl = ttls.get(command);
+		long ms = ttl == null ? defaultTtl : ttl;
+		if (ms <= 0) {
+			return;
+		}
+		Key key = new Key(host, mode, command);
+		Entry e = new Entry(output.clone(), System.nanoTime() + ms * 1000000L, sizeOf(key, output));
+		if (e.bytes > maxBytes) {
+			return;
+		}
+		remove(key);
+		entries.put(key, e);
+		bytes += e.bytes;
+		Integer n = hosts.get(host);
+		hosts.put(host, n == null ? 1 : n + 1);
+		Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+		while (bytes > maxBytes && it.hasNext()) {
+			Map.Entry<Key, Entry> eldest = it.next();
+			it.remove();
+			removed(eldest.getKey(), eldest.getValue());
+		}
+	}
+
+	/**
+	 * Remove all cached output of a host
+	 * @param host name of the host
+	 */
+	public synchronized void invalidate(String host) {
+		if (!hosts.containsKey(host)) {
+			return;
+		}
+		Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Key, Entry> e = it.next();
+			if (e.getKey().host.equals(host)) {
+				it.remove();
+				removed(e.getKey(), e.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Remove all cached output
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		hosts.clear();
+		bytes = 0;
+	}
+
+	/**
+	 * @return approximate heap use of the cached output
+	 */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * @return number of outputs cached
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return number of commands answered from the cache
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return number of commands not found in the cache
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	private void remove(Key key) {
+		Entry e = entries.remove(key);
+		if (e != null) removed(key, e);
+	}
+
+	private void removed(Key key, Entry e) {
+		bytes -= e.bytes;
+		Integer n = hosts.get(key.host);
+		if (n == 1) {
+			hosts.remove(key.host);
+		} else {
+			hosts.put(key.host, n - 1);
+		}
+	}
+
+	/**
+	 * Approximate heap use of an entry, Strings counted as 40 bytes plus 2 per char
+	 */
+	private static long sizeOf(Key key, String[] output) {
+		long size = 96 + 40 * 3 + 2L * (key.host.length() + key.mode.length() + key.command.length());
+		size += 16 + 4L * output.length;
+		for (String line : output) {
+			size += 40 + 2L * line.length();
+		}
+		return size;
+	}
+
+	private static final class Key {
+		final String host;
+		final String mode;
+		final String command;
+		final int hash;
+
+		Key(String host, String mode, String command) {
+			this.host = host;
+			this.mode = mode == null ? "" : mode;
+			this.command = command;
+			this.hash = (host.hashCode() * 31 + this.mode.hashCode()) * 31 + command.hashCode();
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) return false;
+			Key k = (Key) o;
+			return hash == k.hash && host.equals(k.host) && mode.equals(k.mode) && command.equals(k.command);
+		}
+	}
+
+	private static final class Entry {
+		final String[] output;
+		final long expires;
+		final long bytes;
+
+		Entry(String[] output, long expires, long bytes) {
+			this.output = output;
+			this.expires = expires;
+			this.bytes = bytes;
+		}
+	}
+}
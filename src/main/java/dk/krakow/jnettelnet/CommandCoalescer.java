@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2016, Michael Thorsager <thorsager@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice, this
+ *    list of conditions and the following disclaimer in the documentation and/or
+ *    other materials provided with the distribution.
+ *
+ *  * Neither the name of Open Solutions nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.krakow.jnettelnet;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs commands on sessions borrowed from a <code>SessionPool</code>, letting
+ * concurrent requests for the same command on the same host share a single
+ * execution.
+ * <pre>
+ *	CommandCoalescer coalescer = new CommandCoalescer(pool);
+ *	String[] output = coalescer.cmd("cisco.host.com", null, credentials, "show interfaces status");
+ * </pre>
+ * <p>
+ * The first request for a host, port, credentials and command borrows a
+ * session and runs the command. Requests arriving while it runs wait for
+ * it, and get a copy of its output, or its failure, instead of borrowing a
+ * session of their own. Requests arriving after it has completed run the
+ * command again, so output is never older than the request; combine with a
+ * <code>CommandCache</code> to reuse output for longer.
+ * </p>
+ *
+ * @author Michael Thorsager &lt;thorsager@gmail.com&gt;
+ */
+public class CommandCoalescer {
+
+	private final SessionPool pool;
+	private final ConcurrentHashMap<Key, SessionFuture<String[]>> inFlight = new ConcurrentHashMap<Key, SessionFuture<String[]>>();
+	private final LongAdder executed = new LongAdder();
+	private final LongAdder coalesced = new LongAdder();
+
+	/**
+	 * Create a coalescer, running the commands on sessions from a pool
+	 * @param pool Pool to borrow sessions from
+	 */
+	public CommandCoalescer(SessionPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Execute a command on a host, or wait for the same command already
+	 * being executed.
+	 * @param hostname Name of the host
+	 * @param port port-number, or null for the Telnet default
+	 * @param credentials Credentials to log in with
+	 * @param command Command line to be executed on remote host
+	 * @return Remote host output
+	 * @throws SessionException If unable to log in or execute the command, or if interrupted while waiting.
+	 */
+	public String[] cmd(String hostname, Integer port, Credentials credentials, String command) throws SessionException {
+		Key key = new Key(hostname, port == null ? 23 : port, credentials, command);
+		SessionFuture<String[]> flight = new SessionFuture<String[]>();
+		SessionFuture<String[]> running = inFlight.putIfAbsent(key, flight);
+		if (running != null) {
+			coalesced.increment();
+			return await(running);
+		}
+		executed.increment();
+		try {
+			String[] output = execute(hostname, port, credentials, command);
+			inFlight.remove(key, flight);
+			flight.complete(output);
+			return output.clone();
+		} catch (Throwable ex) {
+			// Including errors, the waiting requests must never hang
+			inFlight.remove(key, flight);
+			flight.fail(ex);
+			throw ex;
+		}
+	}
+
+	/**
+	 * @return number of commands sent to the hosts
+	 */
+	public long getExecuted() {
+		return executed.sum();
+	}
+
+	/**
+	 * @return number of requests that shared the execution of another
+	 */
+	public long getCoalesced() {
+		return coalesced.sum();
+	}
+
+	// ------------------------------------------------------- Private Methods
+	private String[] execute(String hostname, Integer port, Credentials credentials, String command) throws SessionException {
+		CommandSession session = pool.borrow(hostname, port, credentials);
+		boolean completed = false;
+		try {
+			String[] output = session.cmd(command);
+			completed = true;
+			return output;
+		} finally {
+			if (completed) {
+				pool.release(session);
+			} else {
+				pool.invalidate(session);
+			}
+		}
+	}
+
+	private static String[] await(SessionFuture<String[]> flight) throws SessionException {
+		try {
+			return flight.get().clone();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new SessionException("Interrupted while waiting for command", ex);
+		} catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof SessionException) {
+				throw new SessionException(cause.getMessage(), cause);
+			}
+			throw new SessionException(cause);
+		}
+	}
+
+	private static final class Key {
+		final String hostname;
+		final int port;
+		final Credentials credentials;
+		final String command;
+
+		Key(String hostname, int port, Credentials credentials, String command) {
+			this.hostname = hostname;
+			this.port = port;
+			this.credentials = credentials;
+			this.command = command;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) return false;
+			Key k = (Key) o;
+			return port == k.port && hostname.equals(k.hostname) && credentials.equals(k.credentials) && command.equals(k.command);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * (31 * (31 * hostname.hashCode() + port) + credentials.hashCode()) + command.hashCode();
+		}
+	}
+}
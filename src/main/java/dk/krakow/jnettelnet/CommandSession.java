@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2016, Michael Thorsager <thorsager@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice, this
+ *    list of conditions and the following disclaimer in the documentation and/or
+ *    other materials provided with the distribution.
+ *
+ *  * Neither the name of Open Solutions nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.krakow.jnettelnet;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Describes the common conversation with a network device, implemented by
+ * the vendor specific sessions like <code>CiscoSession</code> and
+ * <code>BrocadeSession</code>. This makes it possible to write code that
+ * works on a whole fleet of devices, regardless of vendor.
+ *
+ * @author Michael Thorsager &lt;thorsager@gmail.com&gt;
+ */
+public interface CommandSession {
+
+	/**
+	 * Connects the session to the host
+	 * @throws SessionException If unable to connect
+	 */
+	public void connect() throws SessionException;
+
+	/**
+	 * Authenticate against the login-prompt of the device
+	 * @param username Username to be used for authentication or null if not used
+	 * @param password Password to be used for authentication.
+	 * @throws SessionException If username is needed and not present or if authentication fails
+	 * @throws IOException If communication with remote host fails.
+	 */
+	public void login(String username, String password) throws SessionException, IOException;
+
+	/**
+	 * Switch to enabled mode on remote host
+	 * @param password enable secret to be used on the remote host
+	 * @throws SessionException If unable to enable.
+	 */
+	public void enable(String password) throws SessionException;
+
+	/**
+	 * Execute a command on the remote host, and retrieve the resulting
+	 * output.
+	 * @param command Command line to be executed on remote host
+	 * @return Remote host output
+	 * @throws SessionException If unable to execute command.
+	 */
+	public String[] cmd(String command) throws SessionException;
+
+	/**
+	 * Execute a command on the remote host, and retrieve the resulting
+	 * output, failing if it is not complete within the deadline.
+	 * @param command Command line to be executed on remote host
+	 * @param deadline Max. time to spend on the command
+	 * @return Remote host output
+	 * @throws SessionException If unable to execute command, or the deadline was exceeded.
+	 */
+	public String[] cmd(String command, Duration deadline) throws SessionException;
+
+	/**
+	 * Execute a command on the remote host, and stream the resulting output
+	 * to a handler, line by line as it is read.
+	 * @param command Command line to be executed on remote host
+	 * @param handler Handler receiving the lines of output
+	 * @return The prompt following the output
+	 * @throws SessionException If unable to execute command.
+	 */
+	public String cmd(String command, LineHandler handler) throws SessionException;
+
+	/**
+	 * Execute a command on the remote host, and write the raw bytes of the
+	 * resulting output to a channel.
+	 * @param command Command line to be executed on remote host
+	 * @param sink Channel receiving the output
+	 * @return number of bytes written
+	 * @throws SessionException If unable to execute command, or write the output.
+	 */
+	public long cmdTo(String command, WritableByteChannel sink) throws SessionException;
+
+	/**
+	 * Execute a batch of commands on the remote host, sending them ahead
+	 * without waiting for the output of each one.
+	 * @param commands Command lines to be executed on remote host
+	 * @return Remote host output of each command
+	 * @throws SessionException If unable to execute the commands.
+	 */
+	public List<String[]> cmdBatch(List<String> commands) throws SessionException;
+
+	/**
+	 * Check that the remote host is still responsive, by sending an empty
+	 * line and reading back the prompt.
+	 * @return true if the prompt was read.
+	 */
+	public boolean probe();
+
+	/**
+	 * Disconnect the session from the host.
+	 */
+	public void close();
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2016, Michael Thorsager <thorsager@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice, this
+ *    list of conditions and the following disclaimer in the documentation and/or
+ *    other materials provided with the distribution.
+ *
+ *  * Neither the name of Open Solutions nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.krakow.jnettelnet;
+
+/**
+ * Immutable set of credentials used to log into, and enable on, a device.
+ *
+ * @author Michael Thorsager &lt;thorsager@gmail.com&gt;
+ */
+public final class Credentials {
+
+	private final String username;
+	private final String password;
+	private final String enablePassword;
+
+	/**
+	 * Create credentials without an enable secret
+	 * @param username Username or null if not used
+	 * @param password Password
+	 */
+	public Credentials(String username, String password) {
+		this(username, password, null);
+	}
+
+	/**
+	 * Create credentials
+	 * @param username Username or null if not used
+	 * @param password Password
+	 * @param enablePassword enable secret, or null if enable is not to be used
+	 */
+	public Credentials(String username, String password, String enablePassword) {
+		this.username = username;
+		this.password = password;
+		this.enablePassword = enablePassword;
+	}
+
+	public String getUsername() {
+		return username;
+	}
+
+	public String getPassword() {
+		return password;
+	}
+
+	public String getEnablePassword() {
+		return enablePassword;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (!(o instanceof Credentials)) return false;
+		Credentials c = (Credentials) o;
+		return eq(username, c.username) && eq(password, c.password) && eq(enablePassword, c.enablePassword);
+	}
+
+	@Override
+	public int hashCode() {
+		int h = username != null ? username.hashCode() : 0;
+		h = 31 * h + (password != null ? password.hashCode() : 0);
+		return 31 * h + (enablePassword != null ? enablePassword.hashCode() : 0);
+	}
+
+	@Override
+	public String toString() {
+		return "Credentials{" + "username=" + username + '}';
+	}
+
+	private static boolean eq(String a, String b) {
+		return a == null ? b == null : a.equals(b);
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2016, Michael Thorsager <thorsager@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice, this
+ *    list of conditions and the following disclaimer in the documentation and/or
+ *    other materials provided with the distribution.
+ *
+ *  * Neither the name of Open Solutions nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.krakow.jnettelnet;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The outcome of running a set of commands on a single device through the
+ * <code>FleetRunner</code>.
+ *
+ * @author Michael Thorsager &lt;thorsager@gmail.com&gt;
+ */
+public class FleetResult {
+
+	private final String hostname;
+	private final Map<String, String[]> output;
+	private final Exception exception;
+	private final long elapsed;
+
+	FleetResult(String hostname, Map<String, String[]> output, Exception exception, long elapsed) {
+		this.hostname = hostname;
+		this.output = Collections.unmodifiableMap(output);
+		this.exception = exception;
+		this.elapsed = elapsed;
+	}
+
+	/**
+	 * @return Name of the host
+	 */
+	public String getHostname() {
+		return hostname;
+	}
+
+	/**
+	 * Get the output of a single command
+	 * @param command the command
+	 * @return Remote host output, or null if the command was not executed
+	 */
+	public String[] getOutput(String command) {
+		return output.get(command);
+	}
+
+	/**
+	 * @return Output of all executed commands, in the order they were executed
+	 */
+	public Map<String, String[]> getOutputs() {
+		return output;
+	}
+
+	/**
+	 * @return The exception that aborted the conversation, or null if successful
+	 */
+	public Exception getException() {
+		return exception;
+	}
+
+	/**
+	 * @return true if all commands were executed
+	 */
+	public boolean isSuccess() {
+		return exception == null;
+	}
+
+	/**
+	 * @return Time spent on the device, including waiting for a free slot, in ms
+	 */
+	public long getElapsed() {
+		return elapsed;
+	}
+
+	@Override
+	public String toString() {
+		return "FleetResult{" + "hostname=" + hostname + ", commands=" + output.keySet() + ", exception=" + exception + ", elapsed=" + elapsed + '}';
+	}
+}
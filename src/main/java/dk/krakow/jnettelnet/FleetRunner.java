@@ -0,0 +1,469 @@
+/*
+ * Copyright (c) 2016, Michael Thorsager <thorsager@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice, this
+ *    list of conditions and the following disclaimer in the documentation and/or
+ *    other materials provided with the distribution.
+ *
+ *  * Neither the name of Open Solutions nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.krakow.jnettelnet;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the same commands on a fleet of devices of the same vendor, doing
+ * connect, login, enable, commands and close on each of them.
+ * <pre>
+ *	FleetRunner fr = new FleetRunner(CiscoSession.class);
+ *	fr.setMaxPerSubnet(4, 24);
+ *	Iterator&lt;FleetResult&gt; it = fr.run(hosts, new Credentials("user", "Secret", "evenMoreSecret"), "show version");
+ *	while (it.hasNext()) { System.out.println(it.next()); }
+ *	fr.shutdown();
+ * </pre>
+ * <p>
+ * When running on a JVM with virtual threads, each device gets its own
+ * virtual thread, otherwise a pool of platform threads, the size of the
+ * global limit, is used. As the blocking <code>Session</code> API is used
+ * either way, the number of devices handled at the same time is bounded by
+ * the global limit and, optionally, a limit per subnet, which keeps the
+ * load on the authentication servers of each site down. Hosts of a subnet
+ * at its limit are queued, without holding a thread, until a host of the
+ * same subnet is done. Logged in sessions can be reused between runs by
+ * setting a <code>SessionPool</code>.
+ * </p>
+ *
+ * @author Michael Thorsager &lt;thorsager@gmail.com&gt;
+ */
+public class FleetRunner {
+
+	private static final int DEFAULT_MAX_CONCURRENCY = 100;
+	private static final AtomicInteger instances = new AtomicInteger();
+
+	private final SessionFactory factory;
+	private Integer port = null;
+	private boolean virtualThreads = true;
+	private int maxConcurrency = DEFAULT_MAX_CONCURRENCY;
+	private int maxPerSubnet = 0;
+	private int subnetPrefix = 24;
+	private SessionPool pool = null;
+	private Duration deadline = null;
+
+	private ExecutorService executor = null;
+	private Semaphore global = null;
+	private final AtomicInteger pending = new AtomicInteger();
+	private volatile boolean shutdown = false;
+	private final ConcurrentMap<String, Subnet> subnets = new ConcurrentHashMap<String, Subnet>();
+
+	/**
+	 * Create a runner for a vendor session type, like <code>CiscoSession.class</code>.
+	 * The type must have a public (String hostname, Integer port) constructor.
+	 * @param type vendor session type
+	 */
+	public FleetRunner(final Class<? extends CommandSession> type) {
+		this(new ReflectiveSessionFactory(type));
+	}
+
+	/**
+	 * Create a runner, using a factory to create the sessions
+	 * @param factory Factory creating the vendor sessions
+	 */
+	public FleetRunner(SessionFactory factory) {
+		this.factory = factory;
+	}
+
+	/**
+	 * Set the port to connect to, the Telnet default is used if not set.
+	 * @param port port-number
+	 */
+	public void setPort(Integer port) {
+		this.port = port;
+	}
+
+	/**
+	 * Set the max. number of devices handled at the same time. Must be
+	 * set before the first run.
+	 * @param maxConcurrency global limit
+	 */
+	public void setMaxConcurrency(int maxConcurrency) {
+		if (maxConcurrency < 1) throw new IllegalArgumentException("maxConcurrency must be positive");
+		this.maxConcurrency = maxConcurrency;
+	}
+
+	/**
+	 * Limit the number of devices handled at the same time within the same
+	 * subnet. IPv6 addresses are grouped by their /64 prefix. Must be
+	 * set before the first run.
+	 * @param maxPerSubnet limit per subnet, 0 for no limit
+	 * @param prefixLength IPv4 prefix length of the subnets
+	 */
+	public void setMaxPerSubnet(int maxPerSubnet, int prefixLength) {
+		if (prefixLength < 0 || prefixLength > 32) throw new IllegalArgumentException("Invalid prefix length: " + prefixLength);
+		this.maxPerSubnet = maxPerSubnet;
+		this.subnetPrefix = prefixLength;
+	}
+
+	/**
+	 * Choose whether virtual threads are used when the JVM supports them.
+	 * Must be set before the first run.
+	 * @param virtualThreads false to always use platform threads
+	 */
+	public void setVirtualThreads(boolean virtualThreads) {
+		this.virtualThreads = virtualThreads;
+	}
+
+	/**
+	 * Use a pool of logged in sessions, instead of logging in and out of
+	 * the devices on every run.
+	 * @param pool Pool to borrow sessions from, or null to not pool sessions.
+	 */
+	public void setSessionPool(SessionPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Bound the time spent running the commands on each host. A host that
+	 * has not completed all commands within the deadline fails, and its
+	 * session is discarded.
+	 * @param deadline Max. time for the commands of a host, or null for no limit.
+	 */
+	public void setDeadline(Duration deadline) {
+		this.deadline = deadline;
+	}
+
+	/**
+	 * Run commands on a set of hosts. The devices are handled in the
+	 * background, and the results are returned as they complete.
+	 * @param hosts Names of the hosts
+	 * @param credentials Credentials to use on all hosts, enable is only done if an enable secret is set.
+	 * @param commands Commands to execute
+	 * @return iterator returning a result for each host, in order of completion.
+	 */
+	public synchronized Iterator<FleetResult> run(List<String> hosts, final Credentials credentials, final String... commands) {
+		if (executor == null) {
+			executor = newExecutor();
+		}
+		final CompletionService<FleetResult> cs = new ExecutorCompletionService<FleetResult>(executor);
+		pending.addAndGet(hosts.size());
+		for (final String host : hosts) {
+			if (maxPerSubnet > 0) {
+				// The subnet is looked up by a worker, so slow name lookups neither hold up the caller nor each other
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						start(cs, host, subnet(host), credentials, commands);
+					}
+				});
+			} else {
+				start(cs, host, null, credentials, commands);
+			}
+		}
+		final int count = hosts.size();
+		return new Iterator<FleetResult>() {
+			private int returned = 0;
+
+			@Override
+			public boolean hasNext() {
+				return returned < count;
+			}
+
+			@Override
+			public FleetResult next() {
+				if (!hasNext()) throw new NoSuchElementException();
+				try {
+					FleetResult r = cs.take().get();
+					returned++;
+					return r;
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException("Interrupted while waiting for results", ex);
+				} catch (ExecutionException ex) {
+					throw new IllegalStateException("Fleet task failed", ex.getCause());
+				}
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * Stop the threads of the runner, once all running and queued hosts are done.
+	 */
+	public synchronized void shutdown() {
+		shutdown = true;
+		if (executor != null && pending.get() == 0) {
+			executor.shutdown();
+		}
+	}
+
+	// ------------------------------------------------------- Private Methods
+	/**
+	 * Submit a host, or queue it if its subnet is at the limit
+	 * @param cs completion service returning the results of the run
+	 * @param host Name of the host
+	 * @param subnet subnet of the host, or null if there is no limit per subnet
+	 * @param credentials Credentials to use
+	 * @param commands Commands to execute
+	 */
+	private void start(final CompletionService<FleetResult> cs, final String host, final Subnet subnet,
+			final Credentials credentials, final String[] commands) {
+		final Callable<FleetResult> task = new Callable<FleetResult>() {
+			@Override
+			public FleetResult call() throws Exception {
+				try {
+					return runHost(host, credentials, commands);
+				} finally {
+					if (subnet != null) subnet.done();
+					done();
+				}
+			}
+		};
+		Runnable submit = new Runnable() {
+			@Override
+			public void run() {
+				cs.submit(task);
+			}
+		};
+		if (subnet == null) {
+			submit.run();
+		} else {
+			subnet.start(submit);
+		}
+	}
+
+	private FleetResult runHost(String host, Credentials credentials, String[] commands) {
+		long start = System.currentTimeMillis();
+		Map<String, String[]> output = new LinkedHashMap<String, String[]>();
+		try {
+			// Only virtual threads need the global limit, the platform thread pool is bounded by it
+			if (global != null) global.acquire();
+			try {
+				if (pool != null) {
+					CommandSession session = pool.borrow(host, port, credentials);
+					boolean completed = false;
+					try {
+						runCommands(session, commands, output);
+						completed = true;
+					} finally {
+						if (completed) {
+							pool.release(session);
+						} else {
+							pool.invalidate(session);
+						}
+					}
+				} else {
+					CommandSession session = factory.create(host, port);
+					try {
+						session.connect();
+						session.login(credentials.getUsername(), credentials.getPassword());
+						if (credentials.getEnablePassword() != null) {
+							session.enable(credentials.getEnablePassword());
+						}
+						runCommands(session, commands, output);
+					} finally {
+						session.close();
+					}
+				}
+			} finally {
+				if (global != null) global.release();
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			return new FleetResult(host, output, ex, System.currentTimeMillis() - start);
+		} catch (Exception ex) {
+			return new FleetResult(host, output, ex, System.currentTimeMillis() - start);
+		}
+		return new FleetResult(host, output, null, System.currentTimeMillis() - start);
+	}
+
+	private void runCommands(CommandSession session, String[] commands, Map<String, String[]> output) throws SessionException {
+		if (deadline == null) {
+			for (String command : commands) {
+				output.put(command, session.cmd(command));
+			}
+			return;
+		}
+		long end = System.nanoTime() + deadline.toNanos();
+		for (String command : commands) {
+			long left = end - System.nanoTime();
+			if (left <= 0) throw new SessionException("Deadline exceeded");
+			output.put(command, session.cmd(command, Duration.ofNanos(left)));
+		}
+	}
+
+	private void done() {
+		if (pending.decrementAndGet() == 0 && shutdown) {
+			executor.shutdown();
+		}
+	}
+
+	private Subnet subnet(String host) {
+		String key = subnetOf(host, subnetPrefix);
+		Subnet s = subnets.get(key);
+		if (s == null) {
+			Subnet ns = new Subnet(maxPerSubnet);
+			s = subnets.putIfAbsent(key, ns);
+			if (s == null) s = ns;
+		}
+		return s;
+	}
+
+	/**
+	 * Find the subnet of a host
+	 * @param host Name of the host
+	 * @param prefixLength IPv4 prefix length
+	 * @return subnet in the form address/prefix, or the hostname if it can not be resolved.
+	 */
+	static String subnetOf(String host, int prefixLength) {
+		try {
+			byte[] addr = InetAddress.getByName(host).getAddress();
+			int prefix = addr.length == 4 ? prefixLength : 64;
+			for (int i = 0; i < addr.length; i++) {
+				int bits = Math.max(0, Math.min(8, prefix - i * 8));
+				addr[i] &= (byte) (0xFF00 >> bits);
+			}
+			return InetAddress.getByAddress(addr).getHostAddress() + "/" + prefix;
+		} catch (UnknownHostException ex) {
+			return host;
+		}
+	}
+
+	private ExecutorService newExecutor() {
+		if (virtualThreads) {
+			try {
+				Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+				ExecutorService virtual = (ExecutorService) m.invoke(null);
+				global = new Semaphore(maxConcurrency, true);
+				return virtual;
+			} catch (NoSuchMethodException ignored) {
+				// No virtual threads on this JVM, use platform threads
+			} catch (IllegalAccessException ignored) {
+			} catch (InvocationTargetException ignored) {
+			}
+		}
+		final int id = instances.incrementAndGet();
+		return Executors.newFixedThreadPool(maxConcurrency, new ThreadFactory() {
+			private final AtomicInteger n = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "jnettelnet-fleet-" + id + "-" + n.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+//---------------------------------------------------------------- Inner Classes
+	/**
+	 * The hosts of a subnet being handled, and those waiting for their turn.
+	 */
+	static final class Subnet {
+		private final int max;
+		private final ArrayDeque<Runnable> waiting = new ArrayDeque<Runnable>();
+		private int running = 0;
+
+		Subnet(int max) {
+			this.max = max;
+		}
+
+		/**
+		 * Submit a host now, if the subnet is below its limit, otherwise once a running host is done
+		 * @param submit submits the host to the executor
+		 */
+		void start(Runnable submit) {
+			synchronized (this) {
+				if (running >= max) {
+					waiting.add(submit);
+					return;
+				}
+				running++;
+			}
+			submit.run();
+		}
+
+		/**
+		 * A host of the subnet is done, submit the next one waiting
+		 */
+		void done() {
+			Runnable next;
+			synchronized (this) {
+				next = waiting.poll();
+				if (next == null) running--;
+			}
+			if (next != null) next.run();
+		}
+	}
+
+	/**
+	 * Creates sessions using the (String, Integer) constructor of a vendor session type.
+	 */
+	static final class ReflectiveSessionFactory implements SessionFactory {
+		private final Constructor<? extends CommandSession> constructor;
+
+		ReflectiveSessionFactory(Class<? extends CommandSession> type) {
+			try {
+				constructor = type.getConstructor(String.class, Integer.class);
+			} catch (NoSuchMethodException ex) {
+				throw new IllegalArgumentException(type.getName() + " has no (String, Integer) constructor", ex);
+			}
+		}
+
+		@Override
+		public CommandSession create(String hostname, Integer port) throws SessionException {
+			try {
+				return constructor.newInstance(hostname, port);
+			} catch (InvocationTargetException ex) {
+				throw new SessionException("Unable to create session: " + ex.getCause().getMessage(), ex.getCause());
+			} catch (Exception ex) {
+				throw new SessionException("Unable to create session: " + ex.getMessage(), ex);
+			}
+		}
+	}
+}
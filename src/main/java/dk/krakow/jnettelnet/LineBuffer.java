@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2016, Michael Thorsager <thorsager@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice, this
+ *    list of conditions and the following disclaimer in the documentation and/or
+ *    other materials provided with the distribution.
+ *
+ *  * Neither the name of Open Solutions nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.krakow.jnettelnet;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Growable buffer holding the raw bytes of the line currently being read by
+ * the <code>Session</code>.
+ * <p>
+ * The buffer is also a <code>CharSequence</code>, each byte is presented as
+ * the ISO-8859-1 character of the same value, so that prompt patterns can be
+ * matched directly against the bytes without building Strings.
+ * </p>
+ * <p>
+ * The text of the line, in the charset of the session, is available through
+ * <code>text()</code> and <code>toLine()</code>. Lines of pure ASCII, which is
+ * most of what network devices send, never go through a decoder, as long as
+ * the charset is a superset of ASCII.
+ * </p>
+ *
+ * @author Michael Thorsager &lt;thorsager@gmail.com&gt;
+ */
+final class LineBuffer implements CharSequence {
+
+	static final Charset LATIN1 = Charset.forName("ISO-8859-1");
+
+	private byte[] buf;
+	private ByteBuffer view;
+	private int len = 0;
+	private int high = 0;
+	private CharsetDecoder decoder = null;
+	private boolean asciiCompatible = true;
+	private CharBuffer chars = null;
+
+	LineBuffer() {
+		this(256);
+	}
+
+	LineBuffer(int capacity) {
+		buf = new byte[capacity];
+	}
+
+	/**
+	 * Append a single byte to the line
+	 * @param b byte value (0-255)
+	 */
+	void append(int b) {
+		if (len == buf.length) {
+			byte[] nbuf = new byte[buf.length << 1];
+			System.arraycopy(buf, 0, nbuf, 0, len);
+			buf = nbuf;
+			view = null;
+		}
+		buf[len++] = (byte) b;
+		high |= b;
+	}
+
+	/**
+	 * Empty the line, keeping the allocated storage for the next line.
+	 */
+	void clear() {
+		len = 0;
+		high = 0;
+	}
+
+	/**
+	 * Set the charset used to decode the text of the line
+	 * @param charset charset, ISO-8859-1 means the bytes are the text
+	 */
+	void setCharset(Charset charset) {
+		if (LATIN1.equals(charset)) {
+			decoder = null;
+			asciiCompatible = true;
+		} else {
+			decoder = charset.newDecoder()
+					.onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			String probe = "\r\n !#$%&()*+,-./09:;<=>?@AZ[]^_`az{|}~";
+			asciiCompatible = new String(probe.getBytes(charset), LATIN1).equals(probe);
+		}
+	}
+
+	/**
+	 * Get the text of the line, decoded using the charset. The text is only
+	 * valid until the line is changed.
+	 * @return the line itself if no decoding is needed, or the decoded text.
+	 */
+	CharSequence text() {
+		return isPlain() ? this : decode(len);
+	}
+
+	/**
+	 * Cut the line down to a given length
+	 * @param length new length, must not exceed the current length
+	 */
+	void truncate(int length) {
+		if (length > len) throw new IndexOutOfBoundsException("length: " + length + ", current length: " + len);
+		len = length;
+	}
+
+	/**
+	 * Get the raw bytes of the line, as a buffer backed by the line itself.
+	 * The buffer is only valid until the line is changed.
+	 * @return Buffer positioned at the start of the line, with the limit at its end.
+	 */
+	ByteBuffer asByteBuffer() {
+		if (view == null) {
+			view = ByteBuffer.wrap(buf);
+		}
+		view.clear();
+		view.limit(len);
+		return view;
+	}
+
+	/**
+	 * @return true if the line is terminated by "\r\n"
+	 */
+	boolean endsWithCrLf() {
+		return len > 1 && buf[len - 1] == '\n' && buf[len - 2] == '\r';
+	}
+
+	/**
+	 * Compare the line to a sequence of bytes, starting from the end
+	 * @param bytes bytes to compare with
+	 * @return true if the line holds exactly these bytes
+	 */
+	boolean contentEquals(byte[] bytes) {
+		if (len != bytes.length) {
+			return false;
+		}
+		for (int i = len - 1; i >= 0; i--) {
+			if (buf[i] != bytes[i]) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Get the content of the line, without any "\r\n" line terminator.
+	 * @return line as String
+	 */
+	String toLine() {
+		int n = endsWithCrLf() ? len - 2 : len;
+		return isPlain() ? new String(buf, 0, n, LATIN1) : decode(n).toString();
+	}
+
+	/**
+	 * @return true if the bytes of the line are also its text
+	 */
+	private boolean isPlain() {
+		return decoder == null || (asciiCompatible && (high & 0x80) == 0);
+	}
+
+	/**
+	 * Decode the first <code>n</code> bytes into the reusable char buffer.
+	 */
+	private CharBuffer decode(int n) {
+		int max = (int) Math.ceil(n * (double) decoder.maxCharsPerByte()) + 1;
+		if (chars == null || chars.capacity() < max) {
+			chars = CharBuffer.allocate(Math.max(max, 256));
+		}
+		chars.clear();
+		ByteBuffer in = asByteBuffer();
+		in.limit(n);
+		decoder.reset();
+		decoder.decode(in, chars, true);
+		decoder.flush(chars);
+		chars.flip();
+		return chars;
+	}
+
+	// ---------------------------------------------- CharSequence implementation
+	@Override
+	public int length() {
+		return len;
+	}
+
+	@Override
+	public char charAt(int index) {
+		if (index >= len) throw new IndexOutOfBoundsException("index: " + index + ", length: " + len);
+		return (char) (buf[index] & 0xFF);
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		if (start < 0 || end > len || start > end) {
+			throw new IndexOutOfBoundsException("start: " + start + ", end: " + end + ", length: " + len);
+		}
+		return new String(buf, start, end - start, LATIN1);
+	}
+
+	@Override
+	public String toString() {
+		return new String(buf, 0, len, LATIN1);
+	}
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2016, Michael Thorsager <thorsager@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice, this
+ *    list of conditions and the following disclaimer in the documentation and/or
+ *    other materials provided with the distribution.
+ *
+ *  * Neither the name of Open Solutions nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.krakow.jnettelnet;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects the metrics of any number of sessions, in total and per host.
+ * <p>
+ * Latencies of all sessions are kept in histograms, while each host only
+ * has counters and the total time spent, to keep the memory used per host
+ * small when running against a large fleet. A registry can be shared by
+ * sessions on any number of threads.
+ * </p>
+ * <pre>
+ * MetricsRegistry metrics = new MetricsRegistry();
+ * session.setMetrics(metrics);
+ * ...
+ * System.out.println(metrics.getCommandLatency().getValueAtPercentile(99));
+ * </pre>
+ *
+ * @author Michael Thorsager &lt;thorsager@gmail.com&gt;
+ */
+public class MetricsRegistry implements SessionMetrics {
+
+	private final LatencyHistogram connectLatency = new LatencyHistogram();
+	private final LatencyHistogram loginLatency = new LatencyHistogram();
+	private final LatencyHistogram commandLatency = new LatencyHistogram();
+	private final LatencyHistogram promptLatency = new LatencyHistogram();
+	private final Stats total = new Stats();
+	private final ConcurrentHashMap<String, Stats> hosts = new ConcurrentHashMap<String, Stats>();
+
+	/**
+	 * @return time taken to connect, in nanoseconds
+	 */
+	public LatencyHistogram getConnectLatency() {
+		return connectLatency;
+	}
+
+	/**
+	 * @return time taken to log in, in nanoseconds
+	 */
+	public LatencyHistogram getLoginLatency() {
+		return loginLatency;
+	}
+
+	/**
+	 * @return time from sending a command until its prompt was found, in nanoseconds
+	 */
+	public LatencyHistogram getCommandLatency() {
+		return commandLatency;
+	}
+
+	/**
+	 * @return time from reading a prompt until it was found, in nanoseconds
+	 */
+	public LatencyHistogram getPromptLatency() {
+		return promptLatency;
+	}
+
+	/**
+	 * @return counters of all sessions
+	 */
+	public Stats getTotal() {
+		return total;
+	}
+
+	/**
+	 * Get the counters of a host
+	 * @param hostname name of the host, as given to the session
+	 * @return counters, or null if nothing has been recorded for the host
+	 */
+	public Stats getHost(String hostname) {
+		return hosts.get(hostname);
+	}
+
+	/**
+	 * @return counters of every host
+	 */
+	public Map<String, Stats> getHosts() {
+		return Collections.unmodifiableMap(hosts);
+	}
+
+	@Override
+	public void onConnect(String hostname, long nanos) {
+		connectLatency.record(nanos);
+		total.connects.increment();
+		host(hostname).connects.increment();
+	}
+
+	@Override
+	public void onReconnect(String hostname) {
+		total.reconnects.increment();
+		host(hostname).reconnects.increment();
+	}
+
+	@Override
+	public void onLogin(String hostname, long nanos) {
+		loginLatency.record(nanos);
+		total.logins.increment();
+		host(hostname).logins.increment();
+	}
+
+	@Override
+	public void onCommand(String hostname, long nanos) {
+		commandLatency.record(nanos);
+		total.commands.increment();
+		total.commandNanos.add(nanos);
+		Stats stats = host(hostname);
+		stats.commands.increment();
+		stats.commandNanos.add(nanos);
+	}
+
+	@Override
+	public void onPrompt(String hostname, long nanos, int lines) {
+		promptLatency.record(nanos);
+		total.lines.add(lines);
+		host(hostname).lines.add(lines);
+	}
+
+	@Override
+	public void onRead(String hostname, int bytes) {
+		total.bytesIn.add(bytes);
+		host(hostname).bytesIn.add(bytes);
+	}
+
+	@Override
+	public void onWrite(String hostname, int bytes) {
+		total.bytesOut.add(bytes);
+		host(hostname).bytesOut.add(bytes);
+	}
+
+	@Override
+	public void onOption(String hostname, int option, boolean local, boolean enabled) {
+		total.options.increment();
+		host(hostname).options.increment();
+	}
+
+	@Override
+	public void onTimeout(String hostname) {
+		total.timeouts.increment();
+		host(hostname).timeouts.increment();
+	}
+
+	private Stats host(String hostname) {
+		Stats stats = hosts.get(hostname);
+		if (stats == null) {
+			Stats created = new Stats();
+			stats = hosts.putIfAbsent(hostname, created);
+			if (stats == null) stats = created;
+		}
+		return stats;
+	}
+
+	/**
+	 * Counters of one host, or of all sessions.
+	 */
+	public static final class Stats {
+		private final LongAdder connects = new LongAdder();
+		private final LongAdder reconnects = new LongAdder();
+		private final LongAdder logins = new LongAdder();
+		private final LongAdder commands = new LongAdder();
+		private final LongAdder commandNanos = new LongAdder();
+		private final LongAdder lines = new LongAdder();
+		private final LongAdder bytesIn = new LongAdder();
+		private final LongAdder bytesOut = new LongAdder();
+		private final LongAdder options = new LongAdder();
+		private final LongAdder timeouts = new LongAdder();
+
+		public long getConnects() {
+			return connects.sum();
+		}
+
+		public long getReconnects() {
+			return reconnects.sum();
+		}
+
+		public long getLogins() {
+			return logins.sum();
+		}
+
+		public long getCommands() {
+			return commands.sum();
+		}
+
+		/**
+		 * @return total time of all commands, in nanoseconds
+		 */
+		public long getCommandNanos() {
+			return commandNanos.sum();
+		}
+
+		public long getLines() {
+			return lines.sum();
+		}
+
+		public long getBytesIn() {
+			return bytesIn.sum();
+		}
+
+		public long getBytesOut() {
+			return bytesOut.sum();
+		}
+
+		/**
+		 * @return number of times an option was enabled or disabled
+		 */
+		public long getOptions() {
+			return options.sum();
+		}
+
+		public long getTimeouts() {
+			return timeouts.sum();
+		}
+
+		@Override
+		public String toString() {
+			return "Stats{connects=" + getConnects() + ", reconnects=" + getReconnects()
+					+ ", logins=" + getLogins() + ", commands=" + getCommands()
+					+ ", lines=" + getLines() + ", bytesIn=" + getBytesIn()
+					+ ", bytesOut=" + getBytesOut() + ", options=" + getOptions()
+					+ ", timeouts=" + getTimeouts() + "}";
+		}
+	}
+}
@@ -0,0 +1,556 @@
+/*
+ * Copyright (c) 2016, Michael Thorsager <thorsager@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice, this
+ *    list of conditions and the following disclaimer in the documentation and/or
+ *    other materials provided with the distribution.
+ *
+ *  * Neither the name of Open Solutions nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.krakow.jnettelnet;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Non-blocking counterpart of the <code>CiscoSession</code>, driven by a
+ * selector thread of a <code>SessionMultiplexer</code>.
+ * <p>
+ * All methods return immediately with a <code>SessionFuture</code>. The
+ * operations are queued and executed in order, exactly as the corresponding
+ * <code>CiscoSession</code> calls would have been, so a whole conversation
+ * can be queued up front. If an operation fails, the session is closed and
+ * all operations queued after it fail as well.
+ * </p>
+ * <p>
+ * Like the <code>CiscoSession</code> a window tall enough to never page is
+ * offered using NAWS, all other Telnet options are refused.
+ * </p>
+ *
+ * @author Michael Thorsager &lt;thorsager@gmail.com&gt;
+ */
+public class NioSession {
+
+	private static final int DEFAULT_TIMEOUT = 5000;
+	private static final int DEFAULT_CONNECT_TIMEOUT = 3000;
+
+	private static final Pattern promptPattern = Pattern.compile(CiscoSession.PROMPT_PATTERN);
+	private static final Pattern userPromptPattern = Pattern.compile(CiscoSession.USER_PROMPT_PATTERN);
+	private static final Pattern passwordPromptPattern = Pattern.compile(CiscoSession.PASSWORD_PROMPT_PATTERN);
+
+	private final SessionMultiplexer.Reactor reactor;
+	private final String hostname;
+	private final int port;
+	private final Queue<Operation<?>> operations = new ConcurrentLinkedQueue<Operation<?>>();
+	private volatile int timeout = DEFAULT_TIMEOUT;
+	private volatile boolean authenticated = false;
+	private volatile boolean enabled = false;
+
+	// Everything below is only touched by the selector thread
+	private SocketChannel channel = null;
+	private SelectionKey key = null;
+	private boolean closed = false;
+	private Operation<?> current = null;
+	private long deadline;
+
+	private final LineBuffer line = new LineBuffer();
+	private final PromptMatcher promptMatcher = new PromptMatcher(promptPattern, line);
+	private List<String> lines = new ArrayList<String>();
+	private final LinkedList<Block> blocks = new LinkedList<Block>();
+	private ByteBuffer writeBuffer = ByteBuffer.allocate(256);
+	private final TelnetEncoder encoder = new TelnetEncoder(LineBuffer.LATIN1);
+	private final TelnetDecoder telnet = new TelnetDecoder(new TelnetDecoder.Listener() {
+		@Override
+		public boolean acceptLocal(int option) {
+			return option == TelnetDecoder.OPT_NAWS;
+		}
+
+		@Override
+		public boolean acceptRemote(int option) {
+			return false;
+		}
+
+		@Override
+		public void onOptionChanged(int option, boolean local, boolean enabled) throws IOException {
+			if (local && enabled && option == TelnetDecoder.OPT_NAWS) {
+				telnet.sendSubnegotiation(option, new byte[] {
+					(byte) (Session.DEFAULT_WINDOW_WIDTH >> 8), (byte) Session.DEFAULT_WINDOW_WIDTH,
+					(byte) (Session.DEFAULT_WINDOW_HEIGHT >> 8), (byte) Session.DEFAULT_WINDOW_HEIGHT
+				});
+			}
+		}
+
+		@Override
+		public void onSubnegotiation(int option, byte[] data, int off, int len) {
+		}
+
+		@Override
+		public void send(byte[] data, int off, int len) {
+			queue(data, off, len);
+		}
+	});
+
+	NioSession(SessionMultiplexer.Reactor reactor, String hostname, Integer port) {
+		this.reactor = reactor;
+		this.hostname = hostname;
+		this.port = port == null ? 23 : port;
+	}
+
+	// ---------------------------------------------------------- Public Methods
+
+	/**
+	 * Connects the session to the host
+	 * @return future completed when connected
+	 */
+	public SessionFuture<Void> connect() {
+		return submit(new Connect(new InetSocketAddress(hostname, port)));
+	}
+
+	/**
+	 * Authenticate against the Cisco login-prompt, using username/password or just password.
+	 * See <code>CiscoSession.login</code>
+	 * @param username Username to be used for authentication or null if not used
+	 * @param password Password to be used for authentication.
+	 * @return future completed when authenticated
+	 */
+	public SessionFuture<Void> login(String username, String password) {
+		return submit(new Login(username, password));
+	}
+
+	/**
+	 * Switch to enabled mode on remote host
+	 * @param password enable secret to be used on the remote host
+	 * @return future completed when enabled
+	 */
+	public SessionFuture<Void> enable(String password) {
+		return submit(new Enable(password));
+	}
+
+	/**
+	 * Execute a command on the remote host, and retrieve the resulting
+	 * output.
+	 * @param command Command line to be executed on remote host
+	 * @return future holding the remote host output
+	 */
+	public SessionFuture<String[]> cmd(String command) {
+		return submit(new Cmd(command));
+	}
+
+	/**
+	 * Disconnect the session from the host, once all previously queued
+	 * operations have completed.
+	 * @return future completed when closed
+	 */
+	public SessionFuture<Void> close() {
+		return submit(new Close());
+	}
+
+	/**
+	 * Set the time to wait for data from the remote host, before an operation fails.
+	 * @param timeout timeout in ms
+	 */
+	public void setTimeout(int timeout) {
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Get Authentication status
+	 * @return true if authenticated ie. login has been successful
+	 */
+	public boolean isAuthenticated() {
+		return authenticated;
+	}
+
+	/**
+	 * Get Enabled status
+	 * @return true if in enabled mode.
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * @return Name of the host
+	 */
+	public String getHostname() {
+		return hostname;
+	}
+
+	// ----------------------------------------------- Selector thread callbacks
+	/**
+	 * Start queued operations, and feed them any pending prompts.
+	 */
+	void process() {
+		try {
+			while (!closed) {
+				if (current != null && current.finished) {
+					current = null;
+				}
+				if (current == null) {
+					current = operations.poll();
+					if (current == null) return;
+					if (current.future.isCancelled()) {
+						current = null;
+						continue;
+					}
+					deadline = System.currentTimeMillis() + timeout;
+					current.start();
+				} else if (!blocks.isEmpty()) {
+					Block b = blocks.removeFirst();
+					current.onPrompt(b.lines, b.prompt);
+				} else {
+					return;
+				}
+			}
+			failQueued(new SessionException("Session closed"));
+		} catch (IOException ex) {
+			abort(new SessionException("Unable to send data: " + ex.getMessage(), ex));
+		} catch (SessionException ex) {
+			abort(ex);
+		}
+	}
+
+	void onSelected(SelectionKey k) {
+		try {
+			if (k.isValid() && k.isConnectable()) {
+				if (channel.finishConnect()) {
+					current.onConnected();
+				}
+			}
+			if (k.isValid() && k.isWritable()) {
+				flush();
+			}
+			if (k.isValid() && k.isReadable()) {
+				read();
+			}
+		} catch (IOException ex) {
+			if (channel.isConnected()) {
+				abort(new SessionException("Unable to read data: " + ex.getMessage(), ex));
+			} else {
+				abort(new SessionException("Unable to connect to '" + hostname + "': " + ex.getMessage(), ex));
+			}
+			return;
+		} catch (SessionException ex) {
+			abort(ex);
+			return;
+		}
+		process();
+	}
+
+	void checkTimeout(long now) {
+		if (current != null && !closed && now > deadline) {
+			if (channel.isConnected()) {
+				abort(new SessionException("Did not find Prompt in read data"));
+			} else {
+				abort(new SessionException("Unable to connect to '" + hostname + "': connect timed out"));
+			}
+		}
+	}
+
+	/**
+	 * Close the session, failing the current and all queued operations.
+	 * @param cause Exception to fail the operations with.
+	 */
+	void abort(SessionException cause) {
+		closed = true;
+		if (current != null) {
+			current.future.fail(cause);
+			current = null;
+		}
+		failQueued(cause);
+		closeChannel();
+	}
+
+	// ------------------------------------------------------- Private Methods
+	private <T> SessionFuture<T> submit(Operation<T> op) {
+		operations.add(op);
+		reactor.schedule(this);
+		// The reactor may have drained the queues before the operation was added
+		if (!reactor.isRunning()) {
+			failQueued(new SessionException("Multiplexer closed"));
+		}
+		return op.future;
+	}
+
+	private void failQueued(SessionException cause) {
+		Operation<?> op;
+		while ((op = operations.poll()) != null) {
+			op.future.fail(cause);
+		}
+	}
+
+	private void closeChannel() {
+		if (key != null) {
+			key.cancel();
+		}
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (IOException ignored) {
+			}
+		}
+	}
+
+	private void read() throws IOException {
+		ByteBuffer buf = reactor.readBuffer;
+		int n;
+		do {
+			buf.clear();
+			n = channel.read(buf);
+			if (n == -1) {
+				throw new IOException("Connection closed by remote host");
+			}
+			byte[] data = buf.array();
+			int len = telnet.decode(data, 0, n);
+			for (int i = 0; i < len; i++) {
+				onByte(data[i] & 0xFF);
+			}
+		} while (n == buf.capacity());
+		if (writeBuffer.position() > 0) {
+			flush(); // All option replies of the read in one write
+		}
+		deadline = System.currentTimeMillis() + timeout;
+	}
+
+	private void onByte(int b) {
+		line.append(b);
+		if ((b == '\n' && line.endsWithCrLf()) || promptMatcher.find()) {
+			String l = line.toLine();
+			line.clear();
+			if (l.length() > 0 && promptMatcher.canEndWith(l.charAt(l.length() - 1))) {
+				Matcher matcher = promptPattern.matcher(l);
+				if (matcher.find()) {
+					blocks.add(new Block(lines, matcher.groupCount() > 0 ? matcher.group(1) : l));
+					lines = new ArrayList<String>();
+					return;
+				}
+			}
+			lines.add(l);
+		}
+	}
+
+	private void send(String data) throws IOException, SessionException {
+		if (channel == null || !channel.isConnected()) {
+			throw new SessionException("Not Connected!");
+		}
+		writeBuffer = encoder.encodeLine(data, writeBuffer);
+		flush();
+	}
+
+	private void queue(byte[] data, int off, int len) {
+		writeBuffer = TelnetEncoder.ensure(writeBuffer, len);
+		writeBuffer.put(data, off, len);
+	}
+
+	private void flush() throws IOException {
+		writeBuffer.flip();
+		channel.write(writeBuffer);
+		writeBuffer.compact();
+		key.interestOps(writeBuffer.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+	}
+
+//---------------------------------------------------------------- Inner Classes
+	/**
+	 * Lines read up to, and including, a prompt.
+	 */
+	private static final class Block {
+		final List<String> lines;
+		final String prompt;
+
+		Block(List<String> lines, String prompt) {
+			this.lines = lines;
+			this.prompt = prompt;
+		}
+	}
+
+	/**
+	 * A queued operation, fed with the prompts read from the remote host
+	 * until it is finished.
+	 */
+	private abstract class Operation<T> {
+		final SessionFuture<T> future = new SessionFuture<T>();
+		boolean finished = false;
+
+		abstract void start() throws IOException, SessionException;
+
+		void onConnected() throws IOException, SessionException {
+		}
+
+		void onPrompt(List<String> lines, String prompt) throws IOException, SessionException {
+		}
+
+		void done(T value) {
+			finished = true;
+			future.complete(value);
+		}
+	}
+
+	private class Connect extends Operation<Void> {
+		private final InetSocketAddress address;
+
+		Connect(InetSocketAddress address) {
+			this.address = address;
+		}
+
+		@Override
+		void start() throws IOException, SessionException {
+			if (channel != null) throw new SessionException("Already connected");
+			if (address.isUnresolved()) throw new SessionException("Unable to connect to '" + hostname + "': unknown host");
+			deadline = System.currentTimeMillis() + DEFAULT_CONNECT_TIMEOUT;
+			channel = SocketChannel.open();
+			channel.configureBlocking(false);
+			if (channel.connect(address)) {
+				key = channel.register(reactor.selector, SelectionKey.OP_READ, NioSession.this);
+				telnet.requestLocal(TelnetDecoder.OPT_NAWS, true);
+				flush();
+				done(null);
+			} else {
+				key = channel.register(reactor.selector, SelectionKey.OP_CONNECT, NioSession.this);
+			}
+		}
+
+		@Override
+		void onConnected() throws IOException {
+			key.interestOps(SelectionKey.OP_READ);
+			telnet.requestLocal(TelnetDecoder.OPT_NAWS, true);
+			flush();
+			deadline = System.currentTimeMillis() + timeout;
+			done(null);
+		}
+	}
+
+	private class Login extends Operation<Void> {
+		private final String username;
+		private final String password;
+		private int state = 0;
+
+		Login(String username, String password) {
+			this.username = username;
+			this.password = password;
+		}
+
+		@Override
+		void start() throws SessionException {
+			if (channel == null || !channel.isConnected()) throw new SessionException("Not Connected!");
+		}
+
+		@Override
+		void onPrompt(List<String> lines, String prompt) throws IOException, SessionException {
+			boolean user = userPromptPattern.matcher(prompt).find();
+			boolean pass = passwordPromptPattern.matcher(prompt).find();
+			if (state == 0 && user) {
+				if (username == null) throw new SessionException("Need username to Authenticate");
+				send(username);
+				state = 1;
+			} else if (state <= 1 && pass) {
+				if (password == null) throw new SessionException("Need password to Authenticate");
+				send(password);
+				state = 2;
+			} else if (state <= 2) {
+				if (user || pass) throw new SessionException("Authentication failed");
+				if (telnet.isLocalEnabled(TelnetDecoder.OPT_NAWS)) {
+					authenticated = true;
+					done(null);
+					return;
+				}
+				send("terminal length 0");
+				state = 3;
+			} else {
+				authenticated = true;
+				done(null);
+			}
+		}
+	}
+
+	private class Enable extends Operation<Void> {
+		private final String password;
+		private int state = 0;
+
+		Enable(String password) {
+			this.password = password;
+		}
+
+		@Override
+		void start() throws IOException, SessionException {
+			send("enable");
+		}
+
+		@Override
+		void onPrompt(List<String> lines, String prompt) throws IOException, SessionException {
+			if (state == 0 && prompt.endsWith(CiscoSession.ENABLED_PROMPT_CHR)) {
+				// already enabled, just move along
+				enabled = true;
+				done(null);
+			} else if (state == 0) {
+				if (prompt.equals("Password:")) {
+					send(password);
+				}
+				state = 1;
+			} else if (!prompt.endsWith(CiscoSession.ENABLED_PROMPT_CHR)) {
+				throw new SessionException("Failed to enable");
+			} else {
+				enabled = true;
+				done(null);
+			}
+		}
+	}
+
+	private class Cmd extends Operation<String[]> {
+		private final String command;
+
+		Cmd(String command) {
+			this.command = command;
+		}
+
+		@Override
+		void start() throws IOException, SessionException {
+			send(command);
+		}
+
+		@Override
+		void onPrompt(List<String> lines, String prompt) {
+			if (!lines.isEmpty() && lines.get(0).equals(command)) lines.remove(0);
+			done(lines.toArray(new String[lines.size()]));
+		}
+	}
+
+	private class Close extends Operation<Void> {
+		@Override
+		void start() {
+			closed = true;
+			closeChannel();
+			done(null);
+		}
+	}
+}
@@ -37,20 +37,23 @@ import java.util.regex.Pattern;
  * authentication and such.
  * <p>
  * Please note that this Class has an Internal <code>SessionOptionHandler</code>
- * that will automatically turn of anything the server wants it to do. This means
- * that no Terminal size negotiation will take place.
+ * that will automatically turn of anything the server wants it to do, except
+ * for the Terminal size (NAWS), which is offered so the remote host will not page
+ * the output. If the remote host refuses the Terminal size, paging is turned
+ * off with "terminal datadump" after login.
  * </p>
  *
  *
  * @author Michael Thorsager &lt;thorsager@gmail.com&gt;
  */
-public class OmniStackSession extends Session implements SessionOptionHandler {
+public class OmniStackSession extends Session implements CommandSession, SessionOptionHandler {
 
 	/** String that is the last char of an Enabled prompt */
 	private static final String ENABLED_PROMPT_CHR = "#";
 
 	/** String Containing the regex. to find prompts */
 	private static final String PROMPT_PATTERN = "(User Name:|Password:|\\w+[>#]|\\w+\\(config\\)#|\\w+\\(config-\\w+\\)#)$" ;
+	private static final String PAGER_PATTERN = "More: <space>,\\s+Quit: q( or CTRL\\+Z)?, One line: <return>\\s?$";
 
 	private boolean authenticated = false;
 	private boolean enabled = false;
@@ -61,6 +64,8 @@ public class OmniStackSession extends Session implements SessionOptionHandler {
 	 */
 	public OmniStackSession(String hostname) {
         super(hostname, null, null,Pattern.compile(PROMPT_PATTERN));
+		_setWindowSize(DEFAULT_WINDOW_WIDTH, DEFAULT_WINDOW_HEIGHT);
+		setPagerPattern(Pattern.compile(PAGER_PATTERN));
 	}
 
 	/**
@@ -72,6 +77,8 @@ public class OmniStackSession extends Session implements SessionOptionHandler {
 	public OmniStackSession(String hostname, Integer port) {
 		super(hostname, port, null,Pattern.compile(PROMPT_PATTERN));
 		this.setSessionOptionHandler(this);
+		_setWindowSize(DEFAULT_WINDOW_WIDTH, DEFAULT_WINDOW_HEIGHT);
+		setPagerPattern(Pattern.compile(PAGER_PATTERN));
 	}
 
 	/**
@@ -89,6 +96,7 @@ public class OmniStackSession extends Session implements SessionOptionHandler {
 	 */
 	public void login(String username, String password) throws SessionException, IOException {
 		if ( ! socket.isConnected() ) throw new SessionException("Not Connected!");
+		long started = System.nanoTime();
 		ReadData read = _read2prompt();
 
 		if ( read.getPrompt().equals("User Name:") ) {
@@ -106,30 +114,14 @@ public class OmniStackSession extends Session implements SessionOptionHandler {
 		if ( read.getPrompt().equals("User Name:") || read.getPrompt().equals("Password:") ) {
 			throw new SessionException("Authentication failed") ;
 		} else  {
-            cmd("terminal datadump");
+			if ( ! _isWindowSizeNegotiated() ) cmd("terminal datadump");
 			authenticated = true;
+			_loggedIn(started);
+			_learnPrompt();
 		}
 
 	}
 
-	/**
-	 * Execute a command on the remote host, and retrieve the resulting
-	 * output.
-	 * @param command Command line to be executed on remote host
-	 * @return Remote host output
-	 * @throws SessionException If unable to execute command.
-	 */
-	public String[] cmd(String command) throws SessionException {
-		try {
-			_sendln(command);
-			ReadData read = _read2prompt();
-			if (!read.isEmpty() && read.get(0).equals(command) ) read.remove(0);
-			return read.getDataAsStringArray();
-		} catch (IOException ex) {
-			throw new SessionException("Unable to send command",ex);
-		}
-	}
-
 	/**
 	 * Switch to enabled mode on remote host
 	 * @param password enable secret to be used on the remote host
@@ -148,6 +140,7 @@ public class OmniStackSession extends Session implements SessionOptionHandler {
 				throw new SessionException("Failed to enable");
 			} else {
 				enabled = true;
+				_learnPrompt();
 			}
 
 		} catch (IOException ex) {
@@ -0,0 +1,331 @@
+/*
+ * Copyright (c) 2016, Michael Thorsager <thorsager@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice, this
+ *    list of conditions and the following disclaimer in the documentation and/or
+ *    other materials provided with the distribution.
+ *
+ *  * Neither the name of Open Solutions nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.krakow.jnettelnet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Incremental prompt detector, used by the <code>Session</code> to check for
+ * a prompt every time a byte is added to the current line.
+ * <p>
+ * Prompt patterns are expected to be anchored at the end of the line (<i>$</i>),
+ * so only the tail of the line is ever examined:
+ * </p>
+ * <ul>
+ * <li>The set of characters a match can end with is derived from the pattern
+ * once, and the regex is only run when the line ends with one of those.</li>
+ * <li>The regex is only run over the last <code>window</code> characters of
+ * the line, so the cost of a check does not grow with the line length.</li>
+ * </ul>
+ * <p>
+ * If the end-characters of a pattern can not be determined (e.g. it ends
+ * with <i>.</i> or uses flags), every character will trigger a check.
+ * Prompts are assumed to be shorter than the window.
+ * </p>
+ *
+ * @author Michael Thorsager &lt;thorsager@gmail.com&gt;
+ */
+final class PromptMatcher {
+
+	/** Default number of trailing characters examined by the regex */
+	static final int DEFAULT_WINDOW = 256;
+
+	private static final String WHITESPACE = " \t\n\u000B\f\r";
+	private static final String DIGITS = "0123456789";
+	private static final String WORD = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789_";
+
+	private final CharSequence text;
+	private final Matcher matcher;
+	private final int window;
+	private final boolean[] endChars;
+
+	/**
+	 * Create a matcher for prompts at the end of <code>text</code>
+	 * @param pattern Prompt pattern
+	 * @param text The (mutable) line being read
+	 */
+	PromptMatcher(Pattern pattern, CharSequence text) {
+		this(pattern, text, DEFAULT_WINDOW);
+	}
+
+	/**
+	 * Create a matcher for prompts at the end of <code>text</code>
+	 * @param pattern Prompt pattern
+	 * @param text The (mutable) line being read
+	 * @param window Max. number of trailing characters to examine
+	 */
+	PromptMatcher(Pattern pattern, CharSequence text, int window) {
+		this.text = text;
+		this.window = window;
+		this.matcher = pattern.matcher(text);
+		this.matcher.useTransparentBounds(true);
+		this.matcher.useAnchoringBounds(false);
+		this.endChars = endChars(pattern);
+	}
+
+	/**
+	 * Checks if a prompt match could end with the given character
+	 * @param c last character of a line
+	 * @return false if the pattern can never match a line ending with <code>c</code>
+	 */
+	boolean canEndWith(char c) {
+		return endChars == null || c > 0xFF || endChars[c];
+	}
+
+	/**
+	 * Checks if the prompt pattern matches the tail of the text.
+	 * @return true if a prompt was found.
+	 */
+	boolean find() {
+		int len = text.length();
+		if (len == 0 || !canEndWith(text.charAt(len - 1))) {
+			return false;
+		}
+		matcher.reset();
+		matcher.region(len > window ? len - window : 0, len);
+		return matcher.find();
+	}
+
+	/**
+	 * Start of the last match found.
+	 * @return index in the text of the first character matched by <code>find</code>
+	 */
+	int start() {
+		return matcher.start();
+	}
+
+	// ----------------------------------------------------- Pattern analysis
+	/**
+	 * Derive the set of characters that a match of the pattern can end with.
+	 * @param pattern pattern to analyse
+	 * @return table indexed by character (0-255) or null if unknown.
+	 */
+	static boolean[] endChars(Pattern pattern) {
+		String re = pattern.pattern();
+		if (pattern.flags() != 0 || re.contains("\\Q")) {
+			return null;
+		}
+		for (int i = re.indexOf("(?"); i != -1; i = re.indexOf("(?", i + 1)) {
+			if (!isEscaped(re, i) && (i + 2 >= re.length() || re.charAt(i + 2) != ':')) {
+				return null; // flags, lookarounds, named groups..
+			}
+		}
+		boolean[] set = new boolean[256];
+		try {
+			return alternatives(re, 0, re.length(), set) ? set : null;
+		} catch (IndexOutOfBoundsException ex) {
+			return null; // Something we did not understand
+		}
+	}
+
+	private static boolean alternatives(String re, int from, int to, boolean[] set) {
+		int depth = 0;
+		int start = from;
+		for (int i = from; i < to; i++) {
+			char c = re.charAt(i);
+			if (c == '\\') {
+				i++;
+			} else if (c == '[') {
+				i = classEnd(re, i) - 1;
+			} else if (c == '(') {
+				depth++;
+			} else if (c == ')') {
+				depth--;
+			} else if (c == '|' && depth == 0) {
+				if (!sequence(re, start, i, set)) return false;
+				start = i + 1;
+			}
+		}
+		return sequence(re, start, to, set);
+	}
+
+	private static boolean sequence(String re, int from, int to, boolean[] set) {
+		List<int[]> atoms = new ArrayList<int[]>(); // {start, end, optional}
+		int i = from;
+		while (i < to) {
+			int start = i;
+			char c = re.charAt(i);
+			if (c == '\\') {
+				i += 2;
+			} else if (c == '[') {
+				i = classEnd(re, i);
+			} else if (c == '(') {
+				i = groupEnd(re, i);
+			} else {
+				i++;
+			}
+			int optional = 0;
+			if (i < to && "?*+{".indexOf(re.charAt(i)) != -1) {
+				char q = re.charAt(i);
+				if (q == '{') {
+					optional = re.charAt(i + 1) == '0' && !Character.isDigit(re.charAt(i + 2)) ? 1 : 0;
+					i = re.indexOf('}', i) + 1;
+				} else {
+					optional = q == '+' ? 0 : 1;
+					i++;
+				}
+				if (i < to && (re.charAt(i) == '?' || re.charAt(i) == '+')) {
+					i++; // lazy or possessive quantifier
+				}
+			}
+			atoms.add(new int[]{start, i, optional});
+		}
+
+		for (int a = atoms.size() - 1; a >= 0; a--) {
+			int[] atom = atoms.get(a);
+			if (isZeroWidth(re, atom[0])) {
+				continue;
+			}
+			if (!atom(re, atom[0], atom[1], set)) {
+				return false;
+			}
+			if (atom[2] == 0) {
+				return true;
+			}
+		}
+		return false; // the whole sequence may be empty
+	}
+
+	private static boolean isZeroWidth(String re, int at) {
+		char c = re.charAt(at);
+		if (c == '^' || c == '$') return true;
+		return c == '\\' && "bBAGZz".indexOf(re.charAt(at + 1)) != -1;
+	}
+
+	private static boolean atom(String re, int from, int to, boolean[] set) {
+		char c = re.charAt(from);
+		if (c == '(') {
+			int end = groupEnd(re, from);
+			int inner = re.startsWith("(?:", from) ? from + 3 : from + 1;
+			return alternatives(re, inner, end - 1, set);
+		} else if (c == '[') {
+			return charClass(re, from + 1, classEnd(re, from) - 1, set);
+		} else if (c == '\\') {
+			return escape(re.charAt(from + 1), set);
+		} else if (c == '.') {
+			return false;
+		}
+		add(set, c);
+		return true;
+	}
+
+	private static boolean charClass(String re, int from, int to, boolean[] set) {
+		if (from < to && re.charAt(from) == '^') {
+			return false;
+		}
+		for (int i = from; i < to; i++) {
+			char c = re.charAt(i);
+			if (c == '[' || re.startsWith("&&", i)) {
+				return false;
+			}
+			if (c == '\\') {
+				if (!escape(re.charAt(++i), set)) return false;
+			} else if (i + 2 < to && re.charAt(i + 1) == '-') {
+				char last = re.charAt(i + 2);
+				if (last == '\\') return false;
+				for (char r = c; r <= last && r <= 0xFF; r++) {
+					add(set, r);
+				}
+				i += 2;
+			} else {
+				add(set, c);
+			}
+		}
+		return true;
+	}
+
+	private static boolean escape(char c, boolean[] set) {
+		switch (c) {
+			case 's': addAll(set, WHITESPACE); return true;
+			case 'd': addAll(set, DIGITS); return true;
+			case 'w': addAll(set, WORD); return true;
+			case 't': add(set, '\t'); return true;
+			case 'n': add(set, '\n'); return true;
+			case 'r': add(set, '\r'); return true;
+			case 'f': add(set, '\f'); return true;
+			case 'e': add(set, '\u001B'); return true;
+			case 'a': add(set, '\u0007'); return true;
+			default:
+				if (Character.isLetterOrDigit(c)) {
+					return false; // \p, \x, \S, \W and friends
+				}
+				add(set, c);
+				return true;
+		}
+	}
+
+	private static void add(boolean[] set, char c) {
+		if (c <= 0xFF) set[c] = true;
+	}
+
+	private static void addAll(boolean[] set, String chars) {
+		for (int i = 0; i < chars.length(); i++) {
+			add(set, chars.charAt(i));
+		}
+	}
+
+	private static int classEnd(String re, int at) {
+		int i = at + 1;
+		if (re.charAt(i) == '^') i++;
+		if (re.charAt(i) == ']') i++; // a leading ']' is a literal
+		for (; re.charAt(i) != ']'; i++) {
+			if (re.charAt(i) == '\\') i++;
+		}
+		return i + 1;
+	}
+
+	private static int groupEnd(String re, int at) {
+		int depth = 0;
+		for (int i = at; ; i++) {
+			char c = re.charAt(i);
+			if (c == '\\') {
+				i++;
+			} else if (c == '[') {
+				i = classEnd(re, i) - 1;
+			} else if (c == '(') {
+				depth++;
+			} else if (c == ')' && --depth == 0) {
+				return i + 1;
+			}
+		}
+	}
+
+	private static boolean isEscaped(String re, int at) {
+		int n = 0;
+		for (int i = at - 1; i >= 0 && re.charAt(i) == '\\'; i--) {
+			n++;
+		}
+		return (n & 1) == 1;
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2016, Michael Thorsager <thorsager@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice, this
+ *    list of conditions and the following disclaimer in the documentation and/or
+ *    other materials provided with the distribution.
+ *
+ *  * Neither the name of Open Solutions nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.krakow.jnettelnet;
+
+/**
+ * Estimates how long to wait for data from a host, from the response times
+ * seen so far, in the way TCP estimates its retransmission timeout (RFC-6298).
+ * <p>
+ * The timeout is the smoothed response time plus four times its variation,
+ * so hosts that respond steadily get a short timeout, while hosts with an
+ * uneven output rate get a longer one. Until enough samples have been seen,
+ * the ceiling is used.
+ * </p>
+ *
+ * @author Michael Thorsager &lt;thorsager@gmail.com&gt;
+ */
+final class RttEstimator {
+
+	/** Number of samples needed before the estimate is used */
+	static final int MIN_SAMPLES = 4;
+
+	// Smoothed response time and variation, in microseconds
+	private long srtt = 0;
+	private long rttvar = 0;
+	private int samples = 0;
+
+	/**
+	 * Add a response time
+	 * @param nanos response time in nanoseconds
+	 */
+	void sample(long nanos) {
+		long r = nanos / 1000;
+		if (samples++ == 0) {
+			srtt = r;
+			rttvar = r / 2;
+		} else {
+			rttvar += (Math.abs(srtt - r) - rttvar) / 4;
+			srtt += (r - srtt) / 8;
+		}
+	}
+
+	/**
+	 * Get the current timeout estimate
+	 * @param floor Min. timeout in ms
+	 * @param ceiling Max. timeout in ms
+	 * @return timeout in ms, or <code>ceiling</code> if too few samples have been seen
+	 */
+	int timeout(int floor, int ceiling) {
+		if (samples < MIN_SAMPLES) {
+			return ceiling;
+		}
+		long t = (srtt + 4 * rttvar) / 1000;
+		return (int) Math.max(floor, Math.min(ceiling, t));
+	}
+}
@@ -34,7 +34,12 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 
@@ -42,9 +47,9 @@ import java.util.regex.Matcher;
  * Implements the simple basics of the Telnet Protocol. This
  * makes you able to communicate with any device running a Telnet server.
  * <p>
- * Please note that this Class has NO internal handling of Telnet protocol
- * options, such as Control of Local Echo and stuff like that. That must all
- * be handled through the use of The <code>SessionOptionHandler</code> interface.
+ * Telnet commands and option negotiation are handled by the session, all
+ * options are refused unless accepted by a <code>TelnetOptionHandler</code>,
+ * or by the legacy <code>SessionOptionHandler</code> interface.
  * </p>
  *
  * @author Michael Thorsager &lt;thorsager@gmail.com&gt;
@@ -52,9 +57,21 @@ import java.util.regex.Matcher;
 public class Session {
 
 	private SessionOptionHandler sesOptHand = null;
+	private TelnetOptionHandler optionHandler = null;
     private static final int DEFAULT_SOCKET_TIMEOUT = 5000;
 	private static final int DEFAULT_SOCKET_CONNECT_TIMEOUT = 3000;
-	private static int IAC = 0xFF;
+	private static final int MIN_ADAPTIVE_TIMEOUT = 1000;
+	private static final int DEFAULT_QUIET_PERIOD = 50;
+	private static final int RX_BUFFER_SIZE = 8192;
+	private static final int RAW_BUFFER_SIZE = 64 * 1024;
+	static final int DEFAULT_PIPELINE_WINDOW = 8;
+	/** Window size advertised by the vendor sessions, tall enough for the remote host never to page */
+	static final int DEFAULT_WINDOW_WIDTH = 512;
+	static final int DEFAULT_WINDOW_HEIGHT = 65535;
+	private static final byte[] CRLF = {'\r', '\n'};
+	private static final byte[] PAGER_ANSWER = {' '};
+	/** Commands that may change the prompt, matched by their first word, or an abbreviation of it */
+	private static final String[] MODE_COMMANDS = {"configure", "enable", "disable", "end", "exit", "quit", "logout"};
 	private String hostname;
 	protected int port;
 	protected Socket socket = null;
@@ -62,6 +79,49 @@ public class Session {
 	protected InputStream input = null;
 	protected OutputStream output = null;
 
+	// Receive buffer, holding data read from the socket but not yet consumed.
+	private final byte[] rxBuf = new byte[RX_BUFFER_SIZE];
+	private int rxPos = 0;
+	private int rxLen = 0;
+	private final LineBuffer line = new LineBuffer();
+	private boolean lineTerminated = false;
+	private boolean linePrompt = false;
+	private final PromptMatcher promptMatcher;
+	private final Matcher lineMatcher;
+	private ByteBuffer rawBuf = null;
+	// Transmit buffer, option replies are queued here and sent along with the next command
+	private ByteBuffer txBuf = ByteBuffer.allocate(256);
+	private TelnetEncoder encoder = new TelnetEncoder(LineBuffer.LATIN1);
+	private TelnetDecoder telnet = new TelnetDecoder(new Negotiator());
+	private PromptMatcher pagerMatcher = null;
+	private int pagerFloor = -1;
+	private int escState = 0;
+	private int socketTimeout = DEFAULT_SOCKET_TIMEOUT;
+	private int connectTimeout = DEFAULT_SOCKET_CONNECT_TIMEOUT;
+	private int soTimeout = 0;
+	private boolean adaptiveTimeout = false;
+	private final RttEstimator rtt = new RttEstimator();
+	private long maxWait = 0;
+	private long deadline = 0;
+	private boolean confirmPrompt = false;
+	private int quietPeriod = DEFAULT_QUIET_PERIOD;
+	private String lastPrompt = null;
+	private boolean learnPrompt = false;
+	private boolean relearnPrompt = false;
+	private byte[] exactPrompt = null;
+	private int exactLast;
+	private int windowWidth = 0;
+	private int windowHeight = 0;
+	private String terminalType = null;
+	// Measurements, only made when there is someone to report them to
+	private SessionMetrics metrics = null;
+	private SessionTrace trace = null;
+	private CommandCache cache = null;
+	private String cacheMode = null;
+	private long readAt = 0;
+	private long commandStart = 0;
+	private int linesRead = 0;
+
 	// ---------------------------------------------------------- Public Methods
 
 	/**
@@ -101,6 +161,8 @@ public class Session {
 		} else {
 			this.promptPattern = promptPattern;
 		}
+		this.promptMatcher = new PromptMatcher(this.promptPattern, line);
+		this.lineMatcher = this.promptPattern.matcher(line);
 
 		this.sesOptHand = sesOptHndlr;
 		this.hostname = hostname;
@@ -133,6 +195,121 @@ public class Session {
 		}
 	}
 
+	/**
+	 * Read/Receive data/command output from the server, passing each line to
+	 * a handler as it is read, so output of any size can be processed
+	 * without holding it in memory.
+	 * @param handler Handler receiving the lines
+	 * @return The prompt
+	 * @throws SessionException If unable to read data from server
+	 */
+	public String read(LineHandler handler) throws SessionException {
+		try {
+			return _read2prompt(handler);
+		} catch (IOException ex) {
+			throw new SessionException("Unable to read data", ex);
+		}
+	}
+
+	/**
+	 * Execute a command on the remote host, and retrieve the resulting
+	 * output.
+	 * @param command Command line to be executed on remote host
+	 * @return Remote host output
+	 * @throws SessionException If unable to execute command.
+	 */
+	public String[] cmd(String command) throws SessionException {
+		String[] cached = _cached(command);
+		if (cached != null) return cached;
+		try {
+			_startCommand();
+			_sendln(command);
+			ReadData read = _read2prompt();
+			_modeChanged();
+			if (!read.isEmpty() && read.get(0).equals(command) ) read.remove(0);
+			return _cache(command, read.getDataAsStringArray());
+		} catch (IOException ex) {
+			throw new SessionException("Unable to send command",ex);
+		}
+	}
+
+	/**
+	 * Execute a command on the remote host, and retrieve the resulting
+	 * output, failing if it is not complete within the deadline.
+	 * @param command Command line to be executed on remote host
+	 * @param deadline Max. time to spend on the command
+	 * @return Remote host output
+	 * @throws SessionException If unable to execute command, or the deadline was exceeded.
+	 */
+	public String[] cmd(String command, Duration deadline) throws SessionException {
+		_setDeadline(deadline);
+		try {
+			return cmd(command);
+		} finally {
+			_setDeadline(null);
+		}
+	}
+
+	/**
+	 * Execute a command on the remote host, and stream the resulting output
+	 * to a handler, line by line as it is read.
+	 * @param command Command line to be executed on remote host
+	 * @param handler Handler receiving the lines of output
+	 * @return The prompt following the output
+	 * @throws SessionException If unable to execute command.
+	 */
+	public String cmd(String command, LineHandler handler) throws SessionException {
+		try {
+			return _cmd(command, handler);
+		} catch (IOException ex) {
+			throw new SessionException("Unable to send command",ex);
+		}
+	}
+
+	/**
+	 * Execute a command on the remote host, and write the raw bytes of the
+	 * resulting output to a channel, e.g. a <code>FileChannel</code> for backups.
+	 * @param command Command line to be executed on remote host
+	 * @param sink Channel receiving the output
+	 * @return number of bytes written
+	 * @throws SessionException If unable to execute command, or write the output.
+	 */
+	public long cmdTo(String command, WritableByteChannel sink) throws SessionException {
+		try {
+			return _cmdTo(command, sink);
+		} catch (IOException ex) {
+			throw new SessionException("Unable to send command",ex);
+		}
+	}
+
+	/**
+	 * Execute a batch of commands on the remote host, sending them ahead
+	 * without waiting for the output of each one. This saves a round-trip
+	 * per command on high latency links.
+	 * @param commands Command lines to be executed on remote host
+	 * @return Remote host output of each command
+	 * @throws SessionException If unable to execute the commands.
+	 */
+	public List<String[]> cmdBatch(List<String> commands) throws SessionException {
+		return cmdBatch(commands, DEFAULT_PIPELINE_WINDOW);
+	}
+
+	/**
+	 * Execute a batch of commands on the remote host, sending up to
+	 * <code>window</code> commands ahead of the output being read.
+	 * @param commands Command lines to be executed on remote host
+	 * @param window max. number of commands sent ahead
+	 * @return Remote host output of each command
+	 * @throws SessionException If unable to execute the commands.
+	 */
+	public List<String[]> cmdBatch(List<String> commands, int window) throws SessionException {
+		try {
+			return _cmdBatch(commands, window);
+		} catch (IOException ex) {
+			throw new SessionException("Unable to send command",ex);
+		}
+	}
+
 	/**
 	 * Disconnect the session from the host, and close all
 	 * steams.
@@ -162,15 +339,32 @@ public class Session {
 	 * Connects the session to the host
 	 */
 	public void connect() throws SessionException {
+		long started = System.nanoTime();
+		boolean reconnect = socket != null;
 		try {
 			socket = new Socket();
-			socket.connect(new InetSocketAddress(hostname,port),DEFAULT_SOCKET_CONNECT_TIMEOUT);
-            socket.setSoTimeout(DEFAULT_SOCKET_TIMEOUT);
+			socket.connect(new InetSocketAddress(hostname,port),connectTimeout);
+			socket.setSoTimeout(socketTimeout);
+			soTimeout = socketTimeout;
 
 			input = socket.getInputStream();
 			output = socket.getOutputStream();
+			rxPos = rxLen = 0;
+			txBuf.clear();
+			learnPrompt = false;
+			relearnPrompt = false;
+			exactPrompt = null;
+			commandStart = 0;
+			linesRead = 0;
+			telnet = new TelnetDecoder(new Negotiator());
+			if (windowWidth > 0) telnet.requestLocal(TelnetDecoder.OPT_NAWS, true);
+			if (terminalType != null) telnet.requestLocal(TelnetDecoder.OPT_TTYPE, true);
 
 			_readln();// get options
+			if (metrics != null) {
+				metrics.onConnect(hostname, System.nanoTime() - started);
+				if (reconnect) metrics.onReconnect(hostname);
+			}
 		} catch (UnknownHostException ex) {
 			throw new SessionException("Unable to connect to '" + hostname + "': "+ex.getMessage(), ex);
 		} catch (IOException ex) {
@@ -186,7 +380,11 @@ public class Session {
      */
 	public void setSocketTimeout(int timeout) throws SessionException {
 		try {
-			socket.setSoTimeout(timeout);
+			socketTimeout = timeout;
+			if (socket != null) {
+				socket.setSoTimeout(timeout);
+				soTimeout = timeout;
+			}
 		} catch (SocketException e) {
 			throw new SessionException("Unable to set Socket TimeOut: "+e.getMessage(), e);
 		}
@@ -198,13 +396,32 @@ public class Session {
      * @throws SessionException if unable to set Session Timeout
      */
     public void resetSocketTimeout() throws SessionException {
-        try {
-            socket.setSoTimeout(DEFAULT_SOCKET_TIMEOUT);
-        } catch (SocketException e) {
-            throw new SessionException("Unable to reset Socket TimeOut: "+e.getMessage(), e);
-        }
+        setSocketTimeout(DEFAULT_SOCKET_TIMEOUT);
     }
 
+	/**
+	 * Set the timeout used when connecting to the remote host
+	 * @param timeout timeout in ms
+	 */
+	public void setConnectTimeout(int timeout) {
+		this.connectTimeout = timeout;
+	}
+
+	/**
+	 * Turn adaptive timeouts on or off.
+	 * <p>
+	 * When on, the time to wait for data is learned from how long the
+	 * remote host has taken to respond to earlier commands, in the range
+	 * from one second up to the socket timeout. A responsive host that does
+	 * not show the expected prompt then fails fast, instead of waiting for
+	 * the full socket timeout.
+	 * </p>
+	 * @param adaptiveTimeout true to learn the timeout
+	 */
+	public void setAdaptiveTimeout(boolean adaptiveTimeout) {
+		this.adaptiveTimeout = adaptiveTimeout;
+	}
+
 	/**
 	 * Set the SessionOptoinHanlder class for the session.
 	 * @param sesOptHand Class implementing teh SessionOptionHandler interface.
@@ -213,6 +430,146 @@ public class Session {
 		this.sesOptHand = sesOptHand;
 	}
 
+	/**
+	 * Set the handler deciding which Telnet options to accept, takes
+	 * precedence over any <code>SessionOptionHandler</code>.
+	 * @param optionHandler handler, if set to null all options are refused
+	 */
+	public void setOptionHandler(TelnetOptionHandler optionHandler) {
+		this.optionHandler = optionHandler;
+	}
+
+	/**
+	 * Set the receiver of the measurements made by the session, such as a
+	 * <code>MetricsRegistry</code>.
+	 * @param metrics receiver, or null to make no measurements
+	 */
+	public void setMetrics(SessionMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Set the trace recording the traffic of the session. The recording is
+	 * done by the thread using the session, so a trace must not be shared
+	 * by sessions.
+	 * @param trace trace, or null to record nothing
+	 */
+	public void setTrace(SessionTrace trace) {
+		this.trace = trace;
+	}
+
+	/**
+	 * @return the trace recording the traffic of the session, or null
+	 */
+	public SessionTrace getTrace() {
+		return trace;
+	}
+
+	/**
+	 * Set the cache answering commands from earlier output. The cache can
+	 * be shared by sessions to the same, and other, hosts.
+	 * @param cache cache, or null to always send the commands
+	 */
+	public void setCommandCache(CommandCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * @return the last prompt read, or null if no prompt has been read
+	 */
+	public String getPrompt() {
+		return lastPrompt;
+	}
+
+	/**
+	 * Turn prompt confirmation on or off.
+	 * <p>
+	 * A broad prompt pattern, like the default <i>.*[#\\$:]$</i>, also matches
+	 * output lines such as "Description:". When confirmation is on, a match is
+	 * only taken as the prompt if it is the same as the last prompt seen, or
+	 * if the remote host has nothing more to send: All data read has been
+	 * consumed, no more is available on the socket, and none arrives within
+	 * the quiet period. Lines ending with "\r\n" are never prompts.
+	 * </p>
+	 * @param confirmPrompt true to confirm prompts
+	 */
+	public void setPromptConfirmation(boolean confirmPrompt) {
+		this.confirmPrompt = confirmPrompt;
+	}
+
+	/**
+	 * Set the time the remote host must be quiet, for a new prompt to be
+	 * confirmed. Default is 50ms.
+	 * @param quietPeriod time in ms
+	 */
+	public void setQuietPeriod(int quietPeriod) {
+		this.quietPeriod = quietPeriod;
+	}
+
+	/**
+	 * Set the charset of the text sent to, and read from, the remote host.
+	 * Default is ISO-8859-1.
+	 * <p>
+	 * Prompts are matched against the raw bytes read, so prompt patterns
+	 * should stick to ASCII.
+	 * </p>
+	 * @param charset charset, e.g. UTF-8 for devices with UTF-8 descriptions
+	 */
+	public void setCharset(Charset charset) {
+		line.setCharset(charset);
+		encoder = new TelnetEncoder(charset);
+	}
+
+	/**
+	 * Set the pattern recognizing the pager marker (such as "--More--")
+	 * printed by the remote host when it waits for a key to continue output.
+	 * <p>
+	 * When the marker is found at the end of the data read, it is answered
+	 * with a space and removed from the output, along with the backspaces,
+	 * carriage returns and escape sequences the host uses to erase it.
+	 * </p>
+	 * @param pagerPattern pattern anchored at the end of the line (<i>$</i>), or null to disable
+	 */
+	public void setPagerPattern(Pattern pagerPattern) {
+		this.pagerMatcher = pagerPattern == null ? null : new PromptMatcher(pagerPattern, line);
+	}
+
+	/**
+	 * Set the window size offered to the remote host, using the NAWS option
+	 * (RFC-1073). If the option has already been negotiated, the new size is
+	 * sent right away.
+	 * <p>
+	 * Advertising a window taller than any output, keeps the remote host from
+	 * paging, without having to set the terminal length after login.
+	 * </p>
+	 * @param width window width in characters (1-65535), or 0 to refuse NAWS
+	 * @param height window height in lines (1-65535)
+	 * @throws SessionException If unable to send the window size
+	 */
+	public void setWindowSize(int width, int height) throws SessionException {
+		if (width < 0 || width > 0xFFFF || height < 0 || height > 0xFFFF) {
+			throw new SessionException("Invalid window size: " + width + "x" + height);
+		}
+		_setWindowSize(width, height);
+		if (width > 0 && telnet.isLocalEnabled(TelnetDecoder.OPT_NAWS)) {
+			try {
+				_sendWindowSize();
+				_flush();
+			} catch (IOException ex) {
+				throw new SessionException("Unable to send window size", ex);
+			}
+		}
+	}
+
+	/**
+	 * Set the terminal type reported to the remote host, using the
+	 * TERMINAL-TYPE option (RFC-1091). Takes effect on the next connect.
+	 * @param terminalType terminal type, such as "VT100", or null to refuse the option
+	 */
+	public void setTerminalType(String terminalType) {
+		this.terminalType = terminalType;
+	}
+
 	/**
 	 * Returns whether or not Session is connected to remote host. 
 	 * @return true if Session is connected.
@@ -221,24 +578,142 @@ public class Session {
 		return socket.isConnected();
 	}
 
+	/**
+	 * Check that the remote host is still responsive, by sending an empty
+	 * line and reading back the prompt.
+	 * @return true if the prompt was read.
+	 */
+	public boolean probe() {
+		try {
+			_sendln("");
+			_read2prompt();
+			return true;
+		} catch (IOException ex) {
+			return false;
+		}
+	}
+
 	// ------------------------------------------------------- Protected Methods
 	/**
-	 * Send an Array of bytes to the remote host.
+	 * Send an Array of bytes to the remote host, as is, along with any
+	 * queued option replies.
 	 * @param data Data to be sent to remote host.
 	 * @throws IOException 
 	 */
 	protected void _send(byte[] data) throws IOException {
-		output.write(data);
-		output.flush();
+		txBuf = TelnetEncoder.ensure(txBuf, data.length);
+		txBuf.put(data);
+		_flush();
 	}
 
 	/**
-	 * Send a text string to the remote host
+	 * Send a text string to the remote host, along with any queued option
+	 * replies, in a single write. Any IAC in the encoded text is escaped.
 	 * @param data String to be sent to remote host
 	 * @throws IOException 
 	 */
 	protected void _sendln(String data) throws IOException {
-		_send((data + "\r\n").getBytes());
+		_checkMode(data);
+		txBuf = encoder.encodeLine(data, txBuf);
+		_flush();
+	}
+
+	/**
+	 * Start learning the prompt. Once the prompt is known exactly, which is
+	 * the case after login, the next prompt found is compared byte by byte
+	 * to the line read, instead of using the prompt pattern.
+	 * <p>
+	 * The pattern is still checked once all data read has been consumed, so
+	 * a changed prompt is found and learned in its place. When a command
+	 * that may change the prompt (enable, configure, end, exit...) is sent,
+	 * learning stops and the pattern is used for every byte, until the
+	 * command has returned to a prompt. Subclasses sending such commands
+	 * themselves, such as <code>enable()</code>, must call this method again
+	 * once the mode change has succeeded.
+	 * Prompts holding a '(', such as configuration prompts, are not learned,
+	 * as they change with every sub-mode.
+	 * </p>
+	 */
+	protected void _learnPrompt() {
+		learnPrompt = true;
+		relearnPrompt = false;
+		exactPrompt = null;
+	}
+
+	/**
+	 * Report a successful login to the metrics, to be called by the login
+	 * methods of subclasses.
+	 * @param started <code>System.nanoTime()</code> when the login started
+	 */
+	protected void _loggedIn(long started) {
+		if (metrics != null) metrics.onLogin(hostname, System.nanoTime() - started);
+	}
+
+	/**
+	 * Look up the output of a command in the command cache, to be called by
+	 * the <code>cmd()</code> methods of subclasses before sending the command.
+	 * @param command Command line to be executed
+	 * @return copy of the cached output, or null if the command must be sent
+	 */
+	protected String[] _cached(String command) {
+		if (cache == null) {
+			return null;
+		}
+		cacheMode = lastPrompt;
+		if (lastPrompt == null || _isConfigMode()) {
+			return null;
+		}
+		return cache.get(hostname, lastPrompt, command);
+	}
+
+	/**
+	 * Put the output of a command into the command cache, unless the
+	 * command changed the prompt.
+	 * @param command Command line executed
+	 * @param output Output of the command
+	 * @return the output
+	 */
+	protected String[] _cache(String command, String[] output) {
+		if (cache != null && cacheMode != null && cacheMode.equals(lastPrompt) && !_isConfigMode()
+				&& !_isModeCommand(_firstWord(command))) {
+			cache.put(hostname, cacheMode, command, output);
+		}
+		return output;
+	}
+
+	/**
+	 * Set a deadline for the reads that follow, regardless of how steadily
+	 * data is received. Once it has passed, reading fails with a
+	 * <code>SocketTimeoutException</code>, leaving the conversation with the
+	 * remote host in an unknown state.
+	 * @param deadline time from now, or null to remove the deadline
+	 */
+	protected void _setDeadline(Duration deadline) {
+		if (deadline == null) {
+			this.deadline = 0;
+		} else {
+			long d = System.nanoTime() + deadline.toNanos();
+			this.deadline = d == 0 ? 1 : d;
+		}
+	}
+
+	/**
+	 * Set the window size offered on the next connect, without sending it.
+	 * @param width window width in characters, or 0 to refuse NAWS
+	 * @param height window height in lines
+	 */
+	protected void _setWindowSize(int width, int height) {
+		this.windowWidth = width;
+		this.windowHeight = height;
+	}
+
+	/**
+	 * Returns whether the window size has been accepted by the remote host,
+	 * in which case there is no need to turn off paging after login.
+	 * @return true if the NAWS option is enabled
+	 */
+	protected boolean _isWindowSizeNegotiated() {
+		return telnet.isLocalEnabled(TelnetDecoder.OPT_NAWS);
 	}
 
 	/**
@@ -251,6 +726,11 @@ public class Session {
 	 * is returned.
 	 * </p>
 	 * <p>
+	 * Data is read from the socket in blocks into the receive buffer, which is
+	 * then scanned for options, line terminators and prompts in a single pass.
+	 * Prompt detection only examines the tail of the line, see <code>PromptMatcher</code>.
+	 * </p>
+	 * <p>
 	 * <b>Note:</b>A line of data is defined as what is terminated by "\r\n".
 	 * </p>
 	 * 
@@ -258,38 +738,10 @@ public class Session {
 	 * @throws IOException if unable to read from Socket.
 	 */
 	protected String _readln() throws IOException {
-		int i;
-		SessionOptionList ol = new SessionOptionList();
-		StringBuilder buf = new StringBuilder();
-		while ((i = input.read()) != -1) {
-			if (i == IAC) {
-				byte[] opt = new byte[2];
-                //noinspection ResultOfMethodCallIgnored
-                input.read(opt);
-				ol.add(new SessionOption(opt[0], opt[1]));
-				continue;
-			}
-			char c = (char) i;
-			buf.append(c);
-			if (buf.toString().endsWith("\r\n")) {
-				break;
-			}
-			Matcher matcher = promptPattern.matcher(buf.toString());
-			if (matcher.find()) {
-				break;
-			}
-		}
-
-		// If options was read, call onReadOptions hook...
-		if (!ol.isEmpty()) {
-			onReadOptions(ol);
-		}
-
-		if (buf.length() == 0) {
+		if (!_scanLine()) {
 			return null;
-		} else {
-			return buf.toString().replaceAll("\r\n", "");
 		}
+		return line.toLine();
 	}
 
 	/**
@@ -301,45 +753,529 @@ public class Session {
 	 * @throws IOException  If unable to read data from remote host.
 	 */
 	protected ReadData _read2prompt() throws IOException {
-		ReadData data = new ReadData();
-		String line;
-		while ((line = _readln()) != null) {
-			Matcher matcher = promptPattern.matcher(line);
-			if (matcher.find()) {
-				if (matcher.groupCount() > 0) {
-					data.setPrompt(matcher.group(1));
-				} else {
-					data.add(line);
+		final ReadData data = new ReadData();
+		data.setPrompt(_read2prompt(new LineHandler() {
+			@Override
+			public void onLine(CharSequence line) {
+				data.add(line.toString());
+			}
+		}));
+		return data;
+	}
+
+	/**
+	 * Reads data until what passes for a Prompt is reached, like
+	 * <code>_read2prompt()</code>, but passes every line to a handler as it
+	 * is read instead of collecting them.
+	 * @param handler Handler receiving the lines read.
+	 * @return The prompt
+	 * @throws IOException  If unable to read data from remote host, or if the handler fails.
+	 */
+	protected String _read2prompt(LineHandler handler) throws IOException {
+		String prompt = null;
+		while (_scanLine()) {
+			if (_isPrompt()) {
+				prompt = lineMatcher.group(lineMatcher.groupCount() > 0 ? 1 : 0);
+				break;
+			}
+			handler.onLine(line.text());
+		}
+		if (prompt == null) {
+			_failed("Did not find Prompt in read data", false);
+			throw new IOException("Did not find Prompt in read data");
+		}
+		return prompt;
+	}
+
+	/**
+	 * Send a command, and stream the resulting output to a handler. If the
+	 * first line is the echo of the command, it is skipped.
+	 * @param command Command line to be executed on remote host
+	 * @param handler Handler receiving the lines of output.
+	 * @return The prompt following the output
+	 * @throws IOException If unable to execute command, or if the handler fails.
+	 */
+	protected String _cmd(String command, LineHandler handler) throws IOException {
+		_startCommand();
+		_sendln(command);
+		String prompt = _read2prompt(new EchoSkipper(command, handler));
+		_modeChanged();
+		return prompt;
+	}
+
+	/**
+	 * Send a batch of commands without waiting for the output of each one,
+	 * and split the output into the results of each command by the prompts
+	 * that follow them.
+	 * <p>
+	 * At most <code>window</code> commands are outstanding at any time, when
+	 * the output of a command has been read, the next command is sent. The
+	 * remote host must buffer the commands sent ahead, and echo each one
+	 * after it has written the prompt, as network devices do. Commands that
+	 * ask questions, instead of returning to the prompt, must not be batched.
+	 * </p>
+	 * @param commands Command lines to be executed on remote host
+	 * @param window max. number of commands sent ahead
+	 * @return The output of each command, with the echo of the command removed.
+	 * @throws IOException If unable to execute the commands.
+	 */
+	protected List<String[]> _cmdBatch(List<String> commands, int window) throws IOException {
+		if (window < 1) throw new IllegalArgumentException("window must be positive");
+		List<String[]> results = new ArrayList<String[]>(commands.size());
+		int sent = Math.min(window, commands.size());
+		for (int i = 0; i < sent; i++) {
+			_checkMode(commands.get(i));
+			txBuf = encoder.encodeLine(commands.get(i), txBuf);
+		}
+		_flush();
+
+		for (int i = 0; i < commands.size(); i++) {
+			// Pipelined commands are timed from the previous prompt
+			if (metrics != null && commandStart == 0) commandStart = System.nanoTime();
+			final ReadData data = new ReadData();
+			_read2prompt(new EchoSkipper(commands.get(i), new LineHandler() {
+				@Override
+				public void onLine(CharSequence line) {
+					data.add(line.toString());
 				}
+			}));
+			results.add(data.getDataAsStringArray());
+			if (sent < commands.size()) {
+				_sendln(commands.get(sent++));
+			}
+		}
+		_modeChanged();
+		return results;
+	}
+
+	/**
+	 * Send a command, and write the raw bytes of the resulting output to a
+	 * channel. Telnet options, the echo of the command and the prompt are
+	 * removed, nothing else is touched. The output is not decoded into
+	 * characters, but copied from the receive buffer in large blocks.
+	 * @param command Command line to be executed on remote host
+	 * @param sink Channel receiving the output, e.g. a <code>FileChannel</code>
+	 * @return number of bytes written to the channel
+	 * @throws IOException If unable to execute command, or write to the channel.
+	 */
+	protected long _cmdTo(String command, WritableByteChannel sink) throws IOException {
+		_startCommand();
+		_sendln(command);
+		if (rawBuf == null) {
+			rawBuf = ByteBuffer.allocateDirect(RAW_BUFFER_SIZE);
+		}
+		rawBuf.clear();
+		long written = 0;
+		boolean prompt = false;
+		boolean first = true;
+		while (_scanLine()) {
+			if (_isPrompt()) {
+				prompt = true;
 				break;
 			}
-			data.add(line);
+			if (first) {
+				first = false;
+				if (line.length() == command.length() && command.contentEquals(line)) continue;
+			}
+			if (rawBuf.remaining() < line.length() + CRLF.length) {
+				written += _drain(sink);
+			}
+			if (rawBuf.remaining() < line.length() + CRLF.length) {
+				written += _write(sink, line.asByteBuffer());
+			} else {
+				rawBuf.put(line.asByteBuffer());
+			}
+			if (lineTerminated) {
+				rawBuf.put(CRLF);
+			}
 		}
-        if (data.getPrompt() == null) {
-            throw new IOException("Did not find Prompt in read data");
-        }
-		return data;
+		written += _drain(sink);
+		if (!prompt) {
+			_failed("Did not find Prompt in read data", false);
+			throw new IOException("Did not find Prompt in read data");
+		}
+		_modeChanged();
+		return written;
 	}
 
 	// --------------------------------------------------------- Private Methods
 	/**
-	 * Gets called whenever <code>_readln</code> has encountered SessionOptions
-	 * to forward the received options to the SessionOptionHandler.<br>
-	 * If the SessionOptionHandler returns a non-empty <code>SessionOptionList</code>
-	 * the content of this list, will be sent to the remote host.
-	 * @param ol List of Options read by <code>_readln</n>
-	 * @throws IOException 
+	 * Checks if the line buffer holds what passes for a prompt, if it does
+	 * <code>lineMatcher</code> holds the match.
+	 * @return true if a prompt was found.
 	 */
-	private void onReadOptions(SessionOptionList ol) throws IOException {
-		if (sesOptHand != null) {
-			System.out.println("got: " + ol);
-			SessionOptionList sendlist = sesOptHand.onOptionsRead(ol);
-			_send(sendlist.getBytes());
-			System.out.println("send: " + sendlist);
-		} else {
-			System.out.println("ignoring: " + ol);
-			// ignore alle options, if we have no option handler..
+	private boolean _isPrompt() {
+		if (line.length() == 0 || !promptMatcher.canEndWith(line.charAt(line.length() - 1))) {
+			return false;
+		}
+		if ((confirmPrompt || exactPrompt != null) && !linePrompt) {
+			return false; // Only trust the scan
+		}
+		lineMatcher.reset();
+		if (!lineMatcher.find()) {
+			return false;
+		}
+		if (lastPrompt == null || !lastPrompt.contentEquals(line)) {
+			lastPrompt = line.toString();
+		}
+		if (learnPrompt && (exactPrompt == null || !line.contentEquals(exactPrompt))) {
+			exactPrompt = lastPrompt.indexOf('(') == -1 ? lastPrompt.getBytes(LineBuffer.LATIN1) : null;
+			if (exactPrompt != null) exactLast = exactPrompt[exactPrompt.length - 1] & 0xFF;
+		}
+		// The longest wait for data since the last prompt, is the response time of the host
+		rtt.sample(maxWait);
+		maxWait = 0;
+		if (metrics != null) {
+			long now = System.nanoTime();
+			metrics.onPrompt(hostname, now - readAt, linesRead);
+			if (commandStart != 0) {
+				metrics.onCommand(hostname, now - commandStart);
+				commandStart = 0;
+			}
+		}
+		linesRead = 0;
+		return true;
+	}
+
+	/**
+	 * Write the content of the raw buffer to a channel, and empty it.
+	 */
+	private long _drain(WritableByteChannel sink) throws IOException {
+		rawBuf.flip();
+		long n = _write(sink, rawBuf);
+		rawBuf.clear();
+		return n;
+	}
+
+	private static long _write(WritableByteChannel sink, ByteBuffer data) throws IOException {
+		long n = 0;
+		while (data.hasRemaining()) {
+			n += sink.write(data);
+		}
+		return n;
+	}
+
+	/**
+	 * Reads the next line into the line buffer, as described for <code>_readln</code>.
+	 * Any "\r\n" terminating the line is removed.
+	 * @return false if end of stream was reached before any data was read.
+	 * @throws IOException if unable to read from Socket.
+	 */
+	private boolean _scanLine() throws IOException {
+		line.clear();
+		lineTerminated = false;
+		linePrompt = false;
+		pagerFloor = -1;
+		escState = 0;
+		scan:
+		while (true) {
+			while (rxPos < rxLen) {
+				int i = rxBuf[rxPos++] & 0xFF;
+				if (pagerFloor >= 0 && _erase(i)) {
+					continue;
+				}
+				line.append(i);
+				if (i == '\n' && line.endsWithCrLf()) {
+					line.truncate(line.length() - 2);
+					lineTerminated = true;
+					linesRead++;
+					break scan;
+				}
+				if (exactPrompt != null) {
+					if (i == exactLast && line.contentEquals(exactPrompt) && (!confirmPrompt || _confirmPrompt())) {
+						linePrompt = true;
+						break scan;
+					}
+				} else if (promptMatcher.find() && (!confirmPrompt || _confirmPrompt())) {
+					linePrompt = true;
+					break scan;
+				}
+			}
+			// All data read is consumed, the host may be waiting with a prompt
+			// that is not the learned one, or with a pager marker
+			if (exactPrompt != null && promptMatcher.find() && (!confirmPrompt || _confirmPrompt())) {
+				linePrompt = true;
+				break;
+			}
+			if (rxPos < rxLen) {
+				continue;
+			}
+			_answerPager();
+			if (!_fill()) {
+				break;
+			}
+		}
+		return lineTerminated || line.length() > 0;
+	}
+
+	/**
+	 * Forget the learned prompt, if a command may change it.
+	 * @param command command being sent
+	 */
+	private void _checkMode(String command) {
+		if (!learnPrompt && cache == null) {
+			return;
+		}
+		String word = _firstWord(command);
+		if (learnPrompt && _isModeCommand(word)) {
+			// Prompts seen before the mode change has succeeded, such as
+			// "Password:", must not be learned
+			learnPrompt = false;
+			relearnPrompt = true;
+			exactPrompt = null;
 		}
+		// Output cached before a configuration change may be stale
+		if (cache != null && (_isConfigMode() || (word.length() >= 4 && "configure".startsWith(word)))) {
+			cache.invalidate(hostname);
+		}
+	}
+
+	/**
+	 * Start timing a command, it is reported to the metrics when the prompt
+	 * following its output is found. Other lines sent, such as the login,
+	 * are not timed.
+	 */
+	private void _startCommand() {
+		if (metrics != null) commandStart = System.nanoTime();
+	}
+
+	/**
+	 * Learn the prompt again, if the command that has just returned to a
+	 * prompt may have changed it.
+	 */
+	private void _modeChanged() {
+		if (relearnPrompt) {
+			_learnPrompt();
+		}
+	}
+
+	/**
+	 * @return true if the last prompt is a configuration mode prompt
+	 */
+	private boolean _isConfigMode() {
+		return lastPrompt != null && lastPrompt.contains("(config");
+	}
+
+	private static String _firstWord(String command) {
+		String word = command.trim();
+		int sp = word.indexOf(' ');
+		return (sp == -1 ? word : word.substring(0, sp)).toLowerCase();
+	}
+
+	private static boolean _isModeCommand(String word) {
+		if (word.length() < 2) {
+			return false;
+		}
+		for (String mc : MODE_COMMANDS) {
+			if (mc.startsWith(word)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Confirm that the prompt pattern matching the line buffer, is really
+	 * the prompt, as described for <code>setPromptConfirmation</code>. If
+	 * more data arrives while waiting, it is left in the receive buffer.
+	 * @return true if the match is the prompt.
+	 * @throws IOException if unable to read from Socket.
+	 */
+	private boolean _confirmPrompt() throws IOException {
+		if (lastPrompt != null && lastPrompt.contentEquals(line)) {
+			return true;
+		}
+		if (rxPos < rxLen || input.available() > 0) {
+			return false;
+		}
+		try {
+			return !_fill(quietPeriod);
+		} catch (SocketTimeoutException ex) {
+			return true;
+		}
+	}
+
+	/**
+	 * Set the socket timeout for the next read, from the adaptive estimate
+	 * and the time left until the deadline. The socket is only touched when
+	 * the timeout changes.
+	 * @param limit max. timeout in ms, or 0 for no limit
+	 * @throws IOException if the deadline has passed, or unable to set the timeout.
+	 */
+	private void _applyTimeout(int limit) throws IOException {
+		int timeout = adaptiveTimeout && socketTimeout > 0 ? rtt.timeout(MIN_ADAPTIVE_TIMEOUT, socketTimeout) : socketTimeout;
+		if (limit > 0 && (timeout == 0 || limit < timeout)) {
+			timeout = limit;
+		}
+		if (deadline != 0) {
+			// Rounded up, so a read timing out at the deadline is seen to have reached it
+			long left = (deadline - System.nanoTime() + 999999) / 1000000;
+			if (left <= 0) {
+				throw new SocketTimeoutException("Deadline exceeded");
+			}
+			if (timeout == 0 || left < timeout) {
+				timeout = (int) left;
+			}
+		}
+		if (timeout != soTimeout && socket != null) {
+			socket.setSoTimeout(timeout);
+			soTimeout = timeout;
+		}
+	}
+
+	/**
+	 * Called when all data read has been consumed, to check if the remote
+	 * host is waiting on a pager marker. As the host stops sending until the
+	 * marker is answered, it can only be at the end of the data read.
+	 * @throws IOException if unable to write to Socket.
+	 */
+	private void _answerPager() throws IOException {
+		if (pagerMatcher != null && pagerMatcher.find()) {
+			pagerFloor = pagerMatcher.start();
+			line.truncate(pagerFloor);
+			_send(PAGER_ANSWER);
+		}
+	}
+
+	/**
+	 * Apply the sequences used by the remote host to erase an answered pager
+	 * marker. Backspaces and lone carriage returns never erase beyond the
+	 * point where the marker was, and escape sequences are dropped.
+	 * @param i byte read
+	 * @return true if the byte was consumed
+	 */
+	private boolean _erase(int i) {
+		if (escState == 1) {
+			escState = i == '[' ? 2 : 0;
+			return true;
+		} else if (escState == 2) {
+			if (i >= 0x40 && i <= 0x7E) escState = 0;
+			return true;
+		}
+		if (i == '\b') {
+			if (line.length() > pagerFloor) line.truncate(line.length() - 1);
+			return true;
+		} else if (i == 0x1B) {
+			escState = 1;
+			return true;
+		}
+		int len = line.length();
+		if (i != '\n' && len > pagerFloor && line.charAt(len - 1) == '\r') {
+			line.truncate(pagerFloor);
+		}
+		return false;
+	}
+
+	/**
+	 * Refill the receive buffer with what ever data the socket has to offer,
+	 * blocking until at least one byte of data is available. Telnet commands
+	 * are removed from the data by the decoder.
+	 * @return false if end of stream has been reached.
+	 * @throws IOException if unable to read from Socket.
+	 */
+	private boolean _fill() throws IOException {
+		return _fill(0);
+	}
+
+	/**
+	 * Refill the receive buffer, waiting no longer than <code>limit</code>.
+	 * @param limit max. time to wait in ms, or 0 for the socket timeout
+	 * @return false if end of stream has been reached.
+	 * @throws IOException if unable to read from Socket, or no data arrived in time.
+	 */
+	private boolean _fill(int limit) throws IOException {
+		int n;
+		do {
+			_flush();
+			long start = System.nanoTime();
+			try {
+				_applyTimeout(limit);
+				n = input.read(rxBuf, 0, rxBuf.length);
+			} catch (SocketTimeoutException ex) {
+				boolean expired = deadline != 0 && deadline - System.nanoTime() <= 0;
+				// Running out of a limit given by the caller is not a failure
+				if (limit == 0 || soTimeout != limit || expired) {
+					_failed(expired ? "Deadline exceeded" : "Read timed out", true);
+				}
+				if (expired) {
+					throw new SocketTimeoutException("Deadline exceeded");
+				}
+				throw ex;
+			}
+			readAt = System.nanoTime();
+			long wait = readAt - start;
+			if (wait > maxWait) maxWait = wait;
+			if (n <= 0) {
+				return false;
+			}
+			if (metrics != null) metrics.onRead(hostname, n);
+			if (trace != null) trace.record(SessionTrace.RX, rxBuf, 0, n);
+			n = telnet.decode(rxBuf, 0, n);
+		} while (n == 0);
+		rxPos = 0;
+		rxLen = n;
+		return true;
+	}
+
+	/**
+	 * Report a failure to read, to the metrics and the trace.
+	 * @param cause description of the failure
+	 * @param timeout true if the read timed out
+	 */
+	private void _failed(String cause, boolean timeout) {
+		if (timeout && metrics != null) metrics.onTimeout(hostname);
+		if (trace != null) trace.failed(hostname, cause);
+	}
+
+	/**
+	 * Write the transmit buffer to the socket, if it holds anything.
+	 * @throws IOException if unable to write to Socket.
+	 */
+	private void _flush() throws IOException {
+		if (txBuf.position() > 0) {
+			output.write(txBuf.array(), txBuf.arrayOffset(), txBuf.position());
+			output.flush();
+			if (metrics != null) metrics.onWrite(hostname, txBuf.position());
+			if (trace != null) trace.record(SessionTrace.TX, txBuf.array(), txBuf.arrayOffset(), txBuf.position());
+			txBuf.clear();
+		}
+	}
+
+	/**
+	 * Send the window size in a NAWS subnegotiation.
+	 * @throws IOException if unable to write to Socket.
+	 */
+	private void _sendWindowSize() throws IOException {
+		telnet.sendSubnegotiation(TelnetDecoder.OPT_NAWS, new byte[] {
+			(byte) (windowWidth >> 8), (byte) windowWidth,
+			(byte) (windowHeight >> 8), (byte) windowHeight
+		});
+	}
+
+	/**
+	 * Ask the legacy <code>SessionOptionHandler</code> whether to accept an
+	 * option, by handing it the single option read, and looking for the
+	 * accepting reply in what it returns.
+	 * @param code option code read (DO or WILL)
+	 * @param option option
+	 * @param accept option code accepting the option (WILL or DO)
+	 * @return true if the option was accepted
+	 */
+	private boolean _accept(int code, int option, int accept) {
+		SessionOptionList ol = new SessionOptionList();
+		ol.add(new SessionOption(code, option));
+		if (sesOptHand == null) {
+			if (trace != null) trace.event("ignoring: " + ol);
+			return false;
+		}
+		SessionOptionList sendlist = sesOptHand.onOptionsRead(ol);
+		if (trace != null) trace.event("got: " + ol + " send: " + sendlist);
+		for (SessionOption o : sendlist) {
+			if (o.getOptionCode() == accept && o.getOption() == option) {
+				return true;
+			}
+		}
+		return false;
 	}
 
 //---------------------------------------------------------------- Inner Classes
@@ -368,4 +1304,91 @@ public class Session {
 			return "ReadData{" + "prompt=" + prompt + ", buffer=" + super.toString() + '}';
 		}
 	}
+
+	/**
+	 * Connects the Telnet decoder to the option handlers and the socket.
+	 */
+	private final class Negotiator implements TelnetDecoder.Listener {
+
+		@Override
+		public boolean acceptLocal(int option) {
+			if (option == TelnetDecoder.OPT_NAWS && windowWidth > 0) {
+				return true;
+			}
+			if (option == TelnetDecoder.OPT_TTYPE && terminalType != null) {
+				return true;
+			}
+			if (optionHandler != null) {
+				return optionHandler.acceptLocal(option);
+			}
+			return _accept(SessionOption.DO, option, SessionOption.WILL);
+		}
+
+		@Override
+		public boolean acceptRemote(int option) {
+			if (optionHandler != null) {
+				return optionHandler.acceptRemote(option);
+			}
+			return _accept(SessionOption.WILL, option, SessionOption.DO);
+		}
+
+		@Override
+		public void onOptionChanged(int option, boolean local, boolean enabled) throws IOException {
+			if (metrics != null) metrics.onOption(hostname, option, local, enabled);
+			if (trace != null) trace.option(option, local, enabled);
+			if (local && enabled && option == TelnetDecoder.OPT_NAWS && windowWidth > 0) {
+				_sendWindowSize();
+			}
+		}
+
+		@Override
+		public void onSubnegotiation(int option, byte[] data, int off, int len) throws IOException {
+			if (option == TelnetDecoder.OPT_TTYPE && terminalType != null) {
+				if (len > 0 && data[off] == TelnetDecoder.TTYPE_SEND) {
+					byte[] type = terminalType.getBytes("US-ASCII");
+					byte[] reply = new byte[type.length + 1];
+					reply[0] = TelnetDecoder.TTYPE_IS;
+					System.arraycopy(type, 0, reply, 1, type.length);
+					telnet.sendSubnegotiation(option, reply);
+				}
+			} else if (optionHandler != null) {
+				byte[] reply = optionHandler.onSubnegotiation(option, data, off, len);
+				if (reply != null) {
+					telnet.sendSubnegotiation(option, reply);
+				}
+			}
+		}
+
+		@Override
+		public void send(byte[] data, int off, int len) {
+			// Queued until the next command, or the next read
+			txBuf = TelnetEncoder.ensure(txBuf, len);
+			txBuf.put(data, off, len);
+		}
+	}
+
+	/**
+	 * Passes lines on to another handler, skipping the first line if it
+	 * is the echo of the command.
+	 */
+	private static final class EchoSkipper implements LineHandler {
+
+		private final String command;
+		private final LineHandler handler;
+		private boolean first = true;
+
+		EchoSkipper(String command, LineHandler handler) {
+			this.command = command;
+			this.handler = handler;
+		}
+
+		@Override
+		public void onLine(CharSequence line) throws IOException {
+			if (first) {
+				first = false;
+				if (line.length() == command.length() && command.contentEquals(line)) return;
+			}
+			handler.onLine(line);
+		}
+	}
 }
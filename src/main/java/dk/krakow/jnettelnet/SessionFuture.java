@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2016, Michael Thorsager <thorsager@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice, this
+ *    list of conditions and the following disclaimer in the documentation and/or
+ *    other materials provided with the distribution.
+ *
+ *  * Neither the name of Open Solutions nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.krakow.jnettelnet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The pending result of an operation on a <code>NioSession</code>.
+ * <p>
+ * Listeners added to the future are run once it completes, either on the
+ * thread completing the future or, if it has already been completed, on the
+ * thread adding the listener. Listeners run on a selector thread must not
+ * block.
+ * </p>
+ *
+ * @author Michael Thorsager &lt;thorsager@gmail.com&gt;
+ */
+public class SessionFuture<T> implements Future<T> {
+
+	private final CountDownLatch latch = new CountDownLatch(1);
+	private final List<Runnable> listeners = new ArrayList<Runnable>();
+	private boolean done = false;
+	private boolean cancelled = false;
+	private T value;
+	private Throwable failure;
+
+	/**
+	 * Add a listener to be run when the future completes.
+	 * @param listener Listener to run
+	 */
+	public void addListener(Runnable listener) {
+		synchronized (this) {
+			if (!done) {
+				listeners.add(listener);
+				return;
+			}
+		}
+		listener.run();
+	}
+
+	/**
+	 * Cancel the operation, if it has not yet been sent to the remote host
+	 * it will be skipped. If it has, its output will still be read, but discarded.
+	 * @param mayInterruptIfRunning ignored
+	 * @return true if the future was cancelled.
+	 */
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		synchronized (this) {
+			if (done) return false;
+			cancelled = true;
+		}
+		finish();
+		return true;
+	}
+
+	@Override
+	public synchronized boolean isCancelled() {
+		return cancelled;
+	}
+
+	@Override
+	public synchronized boolean isDone() {
+		return done || cancelled;
+	}
+
+	@Override
+	public T get() throws InterruptedException, ExecutionException {
+		latch.await();
+		return result();
+	}
+
+	@Override
+	public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		if (!latch.await(timeout, unit)) {
+			throw new TimeoutException();
+		}
+		return result();
+	}
+
+	// ------------------------------------------------------- Package Methods
+	/**
+	 * Complete the future with a value
+	 * @param value result of the operation
+	 * @return false if the future was already done
+	 */
+	boolean complete(T value) {
+		synchronized (this) {
+			if (done || cancelled) return false;
+			this.value = value;
+			done = true;
+		}
+		finish();
+		return true;
+	}
+
+	/**
+	 * Complete the future with a failure
+	 * @param failure cause of the failure
+	 * @return false if the future was already done
+	 */
+	boolean fail(Throwable failure) {
+		synchronized (this) {
+			if (done || cancelled) return false;
+			this.failure = failure;
+			done = true;
+		}
+		finish();
+		return true;
+	}
+
+	// ------------------------------------------------------- Private Methods
+	private synchronized T result() throws ExecutionException {
+		if (cancelled) throw new CancellationException();
+		if (failure != null) throw new ExecutionException(failure.getMessage(), failure);
+		return value;
+	}
+
+	private void finish() {
+		List<Runnable> run;
+		synchronized (this) {
+			done = true;
+			run = new ArrayList<Runnable>(listeners);
+			listeners.clear();
+		}
+		latch.countDown();
+		for (Runnable r : run) {
+			r.run();
+		}
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2016, Michael Thorsager <thorsager@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice, this
+ *    list of conditions and the following disclaimer in the documentation and/or
+ *    other materials provided with the distribution.
+ *
+ *  * Neither the name of Open Solutions nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.krakow.jnettelnet;
+
+/**
+ * Receives measurements from a <code>Session</code>, as they are made.
+ * <p>
+ * Methods are called on the thread using the session, in the middle of
+ * reading, so they must be quick and must not throw. Sessions without
+ * metrics make no measurements at all. Times are in nanoseconds.
+ * </p>
+ *
+ * @author Michael Thorsager &lt;thorsager@gmail.com&gt;
+ * @see MetricsRegistry
+ */
+public interface SessionMetrics {
+
+	/**
+	 * A connection was made, including reading the first line from the host
+	 * @param hostname host connected to
+	 * @param nanos time taken
+	 */
+	public void onConnect(String hostname, long nanos);
+
+	/**
+	 * A session that had been connected before, was connected again
+	 * @param hostname host connected to
+	 */
+	public void onReconnect(String hostname);
+
+	/**
+	 * A login was successful
+	 * @param hostname host logged in to
+	 * @param nanos time taken by the login
+	 */
+	public void onLogin(String hostname, long nanos);
+
+	/**
+	 * The prompt following a command was found, the lines sent by the login
+	 * are not commands
+	 * @param hostname host running the command
+	 * @param nanos time from sending the command until the prompt was found
+	 */
+	public void onCommand(String hostname, long nanos);
+
+	/**
+	 * A prompt was found
+	 * @param hostname host sending the prompt
+	 * @param nanos time from reading the data completing the prompt, until it was found
+	 * @param lines number of lines read before the prompt
+	 */
+	public void onPrompt(String hostname, long nanos, int lines);
+
+	/**
+	 * Data was read from the host
+	 * @param hostname host read from
+	 * @param bytes number of bytes, including telnet commands
+	 */
+	public void onRead(String hostname, int bytes);
+
+	/**
+	 * Data was written to the host
+	 * @param hostname host written to
+	 * @param bytes number of bytes, including telnet commands
+	 */
+	public void onWrite(String hostname, int bytes);
+
+	/**
+	 * A telnet option was enabled or disabled
+	 * @param hostname host negotiated with
+	 * @param option option code
+	 * @param local true if it is an option on our side
+	 * @param enabled true if enabled
+	 */
+	public void onOption(String hostname, int option, boolean local, boolean enabled);
+
+	/**
+	 * A read timed out
+	 * @param hostname host read from
+	 */
+	public void onTimeout(String hostname);
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2016, Michael Thorsager <thorsager@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice, this
+ *    list of conditions and the following disclaimer in the documentation and/or
+ *    other materials provided with the distribution.
+ *
+ *  * Neither the name of Open Solutions nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.krakow.jnettelnet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drives a large number of <code>NioSession</code>s from a few selector
+ * threads, instead of having a thread blocked on each <code>Session</code>.
+ * <pre>
+ *	SessionMultiplexer mux = new SessionMultiplexer();
+ *	NioSession ns = mux.open("cisco.host.com");
+ *	ns.connect();
+ *	ns.login("myusername", "Secret");
+ *	Future&lt;String[]&gt; version = ns.cmd("show version");
+ *	ns.close();
+ *	for (String line: version.get()) { System.out.println(line); }
+ *	mux.close();
+ * </pre>
+ * <p>
+ * Sessions are assigned to the selector threads round-robin. The threads are
+ * daemon threads, but should be stopped using <code>close()</code>.
+ * </p>
+ *
+ * @author Michael Thorsager &lt;thorsager@gmail.com&gt;
+ */
+public class SessionMultiplexer {
+
+	/** How often (ms) the selector threads check for timed out operations */
+	static final int TIMEOUT_TICK = 100;
+
+	private static final AtomicInteger instances = new AtomicInteger();
+
+	private final Reactor[] reactors;
+	private final AtomicInteger next = new AtomicInteger();
+
+	/**
+	 * Create a multiplexer with one selector thread per available processor.
+	 * @throws SessionException If unable to open the selectors
+	 */
+	public SessionMultiplexer() throws SessionException {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Create a multiplexer
+	 * @param threads number of selector threads
+	 * @throws SessionException If unable to open the selectors
+	 */
+	public SessionMultiplexer(int threads) throws SessionException {
+		if (threads < 1) throw new IllegalArgumentException("Need at least one thread");
+		int id = instances.incrementAndGet();
+		reactors = new Reactor[threads];
+		try {
+			for (int i = 0; i < threads; i++) {
+				reactors[i] = new Reactor();
+				Thread t = new Thread(reactors[i], "jnettelnet-mux-" + id + "-" + i);
+				t.setDaemon(true);
+				t.start();
+			}
+		} catch (IOException ex) {
+			close();
+			throw new SessionException("Unable to open selector: " + ex.getMessage(), ex);
+		}
+	}
+
+	/**
+	 * Create session on the default Telnet tcp port-number of 23
+	 * @param hostname Name of remote host
+	 * @return an unconnected session
+	 */
+	public NioSession open(String hostname) {
+		return open(hostname, null);
+	}
+
+	/**
+	 * Create session on a non-standard tcp port-number
+	 * @param hostname Name of remote host
+	 * @param port port-number
+	 * @return an unconnected session
+	 */
+	public NioSession open(String hostname, Integer port) {
+		Reactor r = reactors[(next.getAndIncrement() & Integer.MAX_VALUE) % reactors.length];
+		return new NioSession(r, hostname, port);
+	}
+
+	/**
+	 * Stop all selector threads, closing all sessions.
+	 */
+	public void close() {
+		for (Reactor r : reactors) {
+			if (r != null) r.shutdown();
+		}
+	}
+
+//---------------------------------------------------------------- Inner Classes
+	/**
+	 * A selector thread, serving a set of sessions.
+	 */
+	static final class Reactor implements Runnable {
+
+		final Selector selector;
+		/** Shared read buffer, sessions consume all data read on every read. Backed by an array, the Telnet decoder works in place */
+		final ByteBuffer readBuffer = ByteBuffer.allocate(64 * 1024);
+		private final Queue<NioSession> scheduled = new ConcurrentLinkedQueue<NioSession>();
+		private volatile boolean running = true;
+
+		Reactor() throws IOException {
+			selector = Selector.open();
+		}
+
+		/**
+		 * Have the session process its operations on the selector thread
+		 * @param session session with pending operations
+		 */
+		void schedule(NioSession session) {
+			scheduled.add(session);
+			selector.wakeup();
+		}
+
+		boolean isRunning() {
+			return running;
+		}
+
+		void shutdown() {
+			running = false;
+			selector.wakeup();
+		}
+
+		@Override
+		public void run() {
+			long nextTick = System.currentTimeMillis() + TIMEOUT_TICK;
+			while (running) {
+				try {
+					selector.select(TIMEOUT_TICK);
+				} catch (IOException ex) {
+					break;
+				}
+
+				NioSession session;
+				while ((session = scheduled.poll()) != null) {
+					session.process();
+				}
+
+				Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+				while (it.hasNext()) {
+					SelectionKey key = it.next();
+					it.remove();
+					((NioSession) key.attachment()).onSelected(key);
+				}
+
+				long now = System.currentTimeMillis();
+				if (now >= nextTick) {
+					for (SelectionKey key : selector.keys()) {
+						if (key.isValid()) ((NioSession) key.attachment()).checkTimeout(now);
+					}
+					nextTick = now + TIMEOUT_TICK;
+				}
+			}
+
+			SessionException closed = new SessionException("Multiplexer closed");
+			for (SelectionKey key : selector.keys()) {
+				((NioSession) key.attachment()).abort(closed);
+			}
+			NioSession session;
+			while ((session = scheduled.poll()) != null) {
+				session.abort(closed);
+			}
+			try {
+				selector.close();
+			} catch (IOException ignored) {
+			}
+		}
+	}
+}
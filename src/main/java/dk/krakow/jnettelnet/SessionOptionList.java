@@ -30,8 +30,6 @@
 
 package dk.krakow.jnettelnet;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.util.ArrayList;
 
 /**
@@ -48,16 +46,14 @@ public class SessionOptionList extends ArrayList<SessionOption> {
 	 * @return array of bytes ready for transfer.
 	 */
 	public byte[] getBytes() {
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		byte[] array = null;
+		byte[] array = new byte[size() * 3];
+		int n = 0;
 		for (SessionOption o: this) {
-			try {
-				baos.write(o.getBytes());
-				array = baos.toByteArray();
-				baos.close();
-			} catch (IOException ignored) { }
+			array[n++] = (byte) 0xFF;
+			array[n++] = (byte) o.getOptionCode();
+			array[n++] = (byte) o.getOption();
 		}
-		return array != null ? array : new byte[0] ;
+		return array;
 	}
 	
 }
@@ -0,0 +1,312 @@
+/*
+ * Copyright (c) 2016, Michael Thorsager <thorsager@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice, this
+ *    list of conditions and the following disclaimer in the documentation and/or
+ *    other materials provided with the distribution.
+ *
+ *  * Neither the name of Open Solutions nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.krakow.jnettelnet;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps authenticated sessions alive, so that they can be reused instead of
+ * doing connect, login and enable for every poll of a device.
+ * <pre>
+ *	SessionPool pool = new SessionPool(CiscoSession.class);
+ *	CommandSession cs = pool.borrow("cisco.host.com", null, new Credentials("user", "Secret", "evenMoreSecret"));
+ *	try {
+ *		for (String line: cs.cmd("show version") ) { System.out.println(line); }
+ *		pool.release(cs);
+ *	} catch (SessionException ex) {
+ *		pool.invalidate(cs);
+ *	}
+ * </pre>
+ * <p>
+ * Sessions are pooled per host, port and credentials. An idle session is
+ * checked with a probe (empty line, expecting the prompt back) before it is
+ * handed out, and replaced by a newly logged in session if the probe fails.
+ * Sessions idle for longer than the max. idle time are closed, both when
+ * the pool is used and by a background thread.
+ * </p>
+ *
+ * @author Michael Thorsager &lt;thorsager@gmail.com&gt;
+ */
+public class SessionPool {
+
+	private static final long DEFAULT_MAX_IDLE = 5 * 60 * 1000;
+	private static final int DEFAULT_MAX_IDLE_PER_KEY = 2;
+
+	private final SessionFactory factory;
+	private long maxIdle = DEFAULT_MAX_IDLE;
+	private int maxIdlePerKey = DEFAULT_MAX_IDLE_PER_KEY;
+
+	private final Map<Key, Deque<Idle>> idle = new HashMap<Key, Deque<Idle>>();
+	private final Map<CommandSession, Key> borrowed = new IdentityHashMap<CommandSession, Key>();
+	private ScheduledExecutorService evictor = null;
+	private boolean closed = false;
+
+	/**
+	 * Create a pool of a vendor session type, like <code>CiscoSession.class</code>.
+	 * The type must have a public (String hostname, Integer port) constructor.
+	 * @param type vendor session type
+	 */
+	public SessionPool(Class<? extends CommandSession> type) {
+		this(new FleetRunner.ReflectiveSessionFactory(type));
+	}
+
+	/**
+	 * Create a pool, using a factory to create the sessions
+	 * @param factory Factory creating the vendor sessions
+	 */
+	public SessionPool(SessionFactory factory) {
+		this.factory = factory;
+	}
+
+	/**
+	 * Set how long a session may be idle in the pool, before it is closed.
+	 * Should be below the idle timeout of the devices.
+	 * @param maxIdle max. idle time in ms
+	 */
+	public synchronized void setMaxIdle(long maxIdle) {
+		this.maxIdle = maxIdle;
+	}
+
+	/**
+	 * Set how many idle sessions to keep for the same host, port and credentials.
+	 * @param maxIdlePerKey max. number of idle sessions
+	 */
+	public synchronized void setMaxIdlePerKey(int maxIdlePerKey) {
+		this.maxIdlePerKey = maxIdlePerKey;
+	}
+
+	/**
+	 * Get an authenticated (and enabled, if an enable secret is given) session
+	 * for a host, reusing an idle session if one is available and alive.
+	 * @param hostname Name of the host
+	 * @param port port-number, or null for the Telnet default
+	 * @param credentials Credentials to log in with
+	 * @return session, which must be given back using <code>release</code> or <code>invalidate</code>
+	 * @throws SessionException If unable to connect or log in.
+	 */
+	public CommandSession borrow(String hostname, Integer port, Credentials credentials) throws SessionException {
+		Key key = new Key(hostname, port == null ? 23 : port, credentials);
+		Idle candidate;
+		while ((candidate = takeIdle(key)) != null) {
+			if (candidate.session.probe()) {
+				return lend(key, candidate.session);
+			}
+			candidate.session.close();
+		}
+
+		CommandSession session = factory.create(hostname, port);
+		try {
+			session.connect();
+			session.login(credentials.getUsername(), credentials.getPassword());
+			if (credentials.getEnablePassword() != null) {
+				session.enable(credentials.getEnablePassword());
+			}
+		} catch (IOException ex) {
+			session.close();
+			throw new SessionException("Unable to login on '" + hostname + "': " + ex.getMessage(), ex);
+		} catch (SessionException ex) {
+			session.close();
+			throw ex;
+		}
+		return lend(key, session);
+	}
+
+	/**
+	 * Give a session back to the pool, to be reused.
+	 * @param session session obtained from <code>borrow</code>
+	 */
+	public void release(CommandSession session) {
+		List<CommandSession> close = new ArrayList<CommandSession>();
+		synchronized (this) {
+			Key key = borrowed.remove(session);
+			if (key == null) throw new IllegalArgumentException("Session was not borrowed from this pool");
+			Deque<Idle> q = idle.get(key);
+			if (q == null) {
+				q = new ArrayDeque<Idle>();
+				idle.put(key, q);
+			}
+			if (closed || q.size() >= maxIdlePerKey) {
+				close.add(session);
+			} else {
+				q.addFirst(new Idle(session, System.currentTimeMillis()));
+				startEvictor();
+			}
+			collectExpired(System.currentTimeMillis(), close);
+		}
+		closeAll(close);
+	}
+
+	/**
+	 * Close a borrowed session, which is not to be reused, i.e. after an error.
+	 * @param session session obtained from <code>borrow</code>
+	 */
+	public void invalidate(CommandSession session) {
+		synchronized (this) {
+			borrowed.remove(session);
+		}
+		session.close();
+	}
+
+	/**
+	 * Close all sessions that have been idle for too long.
+	 */
+	public void evictIdle() {
+		List<CommandSession> close = new ArrayList<CommandSession>();
+		synchronized (this) {
+			collectExpired(System.currentTimeMillis(), close);
+		}
+		closeAll(close);
+	}
+
+	/**
+	 * Close all idle sessions, and stop pooling. Borrowed sessions are
+	 * closed when released.
+	 */
+	public void close() {
+		List<CommandSession> close = new ArrayList<CommandSession>();
+		synchronized (this) {
+			closed = true;
+			for (Deque<Idle> q : idle.values()) {
+				for (Idle i : q) close.add(i.session);
+			}
+			idle.clear();
+			if (evictor != null) evictor.shutdown();
+		}
+		closeAll(close);
+	}
+
+	// ------------------------------------------------------- Private Methods
+	private Idle takeIdle(Key key) {
+		List<CommandSession> close = new ArrayList<CommandSession>();
+		Idle i;
+		synchronized (this) {
+			Deque<Idle> q = idle.get(key);
+			if (q == null) return null;
+			long now = System.currentTimeMillis();
+			while ((i = q.pollFirst()) != null && now - i.since > maxIdle) {
+				close.add(i.session);
+			}
+		}
+		closeAll(close);
+		return i;
+	}
+
+	private synchronized CommandSession lend(Key key, CommandSession session) {
+		borrowed.put(session, key);
+		return session;
+	}
+
+	private void collectExpired(long now, List<CommandSession> close) {
+		for (Iterator<Deque<Idle>> qi = idle.values().iterator(); qi.hasNext(); ) {
+			Deque<Idle> q = qi.next();
+			for (Iterator<Idle> it = q.iterator(); it.hasNext(); ) {
+				Idle i = it.next();
+				if (now - i.since > maxIdle) {
+					close.add(i.session);
+					it.remove();
+				}
+			}
+			if (q.isEmpty()) qi.remove();
+		}
+	}
+
+	private void startEvictor() {
+		if (evictor != null) return;
+		evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "jnettelnet-pool-evictor");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		long period = Math.max(1000, maxIdle / 2);
+		evictor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				evictIdle();
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	private static void closeAll(List<CommandSession> sessions) {
+		for (CommandSession s : sessions) {
+			s.close();
+		}
+	}
+
+//---------------------------------------------------------------- Inner Classes
+	private static final class Key {
+		final String hostname;
+		final int port;
+		final Credentials credentials;
+
+		Key(String hostname, int port, Credentials credentials) {
+			this.hostname = hostname;
+			this.port = port;
+			this.credentials = credentials;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) return false;
+			Key k = (Key) o;
+			return port == k.port && hostname.equals(k.hostname) && credentials.equals(k.credentials);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * (31 * hostname.hashCode() + port) + credentials.hashCode();
+		}
+	}
+
+	private static final class Idle {
+		final CommandSession session;
+		final long since;
+
+		Idle(CommandSession session, long since) {
+			this.session = session;
+			this.since = since;
+		}
+	}
+}
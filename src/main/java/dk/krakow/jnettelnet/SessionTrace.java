@@ -0,0 +1,323 @@
+/*
+ * Copyright (c) 2016, Michael Thorsager <thorsager@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice, this
+ *    list of conditions and the following disclaimer in the documentation and/or
+ *    other materials provided with the distribution.
+ *
+ *  * Neither the name of Open Solutions nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.krakow.jnettelnet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the raw data sent and received by a <code>Session</code>, with
+ * timestamps and option events, in a ring buffer holding the most recent
+ * traffic.
+ * <p>
+ * Recording is a copy into the ring, without locking or allocation. The
+ * session is the only writer, while the trace can be dumped from any
+ * thread at any time. If a dump directory is set, the trace is dumped
+ * when the session fails to find a prompt or times out, so a mismatch can
+ * be studied, or replayed, without running against the device again.
+ * </p>
+ * <p>
+ * A dump is a compact binary transcript: the magic "JNTT", a version byte,
+ * the wall clock time of the start of the trace in ms, followed by the
+ * records as type (1 byte), time since the start in ns (8 bytes), length
+ * (2 bytes) and data, ending with a record of type 0. Use
+ * <code>read</code> to load one.
+ * </p>
+ *
+ * @author Michael Thorsager &lt;thorsager@gmail.com&gt;
+ */
+public class SessionTrace {
+
+	/** Data received, before telnet commands are removed */
+	public static final int RX = 1;
+	/** Data sent, including telnet commands */
+	public static final int TX = 2;
+	/** Option enabled or disabled: option code, 1 if local, 1 if enabled */
+	public static final int OPTION = 3;
+	/** Event described by text */
+	public static final int EVENT = 4;
+
+	static final int DEFAULT_CAPACITY = 64 * 1024;
+	private static final byte[] MAGIC = {'J', 'N', 'T', 'T'};
+	private static final int VERSION = 1;
+	// Records in the ring: type, time, length, data, length. The trailing length lets a dump walk back from the newest record
+	private static final int HEADER = 11;
+	private static final int OVERHEAD = HEADER + 2;
+
+	private final byte[] ring;
+	private final int mask;
+	private final int maxData;
+	private final AtomicLong head = new AtomicLong();
+	/** Written after copying the ring, see <code>records()</code> */
+	private volatile boolean copied;
+	private final long origin = System.nanoTime();
+	private final long originMillis = System.currentTimeMillis();
+	private final byte[] option = new byte[3];
+	private volatile File dumpDirectory = null;
+
+	/**
+	 * Create a trace holding the last 64KB of traffic
+	 */
+	public SessionTrace() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Create a trace
+	 * @param capacity size of the ring buffer in bytes, rounded up to a power of two, min. 1KB
+	 */
+	public SessionTrace(int capacity) {
+		int size = Integer.highestOneBit(Math.max(1024, capacity) - 1) << 1;
+		this.ring = new byte[size];
+		this.mask = size - 1;
+		this.maxData = Math.min(0xFFFF, size / 4 - OVERHEAD);
+	}
+
+	/**
+	 * Dump the trace to a file in a directory, every time the session fails.
+	 * @param dumpDirectory directory, or null to not dump on failure
+	 */
+	public void setDumpDirectory(File dumpDirectory) {
+		this.dumpDirectory = dumpDirectory;
+	}
+
+	/**
+	 * Write the records in the trace
+	 * @param out stream to write to, it is not closed
+	 * @throws IOException if unable to write
+	 */
+	public void dump(OutputStream out) throws IOException {
+		DataOutputStream data = new DataOutputStream(out);
+		data.write(MAGIC);
+		data.writeByte(VERSION);
+		data.writeLong(originMillis);
+		for (Record record : records()) {
+			data.writeByte(record.type);
+			data.writeLong(record.time);
+			data.writeShort(record.data.length);
+			data.write(record.data);
+		}
+		data.writeByte(0);
+		data.flush();
+	}
+
+	/**
+	 * Write the records in the trace to a file
+	 * @param file file to write
+	 * @throws IOException if unable to write
+	 */
+	public void dump(File file) throws IOException {
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+		try {
+			dump(out);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Get the records in the trace, oldest first. If the session is
+	 * recording meanwhile, the ring is copied again until no record was
+	 * overwritten while copying it.
+	 * @return records
+	 */
+	public List<Record> records() {
+		byte[] copy = new byte[ring.length];
+		long end;
+		long valid;
+		do {
+			end = head.get();
+			System.arraycopy(ring, 0, copy, 0, ring.length);
+			// The reads of the copy may not move past this volatile write,
+			// and the volatile read of the head below may not move ahead of
+			// it, so the copy is complete when the head is read again
+			copied = true;
+			// Bytes the session may have overwritten while copying are not valid
+			valid = head.get() + maxData + OVERHEAD - ring.length;
+		} while (end < valid);
+		ArrayList<Record> records = new ArrayList<Record>();
+		long pos = end;
+		while (pos - OVERHEAD >= Math.max(0, valid)) {
+			int len = (copy[(int) (pos - 2) & mask] & 0xFF) << 8 | (copy[(int) (pos - 1) & mask] & 0xFF);
+			long start = pos - OVERHEAD - len;
+			if (start < Math.max(0, valid)) break;
+			int header = (copy[(int) (start + 9) & mask] & 0xFF) << 8 | (copy[(int) (start + 10) & mask] & 0xFF);
+			if (header != len) break;
+			int type = copy[(int) start & mask];
+			long time = 0;
+			for (int i = 1; i <= 8; i++) {
+				time = time << 8 | (copy[(int) (start + i) & mask] & 0xFF);
+			}
+			byte[] data = new byte[len];
+			for (int i = 0; i < len; i++) {
+				data[i] = copy[(int) (start + HEADER + i) & mask];
+			}
+			records.add(new Record(type, time, data));
+			pos = start;
+		}
+		Collections.reverse(records);
+		return records;
+	}
+
+	/**
+	 * Read a dumped trace
+	 * @param in stream holding the dump
+	 * @return records of the trace, oldest first
+	 * @throws IOException if unable to read, or the stream does not hold a trace
+	 */
+	public static List<Record> read(InputStream in) throws IOException {
+		DataInputStream data = new DataInputStream(in);
+		byte[] magic = new byte[MAGIC.length];
+		data.readFully(magic);
+		if (magic[0] != 'J' || magic[1] != 'N' || magic[2] != 'T' || magic[3] != 'T' || data.readByte() != VERSION) {
+			throw new IOException("Not a session trace");
+		}
+		data.readLong();
+		ArrayList<Record> records = new ArrayList<Record>();
+		int type;
+		while ((type = data.readByte()) != 0) {
+			long time = data.readLong();
+			byte[] bytes = new byte[data.readUnsignedShort()];
+			data.readFully(bytes);
+			records.add(new Record(type, time, bytes));
+		}
+		return records;
+	}
+
+	// ------------------------------------------------- Recording, by the session
+	void record(int type, byte[] data, int off, int len) {
+		while (len > maxData) {
+			record(type, data, off, maxData);
+			off += maxData;
+			len -= maxData;
+		}
+		long pos = head.get();
+		long time = System.nanoTime() - origin;
+		ring[(int) pos & mask] = (byte) type;
+		for (int i = 8; i >= 1; i--) {
+			ring[(int) (pos + i) & mask] = (byte) time;
+			time >>>= 8;
+		}
+		ring[(int) (pos + 9) & mask] = (byte) (len >> 8);
+		ring[(int) (pos + 10) & mask] = (byte) len;
+		int at = (int) (pos + HEADER) & mask;
+		int first = Math.min(len, ring.length - at);
+		System.arraycopy(data, off, ring, at, first);
+		System.arraycopy(data, off + first, ring, 0, len - first);
+		ring[(int) (pos + HEADER + len) & mask] = (byte) (len >> 8);
+		ring[(int) (pos + HEADER + len + 1) & mask] = (byte) len;
+		// Not lazySet, the fence of a volatile write keeps the next record
+		// from being seen before this one is published
+		head.set(pos + OVERHEAD + len);
+	}
+
+	void option(int code, boolean local, boolean enabled) {
+		option[0] = (byte) code;
+		option[1] = (byte) (local ? 1 : 0);
+		option[2] = (byte) (enabled ? 1 : 0);
+		record(OPTION, option, 0, option.length);
+	}
+
+	void event(String text) {
+		byte[] data = text.getBytes(StandardCharsets.UTF_8);
+		record(EVENT, data, 0, data.length);
+	}
+
+	/**
+	 * Record a failure, and dump the trace if a dump directory is set
+	 * @param hostname host of the session
+	 * @param cause description of the failure
+	 */
+	void failed(String hostname, String cause) {
+		event("failed: " + cause);
+		File dir = dumpDirectory;
+		if (dir != null) {
+			try {
+				dump(new File(dir, hostname.replaceAll("[^\\w.-]", "_") + "-" + System.currentTimeMillis() + ".jntt"));
+			} catch (IOException ignored) {
+				// The failure of the session is reported, not the failure to dump it
+			}
+		}
+	}
+
+	/**
+	 * A record of the trace
+	 */
+	public static final class Record {
+		private final int type;
+		private final long time;
+		private final byte[] data;
+
+		Record(int type, long time, byte[] data) {
+			this.type = type;
+			this.time = time;
+			this.data = data;
+		}
+
+		/**
+		 * @return RX, TX, OPTION or EVENT
+		 */
+		public int getType() {
+			return type;
+		}
+
+		/**
+		 * @return time since the start of the trace in ns
+		 */
+		public long getTime() {
+			return time;
+		}
+
+		public byte[] getData() {
+			return data;
+		}
+
+		@Override
+		public String toString() {
+			String name = type == RX ? "RX" : type == TX ? "TX" : type == OPTION ? "OPTION" : "EVENT";
+			String text = type == OPTION ? (data[0] & 0xFF) + (data[1] == 1 ? " local " : " remote ") + (data[2] == 1 ? "on" : "off")
+					: new String(data, type == EVENT ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1);
+			return String.format("%10.3fms %-6s %s", time / 1e6, name, text);
+		}
+	}
+}
@@ -0,0 +1,408 @@
+/*
+ * Copyright (c) 2016, Michael Thorsager <thorsager@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice, this
+ *    list of conditions and the following disclaimer in the documentation and/or
+ *    other materials provided with the distribution.
+ *
+ *  * Neither the name of Open Solutions nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.krakow.jnettelnet;
+
+import java.io.IOException;
+
+/**
+ * Byte level decoder of the Telnet protocol (RFC-854 and RFC-855), removing
+ * commands from the data stream and negotiating options.
+ * <p>
+ * Data is decoded in place, a whole buffer at the time, and the decoder
+ * keeps its state between buffers, so commands may be split across reads.
+ * It handles escaped IAC bytes, subnegotiation (IAC SB ... IAC SE) and
+ * strips the NUL following a bare CR. All other commands are dropped.
+ * </p>
+ * <p>
+ * Options are negotiated using the Q-method of RFC-1143, which keeps the
+ * state of each option on both sides, so that the decoder never answers
+ * an acknowledgement and never loops. Whether an option requested by the
+ * remote host is accepted, is decided by the <code>Listener</code>.
+ * </p>
+ *
+ * @author Michael Thorsager &lt;thorsager@gmail.com&gt;
+ */
+final class TelnetDecoder {
+
+	static final int SE = 240;
+	static final int NOP = 241;
+	static final int SB = 250;
+	static final int WILL = 251;
+	static final int WONT = 252;
+	static final int DO = 253;
+	static final int DONT = 254;
+	static final int IAC = 255;
+
+	static final int OPT_BINARY = 0;
+	static final int OPT_TTYPE = 24;
+	static final int OPT_NAWS = 31;
+
+	// TERMINAL-TYPE subnegotiation commands, RFC-1091
+	static final int TTYPE_IS = 0;
+	static final int TTYPE_SEND = 1;
+
+	/** Max. size of a subnegotiation, anything beyond this is dropped */
+	private static final int MAX_SB = 4096;
+
+	// Option states, RFC-1143
+	private static final byte NO = 0;
+	private static final byte YES = 1;
+	private static final byte WANTNO = 2;
+	private static final byte WANTYES = 3;
+
+	// Decoder states
+	private static final int S_DATA = 0;
+	private static final int S_IAC = 1;
+	private static final int S_VERB = 2;
+	private static final int S_SB = 3;
+	private static final int S_SB_DATA = 4;
+	private static final int S_SB_IAC = 5;
+
+	/**
+	 * Receives the result of decoding, and decides which options to accept.
+	 */
+	interface Listener {
+
+		/**
+		 * The remote host asks us to enable an option (DO)
+		 * @param option option code
+		 * @return true to accept
+		 */
+		boolean acceptLocal(int option);
+
+		/**
+		 * The remote host offers to enable an option (WILL)
+		 * @param option option code
+		 * @return true to accept
+		 */
+		boolean acceptRemote(int option);
+
+		/**
+		 * An option has been enabled or disabled.
+		 * @param option option code
+		 * @param local true if the option is on our side, false if it is on the remote side
+		 * @param enabled new state of the option
+		 * @throws IOException If unable to send to the remote host
+		 */
+		void onOptionChanged(int option, boolean local, boolean enabled) throws IOException;
+
+		/**
+		 * A subnegotiation has been read
+		 * @param option option code
+		 * @param data buffer holding the parameters (unescaped), only valid during the call
+		 * @param off offset of the parameters
+		 * @param len length of the parameters
+		 * @throws IOException If unable to send to the remote host
+		 */
+		void onSubnegotiation(int option, byte[] data, int off, int len) throws IOException;
+
+		/**
+		 * Send protocol data to the remote host
+		 * @param data buffer holding the data
+		 * @param off offset of the data
+		 * @param len length of the data
+		 * @throws IOException If unable to send to the remote host
+		 */
+		void send(byte[] data, int off, int len) throws IOException;
+	}
+
+	private final Listener listener;
+	private final byte[] us = new byte[256];
+	private final byte[] him = new byte[256];
+	private final boolean[] usq = new boolean[256];
+	private final boolean[] himq = new boolean[256];
+
+	private int state = S_DATA;
+	private int verb;
+	private int sbOption;
+	private final byte[] sbBuf = new byte[MAX_SB];
+	private int sbLen;
+	private boolean lastCR = false;
+	private final byte[] reply = new byte[3];
+
+	TelnetDecoder(Listener listener) {
+		this.listener = listener;
+		reply[0] = (byte) IAC;
+	}
+
+	/**
+	 * Decode a buffer of data read from the remote host in place, leaving
+	 * only the data bytes at the start of the range.
+	 * @param buf buffer
+	 * @param off offset of the data read
+	 * @param len length of the data read
+	 * @return number of data bytes left in the buffer, starting at <code>off</code>
+	 * @throws IOException If unable to send replies to the remote host
+	 */
+	int decode(byte[] buf, int off, int len) throws IOException {
+		int end = off + len;
+		int r = off;
+		// Fast path, nothing to do until the first IAC or NUL
+		if (state == S_DATA) {
+			while (r < end && buf[r] != (byte) IAC && buf[r] != 0) {
+				r++;
+			}
+			if (r > off) lastCR = buf[r - 1] == '\r';
+		}
+		int w = r;
+		for (; r < end; r++) {
+			int b = buf[r] & 0xFF;
+			switch (state) {
+				case S_DATA:
+					if (b == IAC) {
+						state = S_IAC;
+					} else if (b == 0 && lastCR && him[OPT_BINARY] != YES) {
+						lastCR = false;
+					} else {
+						buf[w++] = (byte) b;
+						lastCR = b == '\r';
+					}
+					break;
+				case S_IAC:
+					if (b == IAC) {
+						buf[w++] = (byte) IAC;
+						lastCR = false;
+						state = S_DATA;
+					} else if (b >= WILL) {
+						verb = b;
+						state = S_VERB;
+					} else if (b == SB) {
+						state = S_SB;
+					} else {
+						state = S_DATA; // NOP, GA, DM, AYT, ... are ignored
+					}
+					break;
+				case S_VERB:
+					state = S_DATA;
+					negotiate(verb, b);
+					break;
+				case S_SB:
+					sbOption = b;
+					sbLen = 0;
+					state = S_SB_DATA;
+					break;
+				case S_SB_DATA:
+					if (b == IAC) {
+						state = S_SB_IAC;
+					} else if (sbLen < MAX_SB) {
+						sbBuf[sbLen++] = (byte) b;
+					}
+					break;
+				case S_SB_IAC:
+					if (b == IAC) {
+						if (sbLen < MAX_SB) sbBuf[sbLen++] = (byte) IAC;
+						state = S_SB_DATA;
+					} else if (b == SE) {
+						state = S_DATA;
+						listener.onSubnegotiation(sbOption, sbBuf, 0, sbLen);
+					} else {
+						state = S_DATA; // broken subnegotiation, drop it
+					}
+					break;
+			}
+		}
+		return w - off;
+	}
+
+	/**
+	 * @param option option code
+	 * @return true if the option is enabled on our side
+	 */
+	boolean isLocalEnabled(int option) {
+		return us[option] == YES;
+	}
+
+	/**
+	 * @param option option code
+	 * @return true if the option is enabled on the remote side
+	 */
+	boolean isRemoteEnabled(int option) {
+		return him[option] == YES;
+	}
+
+	/**
+	 * Ask to enable or disable an option on our side (WILL/WONT)
+	 * @param option option code
+	 * @param enable true to enable
+	 * @throws IOException If unable to send to the remote host
+	 */
+	void requestLocal(int option, boolean enable) throws IOException {
+		request(us, usq, option, enable, WILL, WONT);
+	}
+
+	/**
+	 * Ask the remote host to enable or disable an option on its side (DO/DONT)
+	 * @param option option code
+	 * @param enable true to enable
+	 * @throws IOException If unable to send to the remote host
+	 */
+	void requestRemote(int option, boolean enable) throws IOException {
+		request(him, himq, option, enable, DO, DONT);
+	}
+
+	/**
+	 * Send a subnegotiation to the remote host, escaping any IAC in the parameters
+	 * @param option option code
+	 * @param data parameters
+	 * @throws IOException If unable to send to the remote host
+	 */
+	void sendSubnegotiation(int option, byte[] data) throws IOException {
+		byte[] out = new byte[data.length * 2 + 5];
+		int n = 0;
+		out[n++] = (byte) IAC;
+		out[n++] = (byte) SB;
+		out[n++] = (byte) option;
+		for (byte b : data) {
+			out[n++] = b;
+			if (b == (byte) IAC) out[n++] = b;
+		}
+		out[n++] = (byte) IAC;
+		out[n++] = (byte) SE;
+		listener.send(out, 0, n);
+	}
+
+	// ------------------------------------------------------- Private Methods
+	private void negotiate(int verb, int option) throws IOException {
+		switch (verb) {
+			case WILL:
+				receivedEnable(him, himq, option, false, DO, DONT);
+				break;
+			case WONT:
+				receivedDisable(him, himq, option, false, DO, DONT);
+				break;
+			case DO:
+				receivedEnable(us, usq, option, true, WILL, WONT);
+				break;
+			case DONT:
+				receivedDisable(us, usq, option, true, WILL, WONT);
+				break;
+		}
+	}
+
+	/**
+	 * RFC-1143, receiving WILL (or DO for our side)
+	 */
+	private void receivedEnable(byte[] q, boolean[] queue, int option, boolean local, int yes, int no) throws IOException {
+		switch (q[option]) {
+			case NO:
+				if (local ? listener.acceptLocal(option) : listener.acceptRemote(option)) {
+					q[option] = YES;
+					send(yes, option);
+					listener.onOptionChanged(option, local, true);
+				} else {
+					send(no, option);
+				}
+				break;
+			case YES:
+				break;
+			case WANTNO:
+				if (queue[option]) {
+					q[option] = YES;
+					queue[option] = false;
+					listener.onOptionChanged(option, local, true);
+				} else {
+					q[option] = NO; // DONT answered by WILL, a broken peer
+				}
+				break;
+			case WANTYES:
+				if (queue[option]) {
+					q[option] = WANTNO;
+					queue[option] = false;
+					send(no, option);
+				} else {
+					q[option] = YES;
+					listener.onOptionChanged(option, local, true);
+				}
+				break;
+		}
+	}
+
+	/**
+	 * RFC-1143, receiving WONT (or DONT for our side)
+	 */
+	private void receivedDisable(byte[] q, boolean[] queue, int option, boolean local, int yes, int no) throws IOException {
+		switch (q[option]) {
+			case NO:
+				break;
+			case YES:
+				q[option] = NO;
+				send(no, option);
+				listener.onOptionChanged(option, local, false);
+				break;
+			case WANTNO:
+				if (queue[option]) {
+					q[option] = WANTYES;
+					queue[option] = false;
+					send(yes, option);
+				} else {
+					q[option] = NO;
+					listener.onOptionChanged(option, local, false);
+				}
+				break;
+			case WANTYES:
+				q[option] = NO;
+				queue[option] = false;
+				break;
+		}
+	}
+
+	/**
+	 * RFC-1143, asking to enable or disable an option
+	 */
+	private void request(byte[] q, boolean[] queue, int option, boolean enable, int yes, int no) throws IOException {
+		switch (q[option]) {
+			case NO:
+				if (enable) {
+					q[option] = WANTYES;
+					send(yes, option);
+				}
+				break;
+			case YES:
+				if (!enable) {
+					q[option] = WANTNO;
+					send(no, option);
+				}
+				break;
+			case WANTNO:
+				queue[option] = enable;
+				break;
+			case WANTYES:
+				queue[option] = !enable;
+				break;
+		}
+	}
+
+	private void send(int verb, int option) throws IOException {
+		reply[1] = (byte) verb;
+		reply[2] = (byte) option;
+		listener.send(reply, 0, 3);
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2016, Michael Thorsager <thorsager@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice, this
+ *    list of conditions and the following disclaimer in the documentation and/or
+ *    other materials provided with the distribution.
+ *
+ *  * Neither the name of Open Solutions nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.krakow.jnettelnet;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Encodes lines of text to be sent to the remote host, into a reusable
+ * buffer, escaping any IAC (0xFF) byte as required by RFC-854.
+ * <p>
+ * ASCII text, which is what is sent to network devices nearly always, is
+ * copied straight into the buffer. Only text holding other characters goes
+ * through the <code>CharsetEncoder</code>. Once the buffers have grown to
+ * the size of the longest line, nothing is allocated.
+ * </p>
+ *
+ * @author Michael Thorsager &lt;thorsager@gmail.com&gt;
+ */
+final class TelnetEncoder {
+
+	private static final byte IAC = (byte) 0xFF;
+
+	private final CharsetEncoder encoder;
+	private CharBuffer chars = CharBuffer.allocate(256);
+	private ByteBuffer bytes = ByteBuffer.allocate(256);
+
+	/**
+	 * Create an encoder
+	 * @param charset Charset of the text sent, unmappable characters are replaced
+	 */
+	TelnetEncoder(Charset charset) {
+		this.encoder = charset.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	/**
+	 * Append a line of text, followed by "\r\n", to a buffer
+	 * @param text text to append
+	 * @param out buffer in write mode
+	 * @return the buffer, or a larger copy of it if it had to grow.
+	 */
+	ByteBuffer encodeLine(CharSequence text, ByteBuffer out) {
+		int len = text.length();
+		out = ensure(out, len + 2);
+		int i = 0;
+		for (; i < len; i++) {
+			char c = text.charAt(i);
+			if (c >= 0x80) break;
+			out.put((byte) c);
+		}
+		if (i < len) {
+			out = encode(text, i, out);
+		}
+		out.put((byte) '\r').put((byte) '\n');
+		return out;
+	}
+
+	/**
+	 * Grow a buffer in write mode, if needed.
+	 * @param buf buffer
+	 * @param needed number of bytes to make room for
+	 * @return the buffer, or a larger copy of it
+	 */
+	static ByteBuffer ensure(ByteBuffer buf, int needed) {
+		if (buf.remaining() >= needed) {
+			return buf;
+		}
+		ByteBuffer nbuf = ByteBuffer.allocate(Math.max(buf.capacity() << 1, buf.position() + needed));
+		buf.flip();
+		nbuf.put(buf);
+		return nbuf;
+	}
+
+	// ------------------------------------------------------- Private Methods
+	private ByteBuffer encode(CharSequence text, int from, ByteBuffer out) {
+		int len = text.length() - from;
+		if (chars.capacity() < len) {
+			chars = CharBuffer.allocate(len);
+		}
+		chars.clear();
+		for (int i = from; i < text.length(); i++) {
+			chars.put(text.charAt(i));
+		}
+		chars.flip();
+
+		int max = (int) Math.ceil(len * (double) encoder.maxBytesPerChar());
+		if (bytes.capacity() < max) {
+			bytes = ByteBuffer.allocate(max);
+		}
+		bytes.clear();
+		encoder.reset();
+		CoderResult cr = encoder.encode(chars, bytes, true);
+		if (!cr.isUnderflow() || !encoder.flush(bytes).isUnderflow()) {
+			throw new IllegalStateException("Unable to encode: " + cr);
+		}
+		bytes.flip();
+
+		// Worst case every byte is an IAC, and must be doubled
+		out = ensure(out, bytes.remaining() * 2 + 2);
+		while (bytes.hasRemaining()) {
+			byte b = bytes.get();
+			out.put(b);
+			if (b == IAC) out.put(IAC);
+		}
+		return out;
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2016, Michael Thorsager <thorsager@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice, this
+ *    list of conditions and the following disclaimer in the documentation and/or
+ *    other materials provided with the distribution.
+ *
+ *  * Neither the name of Open Solutions nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.krakow.jnettelnet;
+
+/**
+ * Decides which Telnet options a <code>Session</code> will accept, and answers
+ * subnegotiations for the accepted options.
+ * <p>
+ * The negotiation itself (RFC-854, RFC-855 and RFC-1143) is handled by the
+ * session, so the handler is only asked once per option request and never
+ * has to keep track of option state or build protocol replies.
+ * </p>
+ *
+ * @author Michael Thorsager &lt;thorsager@gmail.com&gt;
+ */
+public interface TelnetOptionHandler {
+
+	/**
+	 * Called when the remote host asks us to enable an option (DO)
+	 * @param option option code
+	 * @return true to answer WILL, false to answer WONT
+	 */
+	public boolean acceptLocal(int option);
+
+	/**
+	 * Called when the remote host offers to enable an option (WILL)
+	 * @param option option code
+	 * @return true to answer DO, false to answer DONT
+	 */
+	public boolean acceptRemote(int option);
+
+	/**
+	 * Called when a subnegotiation (IAC SB option ... IAC SE) has been read.
+	 * @param option option code
+	 * @param data buffer holding the parameters, only valid during the call
+	 * @param offset offset of the parameters
+	 * @param length length of the parameters
+	 * @return parameters of the subnegotiation to send in reply, or null for no reply
+	 */
+	public byte[] onSubnegotiation(int option, byte[] data, int offset, int length);
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2016, Michael Thorsager <thorsager@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice, this
+ *    list of conditions and the following disclaimer in the documentation and/or
+ *    other materials provided with the distribution.
+ *
+ *  * Neither the name of Open Solutions nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.krakow.jnettelnet.parser;
+
+/**
+ * The state and counters of an interface. Values not found in the output are -1.
+ *
+ * @author Michael Thorsager &lt;thorsager@gmail.com&gt;
+ */
+public final class InterfaceEntry {
+
+	final String name;
+	String status;
+	String protocol;
+	String description;
+	long mac = -1;
+	long mtu = -1;
+	long bandwidth = -1;
+	long inputPackets = -1;
+	long inputBytes = -1;
+	long inputErrors = -1;
+	long crc = -1;
+	long outputPackets = -1;
+	long outputBytes = -1;
+	long outputErrors = -1;
+
+	InterfaceEntry(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return status of the interface, like "up", "down" or "administratively down"
+	 */
+	public String getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return status of the line protocol, like "up" or "down"
+	 */
+	public String getProtocol() {
+		return protocol;
+	}
+
+	/**
+	 * @return description, or null if there is none
+	 */
+	public String getDescription() {
+		return description;
+	}
+
+	/**
+	 * @return the 48 bit MAC address
+	 */
+	public long getMac() {
+		return mac;
+	}
+
+	public long getMtu() {
+		return mtu;
+	}
+
+	/**
+	 * @return bandwidth in Kbit/s
+	 */
+	public long getBandwidth() {
+		return bandwidth;
+	}
+
+	public long getInputPackets() {
+		return inputPackets;
+	}
+
+	public long getInputBytes() {
+		return inputBytes;
+	}
+
+	public long getInputErrors() {
+		return inputErrors;
+	}
+
+	public long getCrc() {
+		return crc;
+	}
+
+	public long getOutputPackets() {
+		return outputPackets;
+	}
+
+	public long getOutputBytes() {
+		return outputBytes;
+	}
+
+	public long getOutputErrors() {
+		return outputErrors;
+	}
+
+	@Override
+	public String toString() {
+		return "InterfaceEntry{name=" + name + ", status=" + status + ", protocol=" + protocol + ", description=" + description
+				+ ", mtu=" + mtu + ", bandwidth=" + bandwidth + ", inputPackets=" + inputPackets + ", inputBytes=" + inputBytes
+				+ ", inputErrors=" + inputErrors + ", crc=" + crc + ", outputPackets=" + outputPackets
+				+ ", outputBytes=" + outputBytes + ", outputErrors=" + outputErrors + "}";
+	}
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2016, Michael Thorsager <thorsager@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice, this
+ *    list of conditions and the following disclaimer in the documentation and/or
+ *    other materials provided with the distribution.
+ *
+ *  * Neither the name of Open Solutions nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.krakow.jnettelnet.parser;
+
+import java.io.IOException;
+
+/**
+ * Parses the output of "show interfaces" into <code>InterfaceEntry</code>
+ * records.
+ * <p>
+ * An interface starts with an unindented "&lt;name&gt; is &lt;status&gt;"
+ * line. The counters are read from the "&lt;number&gt; &lt;label&gt;" pairs
+ * of the indented lines following it, the bytes counted towards the
+ * direction of the packets before them.
+ * </p>
+ * <pre>
+ * GigabitEthernet0/1 is up, line protocol is up (connected)
+ *   Hardware is Gigabit Ethernet, address is 0011.2233.4401 (bia 0011.2233.4401)
+ *   Description: uplink
+ *   MTU 1500 bytes, BW 1000000 Kbit/sec, DLY 10 usec,
+ *      1234567 packets input, 98765432 bytes, 0 no buffer
+ *      5 input errors, 2 CRC, 0 frame, 0 overrun, 0 ignored
+ *      7654321 packets output, 12345678 bytes, 0 underruns
+ *      1 output errors, 0 collisions, 3 interface resets
+ * </pre>
+ *
+ * @author Michael Thorsager &lt;thorsager@gmail.com&gt;
+ */
+public class InterfaceParser extends OutputParser<InterfaceEntry> {
+
+	private InterfaceEntry current = null;
+
+	public InterfaceParser() {
+	}
+
+	public InterfaceParser(RecordHandler<InterfaceEntry> handler) {
+		super(handler);
+	}
+
+	@Override
+	public String getCommand() {
+		return "show interfaces";
+	}
+
+	@Override
+	protected void _parse(Tokenizer line) throws IOException {
+		if (line.indent() == 0) {
+			if (line.next()) {
+				String name = line.token();
+				if (line.nextIs("is")) {
+					finish();
+					current = new InterfaceEntry(name);
+					_header(line);
+				}
+			}
+		} else if (current != null) {
+			_counters(line);
+		}
+	}
+
+	@Override
+	public void finish() throws IOException {
+		if (current != null) {
+			InterfaceEntry done = current;
+			current = null;
+			_emit(done);
+		}
+	}
+
+	@Override
+	protected void _reset() {
+		current = null;
+	}
+
+	private void _header(Tokenizer line) {
+		if (!line.next()) return;
+		if (line.is("administratively")) {
+			current.status = "administratively down";
+			line.next();
+		} else {
+			current.status = line.token();
+		}
+		while (line.next()) {
+			if (line.is("protocol") && line.nextIs("is") && line.next()) {
+				current.protocol = line.token();
+				return;
+			}
+		}
+	}
+
+	private void _counters(Tokenizer line) {
+		boolean output = false;
+		long number = -1;
+		while (line.next()) {
+			if (line.isNumber()) {
+				number = line.number();
+				continue;
+			}
+			if (number >= 0) {
+				if (line.is("packets") && line.next()) {
+					if (line.is("input")) {
+						current.inputPackets = number;
+						output = false;
+					} else if (line.is("output")) {
+						current.outputPackets = number;
+						output = true;
+					}
+				} else if (line.is("bytes")) {
+					if (output) {
+						current.outputBytes = number;
+					} else {
+						current.inputBytes = number;
+					}
+				} else if (line.is("input")) {
+					if (line.nextIs("errors")) current.inputErrors = number;
+				} else if (line.is("output")) {
+					if (line.nextIs("errors")) current.outputErrors = number;
+				} else if (line.is("CRC")) {
+					current.crc = number;
+				}
+				number = -1;
+			} else if (line.is("MTU")) {
+				if (line.next()) current.mtu = line.number();
+			} else if (line.is("BW")) {
+				if (line.next()) current.bandwidth = line.number();
+			} else if (line.is("address")) {
+				// "Internet address is" follows the hardware address on layer 3 interfaces
+				if (line.nextIs("is") && line.next()) {
+					long mac = line.mac();
+					if (mac >= 0) current.mac = mac;
+				}
+			} else if (line.is("Description:")) {
+				if (line.next()) current.description = line.rest();
+			}
+		}
+	}
+}
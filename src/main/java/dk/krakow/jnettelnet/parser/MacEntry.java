@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2016, Michael Thorsager <thorsager@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice, this
+ *    list of conditions and the following disclaimer in the documentation and/or
+ *    other materials provided with the distribution.
+ *
+ *  * Neither the name of Open Solutions nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.krakow.jnettelnet.parser;
+
+/**
+ * An entry of the MAC address table of a switch.
+ *
+ * @author Michael Thorsager &lt;thorsager@gmail.com&gt;
+ */
+public final class MacEntry {
+
+	private final int vlan;
+	private final long mac;
+	private final String type;
+	private final String port;
+
+	MacEntry(int vlan, long mac, String type, String port) {
+		this.vlan = vlan;
+		this.mac = mac;
+		this.type = type;
+		this.port = port;
+	}
+
+	/**
+	 * @return VLAN id, or 0 if the entry is for all VLANs
+	 */
+	public int getVlan() {
+		return vlan;
+	}
+
+	/**
+	 * @return the 48 bit MAC address
+	 */
+	public long getMac() {
+		return mac;
+	}
+
+	/**
+	 * @return the MAC address, written like "0011.2233.4455"
+	 */
+	public String getMacAddress() {
+		return String.format("%04x.%04x.%04x", (mac >> 32) & 0xFFFF, (mac >> 16) & 0xFFFF, mac & 0xFFFF);
+	}
+
+	/**
+	 * @return type of the entry, like "DYNAMIC" or "STATIC"
+	 */
+	public String getType() {
+		return type;
+	}
+
+	/**
+	 * @return port the address was learned on
+	 */
+	public String getPort() {
+		return port;
+	}
+
+	@Override
+	public String toString() {
+		return "MacEntry{vlan=" + vlan + ", mac=" + getMacAddress() + ", type=" + type + ", port=" + port + "}";
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2016, Michael Thorsager <thorsager@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice, this
+ *    list of conditions and the following disclaimer in the documentation and/or
+ *    other materials provided with the distribution.
+ *
+ *  * Neither the name of Open Solutions nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.krakow.jnettelnet.parser;
+
+import java.io.IOException;
+
+/**
+ * Parses the output of "show mac address-table" into <code>MacEntry</code>
+ * records.
+ * <p>
+ * Entries are the lines starting with a VLAN id, or "All", followed by a
+ * MAC address and its type. The port is the last column, so the learn and
+ * age columns of some platforms are skipped. Header and total lines are
+ * ignored.
+ * </p>
+ * <pre>
+ * Vlan    Mac Address       Type        Ports
+ * ----    -----------       --------    -----
+ *    1    0011.2233.4455    DYNAMIC     Gi0/1
+ *  All    0100.0ccc.cccc    STATIC      CPU
+ * </pre>
+ *
+ * @author Michael Thorsager &lt;thorsager@gmail.com&gt;
+ */
+public class MacTableParser extends OutputParser<MacEntry> {
+
+	public MacTableParser() {
+	}
+
+	public MacTableParser(RecordHandler<MacEntry> handler) {
+		super(handler);
+	}
+
+	@Override
+	public String getCommand() {
+		return "show mac address-table";
+	}
+
+	@Override
+	protected void _parse(Tokenizer line) throws IOException {
+		if (!line.next()) return;
+		if (line.is("*")) {
+			if (!line.next()) return;
+		}
+		int vlan;
+		if (line.isNumber()) {
+			vlan = (int) line.number();
+		} else if (line.is("All")) {
+			vlan = 0;
+		} else {
+			return;
+		}
+		if (!line.next()) return;
+		long mac = line.mac();
+		if (mac < 0 || !line.next()) return;
+		String type = line.token();
+		if (line.last()) _emit(new MacEntry(vlan, mac, type, line.token()));
+	}
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2016, Michael Thorsager <thorsager@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice, this
+ *    list of conditions and the following disclaimer in the documentation and/or
+ *    other materials provided with the distribution.
+ *
+ *  * Neither the name of Open Solutions nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.krakow.jnettelnet.parser;
+
+import dk.krakow.jnettelnet.CommandSession;
+import dk.krakow.jnettelnet.LineHandler;
+import dk.krakow.jnettelnet.SessionException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Base of the parsers turning the output of a show command into records,
+ * while the output is read.
+ * <p>
+ * A parser is a <code>LineHandler</code>, so it is passed to
+ * <code>CommandSession.cmd(String, LineHandler)</code> and sees each line
+ * as a view of the receive buffer. The line is split by a
+ * <code>Tokenizer</code>, and only the values kept in the records are
+ * turned into Strings. Records are passed to a <code>RecordHandler</code>,
+ * or collected into a list if no handler is given.
+ * </p>
+ * <pre>
+ * final Map&lt;Long, String&gt; ports = new HashMap&lt;Long, String&gt;();
+ * new MacTableParser(new RecordHandler&lt;MacEntry&gt;() {
+ *     public void onRecord(MacEntry e) {
+ *         ports.put(e.getMac(), e.getPort());
+ *     }
+ * }).parse(session);
+ * </pre>
+ * A parser is not thread safe, and can be used for one command at the time.
+ *
+ * @author Michael Thorsager &lt;thorsager@gmail.com&gt;
+ */
+public abstract class OutputParser<T> implements LineHandler {
+
+	protected final Tokenizer tokenizer = new Tokenizer();
+	private final RecordHandler<T> handler;
+	private final List<T> records;
+
+	/**
+	 * Create a parser collecting the records into a list
+	 */
+	protected OutputParser() {
+		this.records = new ArrayList<T>();
+		this.handler = new RecordHandler<T>() {
+			@Override
+			public void onRecord(T record) {
+				records.add(record);
+			}
+		};
+	}
+
+	/**
+	 * Create a parser passing the records to a handler
+	 * @param handler Handler receiving the records
+	 */
+	protected OutputParser(RecordHandler<T> handler) {
+		this.records = null;
+		this.handler = handler;
+	}
+
+	/**
+	 * @return the command producing the output this parser reads
+	 */
+	public abstract String getCommand();
+
+	/**
+	 * Run the command of the parser, and parse its output
+	 * @param session logged in session
+	 * @return the records, or an empty list if the records were passed to a handler
+	 * @throws SessionException If unable to execute the command, or the handler fails.
+	 */
+	public List<T> parse(CommandSession session) throws SessionException {
+		if (records != null) records.clear();
+		_reset();
+		session.cmd(getCommand(), this);
+		try {
+			finish();
+		} catch (IOException e) {
+			throw new SessionException(e);
+		}
+		return records == null ? new ArrayList<T>() : new ArrayList<T>(records);
+	}
+
+	@Override
+	public final void onLine(CharSequence line) throws IOException {
+		tokenizer.reset(line);
+		_parse(tokenizer);
+	}
+
+	/**
+	 * Pass on any record still being parsed, must be called after the last
+	 * line, unless the parser was run by <code>parse()</code>.
+	 * @throws IOException If the handler fails
+	 */
+	public void finish() throws IOException {
+	}
+
+	/**
+	 * Forget any state of an earlier output, called before the command is run by <code>parse()</code>
+	 */
+	protected void _reset() {
+	}
+
+	/**
+	 * Parse a line
+	 * @param line tokenizer positioned at the start of the line
+	 * @throws IOException If the handler fails
+	 */
+	protected abstract void _parse(Tokenizer line) throws IOException;
+
+	/**
+	 * Pass on a record
+	 * @param record record parsed
+	 * @throws IOException If the handler fails
+	 */
+	protected void _emit(T record) throws IOException {
+		handler.onRecord(record);
+	}
+}
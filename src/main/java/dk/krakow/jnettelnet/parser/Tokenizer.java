@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2016, Michael Thorsager <thorsager@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice, this
+ *    list of conditions and the following disclaimer in the documentation and/or
+ *    other materials provided with the distribution.
+ *
+ *  * Neither the name of Open Solutions nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.krakow.jnettelnet.parser;
+
+/**
+ * Splits a line into tokens separated by whitespace or commas, without
+ * copying it.
+ * <p>
+ * The line is usually the view of the receive buffer passed to a
+ * <code>LineHandler</code>, so tokens are compared and converted to numbers
+ * in place. Tokens kept as Strings are taken from a small cache, so
+ * repeated values like port and VLAN names share one String.
+ * </p>
+ *
+ * @author Michael Thorsager &lt;thorsager@gmail.com&gt;
+ */
+public final class Tokenizer {
+
+	private static final int CACHE_SIZE = 512;
+
+	private final String[] cache = new String[CACHE_SIZE];
+	private CharSequence line = "";
+	private int len = 0;
+	private int pos = 0;
+	private int start = 0;
+	private int end = 0;
+
+	/**
+	 * Start tokenizing a line
+	 * @param line line, must not change while it is tokenized
+	 */
+	public void reset(CharSequence line) {
+		this.line = line;
+		this.len = line.length();
+		this.pos = 0;
+		this.start = 0;
+		this.end = 0;
+	}
+
+	/**
+	 * @return the number of spaces the line is indented by
+	 */
+	public int indent() {
+		int i = 0;
+		while (i < len && line.charAt(i) == ' ') i++;
+		return i;
+	}
+
+	/**
+	 * @return true if the line holds nothing but whitespace
+	 */
+	public boolean isBlank() {
+		for (int i = 0; i < len; i++) {
+			char c = line.charAt(i);
+			if (c != ' ' && c != '\t' && c != '\r' && c != '\n') return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Move to the next token
+	 * @return false if there are no more tokens on the line
+	 */
+	public boolean next() {
+		while (pos < len && isSeparator(line.charAt(pos))) pos++;
+		if (pos == len) {
+			start = end = len;
+			return false;
+		}
+		start = pos;
+		while (pos < len && !isSeparator(line.charAt(pos))) pos++;
+		end = pos;
+		return true;
+	}
+
+	/**
+	 * Move to the last token of the line, skipping those in between
+	 * @return false if there are no more tokens on the line
+	 */
+	public boolean last() {
+		int e = len;
+		while (e > pos && isSeparator(line.charAt(e - 1))) e--;
+		int s = e;
+		while (s > pos && !isSeparator(line.charAt(s - 1))) s--;
+		pos = len;
+		if (s == e) {
+			start = end = len;
+			return false;
+		}
+		start = s;
+		end = e;
+		return true;
+	}
+
+	/**
+	 * Move to the next token, and compare it to a String
+	 * @param s String to compare with
+	 * @return true if there was a next token equal to <code>s</code>
+	 */
+	public boolean nextIs(String s) {
+		return next() && is(s);
+	}
+
+	/**
+	 * @return offset of the current token in the line
+	 */
+	public int start() {
+		return start;
+	}
+
+	/**
+	 * @return length of the current token
+	 */
+	public int length() {
+		return end - start;
+	}
+
+	/**
+	 * @param s String to compare with
+	 * @return true if the current token equals <code>s</code>
+	 */
+	public boolean is(String s) {
+		return end - start == s.length() && startsWith(s);
+	}
+
+	/**
+	 * @param s String to compare with
+	 * @return true if the current token starts with <code>s</code>
+	 */
+	public boolean startsWith(String s) {
+		int n = s.length();
+		if (end - start < n) return false;
+		for (int i = 0; i < n; i++) {
+			if (line.charAt(start + i) != s.charAt(i)) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @param c character to look for
+	 * @return true if the current token ends with <code>c</code>
+	 */
+	public boolean endsWith(char c) {
+		return end > start && line.charAt(end - 1) == c;
+	}
+
+	/**
+	 * @return true if the current token is a non-negative decimal number
+	 */
+	public boolean isNumber() {
+		if (end == start || end - start > 18) return false;
+		for (int i = start; i < end; i++) {
+			char c = line.charAt(i);
+			if (c < '0' || c > '9') return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return the current token as a number, or -1 if it is not a number
+	 */
+	public long number() {
+		if (!isNumber()) return -1;
+		long n = 0;
+		for (int i = start; i < end; i++) {
+			n = n * 10 + (line.charAt(i) - '0');
+		}
+		return n;
+	}
+
+	/**
+	 * Read the current token as a MAC address, written as 12 hex digits
+	 * optionally separated by '.', ':' or '-', like "0011.2233.4455".
+	 * @return the 48 bit address, or -1 if the token is not a MAC address
+	 */
+	public long mac() {
+		long mac = 0;
+		int digits = 0;
+		for (int i = start; i < end; i++) {
+			char c = line.charAt(i);
+			int d = Character.digit(c, 16);
+			if (d >= 0) {
+				mac = (mac << 4) | d;
+				digits++;
+			} else if (c != '.' && c != ':' && c != '-') {
+				return -1;
+			}
+		}
+		return digits == 12 ? mac : -1;
+	}
+
+	/**
+	 * Get the current token as a String, shared with earlier tokens of the same value
+	 * @return the token
+	 */
+	public String token() {
+		return token(start, end);
+	}
+
+	/**
+	 * Get the rest of the line, from the start of the current token,
+	 * without trailing whitespace. The tokenizer moves to the end of the line.
+	 * @return rest of the line
+	 */
+	public String rest() {
+		int e = len;
+		while (e > start && line.charAt(e - 1) <= ' ') e--;
+		pos = end = len;
+		return line.subSequence(start, e).toString();
+	}
+
+	private String token(int from, int to) {
+		int h = 0;
+		for (int i = from; i < to; i++) {
+			h = 31 * h + line.charAt(i);
+		}
+		int slot = (h ^ (h >>> 16)) & (CACHE_SIZE - 1);
+		String s = cache[slot];
+		if (s != null && s.length() == to - from) {
+			int i = 0;
+			while (i < s.length() && s.charAt(i) == line.charAt(from + i)) i++;
+			if (i == s.length()) return s;
+		}
+		s = line.subSequence(from, to).toString();
+		cache[slot] = s;
+		return s;
+	}
+
+	private static boolean isSeparator(char c) {
+		return c == ' ' || c == ',' || c == '\t' || c == '\r' || c == '\n';
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2016, Michael Thorsager <thorsager@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice, this
+ *    list of conditions and the following disclaimer in the documentation and/or
+ *    other materials provided with the distribution.
+ *
+ *  * Neither the name of Open Solutions nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.krakow.jnettelnet.parser;
+
+/**
+ * The software, hardware and uptime of a device. Values not found in the output are null, or -1.
+ *
+ * @author Michael Thorsager &lt;thorsager@gmail.com&gt;
+ */
+public final class VersionInfo {
+
+	String version;
+	String hostname;
+	long uptime = -1;
+	String image;
+	String model;
+	String serialNumber;
+
+	VersionInfo() {
+	}
+
+	/**
+	 * @return software version, like "15.0(2)SE11"
+	 */
+	public String getVersion() {
+		return version;
+	}
+
+	public String getHostname() {
+		return hostname;
+	}
+
+	/**
+	 * @return uptime in seconds, with the precision of the output
+	 */
+	public long getUptime() {
+		return uptime;
+	}
+
+	/**
+	 * @return the image file booted
+	 */
+	public String getImage() {
+		return image;
+	}
+
+	/**
+	 * @return model, like "WS-C2960-24TT-L"
+	 */
+	public String getModel() {
+		return model;
+	}
+
+	public String getSerialNumber() {
+		return serialNumber;
+	}
+
+	@Override
+	public String toString() {
+		return "VersionInfo{version=" + version + ", hostname=" + hostname + ", uptime=" + uptime + ", image=" + image
+				+ ", model=" + model + ", serialNumber=" + serialNumber + "}";
+	}
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2016, Michael Thorsager <thorsager@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice, this
+ *    list of conditions and the following disclaimer in the documentation and/or
+ *    other materials provided with the distribution.
+ *
+ *  * Neither the name of Open Solutions nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.krakow.jnettelnet.parser;
+
+import java.io.IOException;
+
+/**
+ * Parses the output of "show version" into a single <code>VersionInfo</code>
+ * record, passed on by <code>finish()</code>.
+ * <pre>
+ * Cisco IOS Software, C2960 Software (C2960-LANBASEK9-M), Version 15.0(2)SE11, RELEASE SOFTWARE (fc3)
+ * sw1 uptime is 1 year, 2 weeks, 3 days, 4 hours, 5 minutes
+ * System image file is "flash:/c2960-lanbasek9-mz.150-2.SE11.bin"
+ * cisco WS-C2960-24TT-L (PowerPC405) processor (revision B0) with 65536K bytes of memory.
+ * Processor board ID FOC1234X5YZ
+ * Model number                    : WS-C2960-24TT-L
+ * System serial number            : FOC1234X5YZ
+ * </pre>
+ * The model and serial number lines are preferred over the processor lines.
+ *
+ * @author Michael Thorsager &lt;thorsager@gmail.com&gt;
+ */
+public class VersionParser extends OutputParser<VersionInfo> {
+
+	private VersionInfo current = new VersionInfo();
+
+	public VersionParser() {
+	}
+
+	public VersionParser(RecordHandler<VersionInfo> handler) {
+		super(handler);
+	}
+
+	@Override
+	public String getCommand() {
+		return "show version";
+	}
+
+	@Override
+	protected void _parse(Tokenizer line) throws IOException {
+		if (!line.next()) return;
+		if (line.is("cisco")) {
+			if (current.model == null && line.next()) current.model = line.token();
+		} else if (line.is("Processor")) {
+			if (current.serialNumber == null && line.nextIs("board") && line.nextIs("ID") && line.next()) {
+				current.serialNumber = line.token();
+			}
+		} else if (line.is("Model")) {
+			if (line.nextIs("number") && line.nextIs(":") && line.next()) current.model = line.token();
+		} else if (line.is("System")) {
+			if (!line.next()) return;
+			if (line.is("serial")) {
+				if (line.nextIs("number") && line.nextIs(":") && line.next()) current.serialNumber = line.token();
+			} else if (line.is("image")) {
+				if (line.nextIs("file") && line.nextIs("is") && line.next()) current.image = _unquote(line.token());
+			}
+		} else {
+			String first = line.token();
+			if (line.next() && line.is("uptime") && line.nextIs("is")) {
+				current.hostname = first;
+				current.uptime = _uptime(line);
+				return;
+			}
+			while (current.version == null && line.next()) {
+				if (line.is("Version") && line.next()) current.version = line.token();
+			}
+		}
+	}
+
+	@Override
+	public void finish() throws IOException {
+		VersionInfo done = current;
+		current = new VersionInfo();
+		_emit(done);
+	}
+
+	@Override
+	protected void _reset() {
+		current = new VersionInfo();
+	}
+
+	private static long _uptime(Tokenizer line) {
+		long seconds = 0;
+		while (line.next()) {
+			long n = line.number();
+			if (n < 0 || !line.next()) break;
+			if (line.startsWith("year")) {
+				seconds += n * 365 * 86400;
+			} else if (line.startsWith("week")) {
+				seconds += n * 7 * 86400;
+			} else if (line.startsWith("day")) {
+				seconds += n * 86400;
+			} else if (line.startsWith("hour")) {
+				seconds += n * 3600;
+			} else if (line.startsWith("minute")) {
+				seconds += n * 60;
+			} else if (line.startsWith("second")) {
+				seconds += n;
+			}
+		}
+		return seconds;
+	}
+
+	private static String _unquote(String s) {
+		return s.length() > 1 && s.charAt(0) == '"' && s.charAt(s.length() - 1) == '"' ? s.substring(1, s.length() - 1) : s;
+	}
+}
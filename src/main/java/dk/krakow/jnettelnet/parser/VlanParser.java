@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2016, Michael Thorsager <thorsager@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice, this
+ *    list of conditions and the following disclaimer in the documentation and/or
+ *    other materials provided with the distribution.
+ *
+ *  * Neither the name of Open Solutions nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.krakow.jnettelnet.parser;
+
+import java.io.IOException;
+
+/**
+ * Parses the output of "show vlan" into <code>VlanEntry</code> records.
+ * <p>
+ * Only the first table is read. A VLAN starts with its id in the first
+ * column, and its ports may continue on indented lines. The tables of
+ * VLAN types and remote SPAN VLANs following it are ignored.
+ * </p>
+ * <pre>
+ * VLAN Name                             Status    Ports
+ * ---- -------------------------------- --------- -------------------------------
+ * 1    default                          active    Gi0/1, Gi0/2, Gi0/3
+ *                                                 Gi0/4
+ * 10   users                            active
+ * </pre>
+ *
+ * @author Michael Thorsager &lt;thorsager@gmail.com&gt;
+ */
+public class VlanParser extends OutputParser<VlanEntry> {
+
+	private VlanEntry current = null;
+	private int tables = 0;
+
+	public VlanParser() {
+	}
+
+	public VlanParser(RecordHandler<VlanEntry> handler) {
+		super(handler);
+	}
+
+	@Override
+	public String getCommand() {
+		return "show vlan";
+	}
+
+	@Override
+	protected void _parse(Tokenizer line) throws IOException {
+		if (tables > 1) return;
+		int indent = line.indent();
+		if (!line.next()) {
+			finish();
+			return;
+		}
+		if (line.is("VLAN")) {
+			finish();
+			tables++;
+		} else if (indent == 0 && line.isNumber()) {
+			finish();
+			int id = (int) line.number();
+			if (!line.next()) return;
+			String name = line.token();
+			String status = line.next() ? line.token() : null;
+			current = new VlanEntry(id, name, status);
+			_ports(line);
+		} else if (indent > 0 && current != null) {
+			current.addPort(line.token());
+			_ports(line);
+		}
+	}
+
+	@Override
+	public void finish() throws IOException {
+		if (current != null) {
+			VlanEntry done = current;
+			current = null;
+			_emit(done);
+		}
+	}
+
+	@Override
+	protected void _reset() {
+		current = null;
+		tables = 0;
+	}
+
+	private void _ports(Tokenizer line) {
+		while (line.next()) {
+			current.addPort(line.token());
+		}
+	}
+}
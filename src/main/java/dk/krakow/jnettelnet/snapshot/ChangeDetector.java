@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2016, Michael Thorsager <thorsager@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice, this
+ *    list of conditions and the following disclaimer in the documentation and/or
+ *    other materials provided with the distribution.
+ *
+ *  * Neither the name of Open Solutions nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.krakow.jnettelnet.snapshot;
+
+import dk.krakow.jnettelnet.CiscoSession;
+import dk.krakow.jnettelnet.CommandSession;
+import dk.krakow.jnettelnet.LineHandler;
+import dk.krakow.jnettelnet.SessionException;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Fetches the output of a command, like the configuration, only if it has
+ * changed since it was last stored in a <code>SnapshotStore</code>.
+ * <p>
+ * Before the command is run, a probe command with a short output that
+ * changes whenever the configuration changes, is run. Only if the output of
+ * the probe differs from the last time, the command is run and its output
+ * stored. A probe is set per session type, Cisco has a default probe for
+ * the time of the last configuration change. Sessions without a probe
+ * always fetch.
+ * </p>
+ * <p>
+ * Lines matching a volatile pattern are left out of the stored output, so
+ * that they do not cause new versions. By default these are the comment
+ * lines holding the time the configuration was last changed or saved.
+ * Further patterns must be added with care, as any line they match is
+ * lost from the stored output.
+ * </p>
+ * <pre>
+ * ChangeDetector detector = new ChangeDetector(store);
+ * Snapshot s = detector.fetch(session, "core-sw01", "show running-config");
+ * </pre>
+ *
+ * @author Michael Thorsager &lt;thorsager@gmail.com&gt;
+ */
+public class ChangeDetector {
+
+	/** Probe for Cisco IOS, the time of the last change, or that there has been no change since restart */
+	public static final String CISCO_PROBE = "show running-config | include Last configuration change|No configuration change since";
+	private static final String PROBE = "probe:";
+
+	private final SnapshotStore store;
+	private final Map<Class<?>, String> probes = new ConcurrentHashMap<Class<?>, String>();
+	private final List<Pattern> volatilePatterns = new CopyOnWriteArrayList<Pattern>();
+	private final AtomicLong fetched = new AtomicLong();
+	private final AtomicLong skipped = new AtomicLong();
+
+	/**
+	 * Create a detector, storing outputs and probes in a store
+	 * @param store store of the outputs
+	 */
+	public ChangeDetector(SnapshotStore store) {
+		this.store = store;
+		probes.put(CiscoSession.class, CISCO_PROBE);
+		addVolatilePattern("^! NVRAM config last updated");
+		addVolatilePattern("^! Last configuration change");
+	}
+
+	/**
+	 * Set the probe of a session type, and its subclasses
+	 * @param type session type, like <code>BrocadeSession.class</code>
+	 * @param command probe command, or null to always fetch
+	 */
+	public void setProbe(Class<? extends CommandSession> type, String command) {
+		if (command == null) {
+			probes.remove(type);
+		} else {
+			probes.put(type, command);
+		}
+	}
+
+	/**
+	 * Add a pattern of lines to leave out of the stored outputs
+	 * @param regex pattern found in the volatile lines
+	 */
+	public void addVolatilePattern(String regex) {
+		volatilePatterns.add(Pattern.compile(regex));
+	}
+
+	/**
+	 * Get the output of a command, running it only if the probe has changed
+	 * @param session logged in session
+	 * @param host name of the host, the key of its history
+	 * @param command command to run
+	 * @return the latest snapshot, taken now if the output was fetched
+	 * @throws SessionException if unable to run the probe or the command
+	 * @throws IOException if unable to store the output
+	 */
+	public Snapshot fetch(CommandSession session, String host, String command) throws SessionException, IOException {
+		String probe = getProbe(session.getClass());
+		String[] probed = null;
+		if (probe != null) {
+			probed = probe(session, probe);
+			Snapshot latest = store.latest(host, command);
+			Snapshot last = store.latest(host, PROBE + command);
+			if (latest != null && last != null && last.getHash().equals(SnapshotStore.hex(SnapshotStore.digest(probed)))) {
+				skipped.incrementAndGet();
+				return latest;
+			}
+		}
+		final MessageDigest digest = SnapshotStore.sha256();
+		final ArrayList<String> lines = new ArrayList<String>();
+		session.cmd(command, new LineHandler() {
+			@Override
+			public void onLine(CharSequence line) {
+				String s = line.toString();
+				if (!isVolatile(s)) {
+					lines.add(s);
+					SnapshotStore.update(digest, s);
+				}
+			}
+		});
+		Snapshot snapshot = store.store(host, command, lines.toArray(new String[lines.size()]), digest.digest());
+		// The probe is stored last, a failed fetch is retried next time
+		if (probed != null) store.store(host, PROBE + command, probed);
+		fetched.incrementAndGet();
+		return snapshot;
+	}
+
+	/**
+	 * @return number of outputs fetched
+	 */
+	public long getFetched() {
+		return fetched.get();
+	}
+
+	/**
+	 * @return number of fetches skipped, as the probe was unchanged
+	 */
+	public long getSkipped() {
+		return skipped.get();
+	}
+
+	private String getProbe(Class<?> type) {
+		for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+			String probe = probes.get(c);
+			if (probe != null) return probe;
+		}
+		return null;
+	}
+
+	/**
+	 * Run the probe, past any command cache of the session, as the output
+	 * of the probe is expected to change.
+	 */
+	private static String[] probe(CommandSession session, String probe) throws SessionException {
+		final ArrayList<String> lines = new ArrayList<String>();
+		session.cmd(probe, new LineHandler() {
+			@Override
+			public void onLine(CharSequence line) {
+				lines.add(line.toString());
+			}
+		});
+		return lines.toArray(new String[lines.size()]);
+	}
+
+	private boolean isVolatile(String line) {
+		for (Pattern p : volatilePatterns) {
+			if (p.matcher(line).find()) return true;
+		}
+		return false;
+	}
+}
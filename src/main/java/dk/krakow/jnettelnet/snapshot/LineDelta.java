@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2016, Michael Thorsager <thorsager@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice, this
+ *    list of conditions and the following disclaimer in the documentation and/or
+ *    other materials provided with the distribution.
+ *
+ *  * Neither the name of Open Solutions nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.krakow.jnettelnet.snapshot;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Line based delta between two versions of a text, as a list of copies of
+ * lines from the base version and inserts of new lines.
+ * <p>
+ * Lines are matched greedily, continuing a copy for as long as the lines
+ * are the same, and looking up where a line is found in the base version
+ * otherwise. This finds the changes of a configuration, where a few lines
+ * are changed, added or moved, in linear time.
+ * </p>
+ *
+ * @author Michael Thorsager &lt;thorsager@gmail.com&gt;
+ */
+final class LineDelta {
+
+	private static final int COPY = 1;
+	private static final int INSERT = 2;
+	private static final int END = 0;
+
+	private LineDelta() {
+	}
+
+	/**
+	 * Create a compressed delta
+	 * @param base base version
+	 * @param target new version
+	 * @return delta, turning <code>base</code> into <code>target</code>
+	 */
+	static byte[] diff(String[] base, String[] target) {
+		HashMap<String, Integer> index = new HashMap<String, Integer>(base.length * 2);
+		for (int i = base.length - 1; i >= 0; i--) {
+			index.put(base[i], i);
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+		try {
+			DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes, deflater));
+			int next = -1; // base line following the current copy
+			int copyStart = 0;
+			int copyCount = 0;
+			int i = 0;
+			while (i < target.length) {
+				if (next >= 0 && next < base.length && base[next].equals(target[i])) {
+					copyCount++;
+					next++;
+					i++;
+					continue;
+				}
+				if (copyCount > 0) {
+					copy(out, copyStart, copyCount);
+					copyCount = 0;
+				}
+				Integer at = index.get(target[i]);
+				if (at != null) {
+					copyStart = at;
+					copyCount = 1;
+					next = at + 1;
+				} else {
+					insert(out, target[i]);
+					next = -1;
+				}
+				i++;
+			}
+			if (copyCount > 0) {
+				copy(out, copyStart, copyCount);
+			}
+			out.writeByte(END);
+			out.close();
+		} catch (IOException e) {
+			throw new IllegalStateException(e); // Not thrown by a ByteArrayOutputStream
+		} finally {
+			deflater.end();
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Apply a delta
+	 * @param base base version
+	 * @param delta delta created by <code>diff</code>
+	 * @return the new version
+	 * @throws IOException if the delta is corrupt
+	 */
+	static String[] apply(String[] base, byte[] delta) throws IOException {
+		DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(delta)));
+		try {
+			ArrayList<String> lines = new ArrayList<String>(base.length + 16);
+			int op;
+			while ((op = in.readByte()) != END) {
+				if (op == COPY) {
+					int start = in.readInt();
+					int count = in.readInt();
+					if (start < 0 || count < 0 || start + count > base.length) throw new IOException("Corrupt delta");
+					for (int i = start; i < start + count; i++) {
+						lines.add(base[i]);
+					}
+				} else if (op == INSERT) {
+					lines.add(readLine(in));
+				} else {
+					throw new IOException("Corrupt delta");
+				}
+			}
+			return lines.toArray(new String[lines.size()]);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Compress a whole version
+	 * @param lines version
+	 * @return compressed lines
+	 */
+	static byte[] compress(String[] lines) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+		try {
+			DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes, deflater));
+			out.writeInt(lines.length);
+			for (String line : lines) {
+				writeLine(out, line);
+			}
+			out.close();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		} finally {
+			deflater.end();
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Decompress a whole version
+	 * @param data compressed lines
+	 * @return lines
+	 * @throws IOException if the data is corrupt
+	 */
+	static String[] decompress(byte[] data) throws IOException {
+		DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(data)));
+		try {
+			String[] lines = new String[in.readInt()];
+			for (int i = 0; i < lines.length; i++) {
+				lines[i] = readLine(in);
+			}
+			return lines;
+		} finally {
+			in.close();
+		}
+	}
+
+	private static void copy(DataOutputStream out, int start, int count) throws IOException {
+		out.writeByte(COPY);
+		out.writeInt(start);
+		out.writeInt(count);
+	}
+
+	private static void insert(DataOutputStream out, String line) throws IOException {
+		out.writeByte(INSERT);
+		writeLine(out, line);
+	}
+
+	private static void writeLine(DataOutputStream out, String line) throws IOException {
+		byte[] b = line.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(b.length);
+		out.write(b);
+	}
+
+	private static String readLine(DataInputStream in) throws IOException {
+		byte[] b = new byte[in.readInt()];
+		in.readFully(b);
+		return new String(b, StandardCharsets.UTF_8);
+	}
+}
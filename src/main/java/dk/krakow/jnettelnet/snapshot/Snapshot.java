@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2016, Michael Thorsager <thorsager@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice, this
+ *    list of conditions and the following disclaimer in the documentation and/or
+ *    other materials provided with the distribution.
+ *
+ *  * Neither the name of Open Solutions nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.krakow.jnettelnet.snapshot;
+
+/**
+ * A version of the output of a command on a host, as kept by a
+ * <code>SnapshotStore</code>.
+ *
+ * @author Michael Thorsager &lt;thorsager@gmail.com&gt;
+ */
+public final class Snapshot {
+
+	private final String host;
+	private final String command;
+	private final long time;
+	private final String hash;
+
+	Snapshot(String host, String command, long time, String hash) {
+		this.host = host;
+		this.command = command;
+		this.time = time;
+		this.hash = hash;
+	}
+
+	public String getHost() {
+		return host;
+	}
+
+	public String getCommand() {
+		return command;
+	}
+
+	/**
+	 * @return time the snapshot was taken, in ms since the epoch
+	 */
+	public long getTime() {
+		return time;
+	}
+
+	/**
+	 * @return SHA-256 of the output, in hex. Snapshots with the same output have the same hash
+	 */
+	public String getHash() {
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		return "Snapshot{host=" + host + ", command=" + command + ", time=" + time + ", hash=" + hash + "}";
+	}
+}
@@ -0,0 +1,450 @@
+/*
+ * Copyright (c) 2016, Michael Thorsager <thorsager@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright notice, this
+ *    list of conditions and the following disclaimer in the documentation and/or
+ *    other materials provided with the distribution.
+ *
+ *  * Neither the name of Open Solutions nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.krakow.jnettelnet.snapshot;
+
+import dk.krakow.jnettelnet.CommandSession;
+import dk.krakow.jnettelnet.LineHandler;
+import dk.krakow.jnettelnet.SessionException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Keeps the history of command outputs, such as configurations, of many
+ * hosts, storing every distinct output once.
+ * <p>
+ * Outputs are addressed by their SHA-256, computed while the output is
+ * read from the host. If an output has been stored before, by any host, only
+ * a small index record is written. A new output is stored as a compressed
+ * delta against the previous version from the same host, or compressed as
+ * a whole every <code>maxDeltaChain</code> versions, to bound the work of
+ * loading a version.
+ * </p>
+ * <p>
+ * Outputs are appended to segment files, which are never rewritten, and
+ * their versions to an index file, which is read when the store is opened.
+ * A store is safe for use by many threads, the hosts are read without
+ * holding any lock.
+ * </p>
+ * <pre>
+ * SnapshotStore store = new SnapshotStore(new File("backups"));
+ * Snapshot s = store.capture(session, "core-sw01", "show running");
+ * String[] config = store.load(s);
+ * </pre>
+ *
+ * @author Michael Thorsager &lt;thorsager@gmail.com&gt;
+ */
+public class SnapshotStore implements Closeable {
+
+	static final long DEFAULT_MAX_SEGMENT_SIZE = 64L * 1024 * 1024;
+	static final int DEFAULT_MAX_DELTA_CHAIN = 16;
+	private static final String INDEX = "index";
+	private static final int BLOB = 'B';
+	private static final int VERSION = 'V';
+	private static final int FULL = 0;
+	private static final int DELTA = 1;
+	private static final byte[] NO_HASH = new byte[32];
+
+	private final File directory;
+	private final HashMap<String, Blob> blobs = new HashMap<String, Blob>();
+	private final HashMap<String, List<Snapshot>> versions = new HashMap<String, List<Snapshot>>();
+	private long maxSegmentSize = DEFAULT_MAX_SEGMENT_SIZE;
+	private int maxDeltaChain = DEFAULT_MAX_DELTA_CHAIN;
+	private DataOutputStream index;
+	private FileChannel segment;
+	private int segmentNumber = 0;
+	private long blobBytes = 0;
+
+	/**
+	 * Open a store, creating it if the directory is empty
+	 * @param directory directory of the store
+	 * @throws IOException if unable to read the index
+	 */
+	public SnapshotStore(File directory) throws IOException {
+		this.directory = directory;
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Unable to create " + directory);
+		}
+		File file = new File(directory, INDEX);
+		if (file.exists()) {
+			long good = readIndex(file);
+			if (good < file.length()) {
+				// Drop a record that was cut short by a crash
+				RandomAccessFile raf = new RandomAccessFile(file, "rw");
+				try {
+					raf.setLength(good);
+				} finally {
+					raf.close();
+				}
+			}
+		}
+		index = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+	}
+
+	/**
+	 * Set the size at which a new segment file is started, defaults to 64MB
+	 * @param maxSegmentSize size in bytes
+	 */
+	public synchronized void setMaxSegmentSize(long maxSegmentSize) {
+		this.maxSegmentSize = maxSegmentSize;
+	}
+
+	/**
+	 * Set the max. number of deltas that must be applied to load a version, defaults to 16
+	 * @param maxDeltaChain number of deltas, 0 to always store whole outputs
+	 */
+	public synchronized void setMaxDeltaChain(int maxDeltaChain) {
+		this.maxDeltaChain = maxDeltaChain;
+	}
+
+	/**
+	 * Run a command and store its output. The output is hashed while it is read.
+	 * @param session logged in session
+	 * @param host name of the host, the key of its history
+	 * @param command command to run
+	 * @return the snapshot taken
+	 * @throws SessionException if unable to run the command
+	 * @throws IOException if unable to store the output
+	 */
+	public Snapshot capture(CommandSession session, String host, String command) throws SessionException, IOException {
+		final MessageDigest digest = sha256();
+		final ArrayList<String> lines = new ArrayList<String>();
+		session.cmd(command, new LineHandler() {
+			@Override
+			public void onLine(CharSequence line) {
+				String s = line.toString();
+				lines.add(s);
+				update(digest, s);
+			}
+		});
+		return store(host, command, lines.toArray(new String[lines.size()]), digest.digest());
+	}
+
+	/**
+	 * Store the output of a command
+	 * @param host name of the host, the key of its history
+	 * @param command command that was run
+	 * @param lines output of the command
+	 * @return the snapshot taken
+	 * @throws IOException if unable to store the output
+	 */
+	public Snapshot store(String host, String command, String[] lines) throws IOException {
+		return store(host, command, lines, digest(lines));
+	}
+
+	/**
+	 * Get the latest snapshot of a command on a host
+	 * @param host name of the host
+	 * @param command command
+	 * @return snapshot, or null if there is none
+	 */
+	public synchronized Snapshot latest(String host, String command) {
+		List<Snapshot> list = versions.get(key(host, command));
+		return list == null ? null : list.get(list.size() - 1);
+	}
+
+	/**
+	 * Get all snapshots of a command on a host
+	 * @param host name of the host
+	 * @param command command
+	 * @return snapshots, oldest first
+	 */
+	public synchronized List<Snapshot> history(String host, String command) {
+		List<Snapshot> list = versions.get(key(host, command));
+		return list == null ? Collections.<Snapshot>emptyList() : new ArrayList<Snapshot>(list);
+	}
+
+	/**
+	 * Load the output of a snapshot
+	 * @param snapshot snapshot from this store
+	 * @return output of the command
+	 * @throws IOException if unable to read the output
+	 */
+	public synchronized String[] load(Snapshot snapshot) throws IOException {
+		return load(snapshot.getHash());
+	}
+
+	/**
+	 * @return number of distinct outputs stored
+	 */
+	public synchronized int getBlobCount() {
+		return blobs.size();
+	}
+
+	/**
+	 * @return bytes used by the stored outputs
+	 */
+	public synchronized long getBlobBytes() {
+		return blobBytes;
+	}
+
+	/**
+	 * Close the files of the store
+	 */
+	@Override
+	public synchronized void close() {
+		try {
+			index.close();
+			if (segment != null) segment.close();
+		} catch (IOException ignored) {
+		}
+	}
+
+	// ------------------------------------------------------------- Storing
+	synchronized Snapshot store(String host, String command, String[] lines, byte[] digest) throws IOException {
+		String hash = hex(digest);
+		Snapshot previous = latest(host, command);
+		if (!blobs.containsKey(hash)) {
+			byte[] data = null;
+			int type = FULL;
+			Blob base = previous == null ? null : blobs.get(previous.getHash());
+			if (base != null && base.depth < maxDeltaChain) {
+				data = LineDelta.diff(load(previous.getHash()), lines);
+				type = DELTA;
+			}
+			byte[] whole = LineDelta.compress(lines);
+			if (data == null || whole.length <= data.length) {
+				data = whole;
+				type = FULL;
+			}
+			Blob blob = type == DELTA ? new Blob(0, 0, 0, DELTA, previous.getHash(), base.depth + 1) : new Blob(0, 0, 0, FULL, null, 0);
+			blob = append(blob, data);
+			blobs.put(hash, blob);
+			index.writeByte(BLOB);
+			index.write(digest);
+			index.writeInt(blob.segment);
+			index.writeLong(blob.offset);
+			index.writeInt(blob.length);
+			index.writeByte(blob.type);
+			index.write(blob.base == null ? NO_HASH : unhex(blob.base));
+			index.writeShort(blob.depth);
+		}
+		Snapshot snapshot = new Snapshot(host, command, System.currentTimeMillis(), hash);
+		index.writeByte(VERSION);
+		index.writeUTF(host);
+		index.writeUTF(command);
+		index.writeLong(snapshot.getTime());
+		index.write(digest);
+		index.flush();
+		addVersion(snapshot);
+		return snapshot;
+	}
+
+	private Blob append(Blob blob, byte[] data) throws IOException {
+		if (segment == null || segment.size() >= maxSegmentSize) {
+			if (segment != null) {
+				segment.close();
+				segmentNumber++;
+			}
+			segment = FileChannel.open(segmentFile(segmentNumber).toPath(),
+					StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		}
+		long offset = segment.size();
+		ByteBuffer buf = ByteBuffer.wrap(data);
+		while (buf.hasRemaining()) {
+			segment.write(buf);
+		}
+		blobBytes += data.length;
+		return new Blob(segmentNumber, offset, data.length, blob.type, blob.base, blob.depth);
+	}
+
+	// ------------------------------------------------------------- Loading
+	private String[] load(String hash) throws IOException {
+		Blob blob = blobs.get(hash);
+		if (blob == null) {
+			throw new IOException("No such snapshot: " + hash);
+		}
+		byte[] data = new byte[blob.length];
+		FileChannel channel = FileChannel.open(segmentFile(blob.segment).toPath(), StandardOpenOption.READ);
+		try {
+			ByteBuffer buf = ByteBuffer.wrap(data);
+			while (buf.hasRemaining()) {
+				if (channel.read(buf, blob.offset + buf.position()) < 0) throw new EOFException("Segment cut short: " + blob.segment);
+			}
+		} finally {
+			channel.close();
+		}
+		return blob.type == FULL ? LineDelta.decompress(data) : LineDelta.apply(load(blob.base), data);
+	}
+
+	/**
+	 * Read the index
+	 * @return length of the complete records read
+	 */
+	private long readIndex(File file) throws IOException {
+		final long[] pos = new long[1];
+		DataInputStream in = new DataInputStream(new FilterInputStream(new BufferedInputStream(new FileInputStream(file))) {
+			@Override
+			public int read() throws IOException {
+				int b = super.read();
+				if (b >= 0) pos[0]++;
+				return b;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				int n = super.read(b, off, len);
+				if (n > 0) pos[0] += n;
+				return n;
+			}
+		});
+		long good = 0;
+		byte[] digest = new byte[32];
+		byte[] base = new byte[32];
+		try {
+			while (true) {
+				int type = in.read();
+				if (type == BLOB) {
+					in.readFully(digest);
+					int seg = in.readInt();
+					long offset = in.readLong();
+					int length = in.readInt();
+					int blobType = in.readByte();
+					in.readFully(base);
+					int depth = in.readShort();
+					blobs.put(hex(digest), new Blob(seg, offset, length, blobType, blobType == DELTA ? hex(base) : null, depth));
+					segmentNumber = Math.max(segmentNumber, seg);
+					blobBytes += length;
+				} else if (type == VERSION) {
+					String host = in.readUTF();
+					String command = in.readUTF();
+					long time = in.readLong();
+					in.readFully(digest);
+					addVersion(new Snapshot(host, command, time, hex(digest)));
+				} else {
+					break;
+				}
+				good = pos[0];
+			}
+		} catch (EOFException cut) {
+			// Last record is incomplete
+		} finally {
+			in.close();
+		}
+		return good;
+	}
+
+	private void addVersion(Snapshot snapshot) {
+		String key = key(snapshot.getHost(), snapshot.getCommand());
+		List<Snapshot> list = versions.get(key);
+		if (list == null) {
+			list = new ArrayList<Snapshot>();
+			versions.put(key, list);
+		}
+		list.add(snapshot);
+	}
+
+	private File segmentFile(int number) {
+		return new File(directory, String.format("segment-%06d.dat", number));
+	}
+
+	private static String key(String host, String command) {
+		return host + '\u0000' + command;
+	}
+
+	static byte[] digest(String[] lines) {
+		MessageDigest digest = sha256();
+		for (String line : lines) {
+			update(digest, line);
+		}
+		return digest.digest();
+	}
+
+	static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e); // Required of every Java platform
+		}
+	}
+
+	static void update(MessageDigest digest, String line) {
+		digest.update(line.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) '\n');
+	}
+
+	static String hex(byte[] b) {
+		StringBuilder sb = new StringBuilder(b.length * 2);
+		for (byte x : b) {
+			sb.append(Character.forDigit((x >> 4) & 0xF, 16)).append(Character.forDigit(x & 0xF, 16));
+		}
+		return sb.toString();
+	}
+
+	private static byte[] unhex(String s) {
+		byte[] b = new byte[s.length() / 2];
+		for (int i = 0; i < b.length; i++) {
+			b[i] = (byte) Integer.parseInt(s.substring(2 * i, 2 * i + 2), 16);
+		}
+		return b;
+	}
+
+	/**
+	 * Where an output is stored, and how.
+	 */
+	private static final class Blob {
+		final int segment;
+		final long offset;
+		final int length;
+		final int type;
+		final String base;
+		final int depth;
+
+		Blob(int segment, long offset, int length, int type, String base, int depth) {
+			this.segment = segment;
+			this.offset = offset;
+			this.length = length;
+			this.type = type;
+			this.base = base;
+			this.depth = depth;
+		}
+	}
+}
@@ -0,0 +1,35 @@
+package dk.krakow.jnettelnet;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input returning one chunk per read, like a host sending its output in
+ * separate segments. Chunks after the next are not available yet.
+ */
+class ChunkedInputStream extends InputStream {
+    private final String[] chunks;
+    private int next = 0;
+
+    ChunkedInputStream(String... chunks) {
+        this.chunks = chunks;
+    }
+
+    @Override
+    public int read() throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (next == chunks.length) return -1;
+        byte[] chunk = chunks[next++].getBytes("ISO-8859-1");
+        System.arraycopy(chunk, 0, b, off, chunk.length);
+        return chunk.length;
+    }
+
+    @Override
+    public int available() {
+        return next < chunks.length ? chunks[next].length() : 0;
+    }
+}
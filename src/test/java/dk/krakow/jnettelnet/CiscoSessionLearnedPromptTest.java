@@ -0,0 +1,61 @@
+package dk.krakow.jnettelnet;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testcases for matching the prompt learned after login
+ */
+public class CiscoSessionLearnedPromptTest {
+
+    @Test
+    public void learned_prompt_is_matched_exactly() throws Exception {
+        CiscoSession s = new CiscoSession("localhost", 23);
+        s.input = new ChunkedInputStream(
+                "show version\r\nrouter>",
+                "show run\r\n description to core#\r\n banner motd #\r\nrouter>",
+                "enable\r\nPassword: ",
+                "\r\nrouter#",
+                "show clock\r\n12:00:00\r\nrouter#");
+        s.output = new ByteArrayOutputStream();
+        s._learnPrompt();
+
+        assertEquals(Arrays.asList("show version"), Arrays.asList(s.read()));
+        assertArrayEquals(new String[] {" description to core#", " banner motd #"}, s.cmd("show run"));
+        s.enable("secret");
+        assertArrayEquals(new String[] {"12:00:00"}, s.cmd("show clock"));
+    }
+
+    @Test
+    public void changed_prompt_is_learned_again() throws Exception {
+        CiscoSession s = new CiscoSession("localhost", 23);
+        s.input = new ChunkedInputStream(
+                "show version\r\nrouter>",
+                "enable\r\nPassword: ",
+                "\r\nrouter#",
+                "show clock\r\n12:00:00\r\nrouter#",
+                "show run\r\n description to core#\r\n banner motd #\r\nrouter#",
+                "configure terminal\r\nrouter(config)#",
+                "end\r\nrouter#",
+                "show clock\r\n12:00:01\r\nrouter#",
+                "show run\r\n description to core>\r\n description to core#\r\nrouter#");
+        s.output = new ByteArrayOutputStream();
+        s._learnPrompt();
+
+        assertEquals(Arrays.asList("show version"), Arrays.asList(s.read()));
+        s.enable("secret");
+        assertEquals("router#", s.getPrompt());
+        assertArrayEquals(new String[] {"12:00:00"}, s.cmd("show clock"));
+        assertArrayEquals(new String[] {" description to core#", " banner motd #"}, s.cmd("show run"));
+
+        assertEquals(0, s.cmd("configure terminal").length);
+        assertEquals("router(config)#", s.getPrompt());
+        assertEquals(0, s.cmd("end").length);
+        assertArrayEquals(new String[] {"12:00:01"}, s.cmd("show clock"));
+        assertArrayEquals(new String[] {" description to core>", " description to core#"}, s.cmd("show run"));
+    }
+}
@@ -0,0 +1,29 @@
+package dk.krakow.jnettelnet;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testcases for answering and removing pager markers
+ */
+public class CiscoSessionPagerTest {
+
+    @Test
+    public void pages_are_answered_and_erased() throws Exception {
+        ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        CiscoSession s = new CiscoSession("localhost", 23);
+        s.input = new ChunkedInputStream(
+                "show log\r\nline 1\r\n --More-- ",
+                "\b\b\b\b\b\b\b\b\b\b         \b\b\b\b\b\b\b\b\bline 2\r\n --More-- ",
+                "\r          \rline 3\r\n --More-- ",
+                "\u001b[2K\u001b[10Dline 4\r\nrouter#");
+        s.output = sent;
+
+        assertEquals(Arrays.asList("line 1", "line 2", "line 3", "line 4"), Arrays.asList(s.cmd("show log")));
+        assertEquals("show log\r\n   ", sent.toString("ISO-8859-1"));
+    }
+}
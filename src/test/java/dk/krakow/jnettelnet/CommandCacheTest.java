@@ -0,0 +1,78 @@
+package dk.krakow.jnettelnet;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testcases for answering commands from the command cache
+ */
+public class CommandCacheTest {
+
+    @Test
+    public void least_recently_used_output_is_evicted() throws Exception {
+        CommandCache cache = new CommandCache(2000);
+        cache.setDefaultTtl(60000);
+        String[] output = {"0123456789012345678901234567890123456789012345678901234567890123456789"};
+        for (int i = 0; i < 20; i++) {
+            cache.put("sw1", "sw1>", "show " + i, output);
+            assertNotNull(cache.get("sw1", "sw1>", "show 0"));
+        }
+        assertTrue(cache.getBytes() <= 2000);
+        assertTrue(cache.size() < 20);
+        assertNotNull(cache.get("sw1", "sw1>", "show 0"));
+        assertNull(cache.get("sw1", "sw1>", "show 1"));
+        assertNotNull(cache.get("sw1", "sw1>", "show 19"));
+        assertNull(cache.get("sw1", "sw1#", "show 19"));
+
+        cache.setTtl("show ttl", 20);
+        cache.put("sw2", "sw2>", "show ttl", output);
+        assertNotNull(cache.get("sw2", "sw2>", "show ttl"));
+        Thread.sleep(40);
+        assertNull(cache.get("sw2", "sw2>", "show ttl"));
+
+        cache.setTtl("show never", 0);
+        cache.put("sw2", "sw2>", "show never", output);
+        assertNull(cache.get("sw2", "sw2>", "show never"));
+    }
+
+    @Test
+    public void commands_are_answered_from_cache() throws Exception {
+        DeviceSimulator simulator = new DeviceSimulator(DeviceSimulator.Vendor.CISCO);
+        simulator.addCommand("show version", "Version 1.0\nUptime 1 week");
+        int port = simulator.start();
+        try {
+            CommandCache cache = new CommandCache(1024 * 1024);
+            cache.setTtl("show version", 60000);
+            CiscoSession s = new CiscoSession("127.0.0.1", port);
+            s.setCommandCache(cache);
+            s.connect();
+            s.login("admin", "secret");
+            long executed = simulator.getExecuted();
+            String[] first = s.cmd("show version");
+            first[0] = "changed by caller";
+            assertEquals("Version 1.0", s.cmd("show version")[0]);
+            assertEquals(executed + 1, simulator.getExecuted());
+
+            // Enabled mode is cached apart
+            s.enable("enable");
+            assertEquals("sim1#", s.getPrompt().trim());
+            executed = simulator.getExecuted();
+            s.cmd("show version");
+            s.cmd("show version");
+            assertEquals(executed + 1, simulator.getExecuted());
+
+            // Configuration invalidates the host
+            s.cmd("configure terminal");
+            s.cmd("end");
+            assertEquals(0, cache.size());
+            executed = simulator.getExecuted();
+            s.cmd("show version");
+            assertEquals(executed + 1, simulator.getExecuted());
+            assertEquals(2, cache.getHits());
+            s.close();
+        } finally {
+            simulator.close();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package dk.krakow.jnettelnet;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testcases for sharing the execution of concurrent identical commands
+ */
+public class CommandCoalescerTest {
+
+    private DeviceSimulator simulator;
+    private SessionPool pool;
+    private ExecutorService executor;
+
+    @After
+    public void tearDown() {
+        if (executor != null) executor.shutdownNow();
+        if (pool != null) pool.close();
+        if (simulator != null) simulator.close();
+    }
+
+    private List<Future<String[]>> run(final CommandCoalescer coalescer, final int port, final Credentials credentials, int requests) {
+        executor = Executors.newFixedThreadPool(requests);
+        List<Future<String[]>> results = new ArrayList<Future<String[]>>();
+        for (int i = 0; i < requests; i++) {
+            results.add(executor.submit(new Callable<String[]>() {
+                @Override
+                public String[] call() throws Exception {
+                    return coalescer.cmd("127.0.0.1", port, credentials, "show interfaces status");
+                }
+            }));
+        }
+        return results;
+    }
+
+    @Test
+    public void concurrent_requests_share_one_execution() throws Exception {
+        simulator = new DeviceSimulator(DeviceSimulator.Vendor.CISCO);
+        simulator.setRtt(100);
+        simulator.addCommand("show interfaces status", "Gi0/1 connected\nGi0/2 notconnect", 50);
+        int port = simulator.start();
+        pool = new SessionPool(CiscoSession.class);
+        CommandCoalescer coalescer = new CommandCoalescer(pool);
+
+        List<Future<String[]>> results = run(coalescer, port, new Credentials("admin", "secret", null), 50);
+        for (Future<String[]> result : results) {
+            String[] output = result.get();
+            assertEquals(100, output.length);
+            output[0] = "changed by caller";
+        }
+        assertEquals(50, coalescer.getExecuted() + coalescer.getCoalesced());
+        assertTrue("executed " + coalescer.getExecuted(), coalescer.getExecuted() < 5);
+        // Sessions are reused, so there may be fewer connections than executions
+        assertTrue(simulator.getAccepted() <= coalescer.getExecuted());
+
+        // A completed execution is not reused
+        long coalesced = coalescer.getCoalesced();
+        String[] again = coalescer.cmd("127.0.0.1", port, new Credentials("admin", "secret", null), "show interfaces status");
+        assertEquals("Gi0/1 connected", again[0]);
+        assertEquals(coalesced, coalescer.getCoalesced());
+    }
+
+    @Test
+    public void failure_is_shared() throws Exception {
+        simulator = new DeviceSimulator(DeviceSimulator.Vendor.CISCO);
+        simulator.setRtt(100);
+        int port = simulator.start();
+        pool = new SessionPool(CiscoSession.class);
+        CommandCoalescer coalescer = new CommandCoalescer(pool);
+
+        for (Future<String[]> result : run(coalescer, port, new Credentials("admin", "wrong", null), 10)) {
+            try {
+                result.get();
+                fail();
+            } catch (ExecutionException expected) {
+                assertTrue(expected.getCause() instanceof SessionException);
+            }
+        }
+        assertTrue(coalescer.getExecuted() < 3);
+    }
+}
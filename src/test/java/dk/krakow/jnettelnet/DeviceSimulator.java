@@ -0,0 +1,721 @@
+package dk.krakow.jnettelnet;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Telnet server simulating network devices, for testing sessions, pools and
+ * fleets without real hardware.
+ * <p>
+ * Every connection is a device of the given vendor, named <i>sim</i> followed
+ * by the number of the connection. It asks for a username and password,
+ * and has prompts matching the prompt pattern of the vendor session. A single
+ * selector thread serves all connections, so tens of thousands of devices
+ * can be simulated, limited by the number of open files.
+ * </p>
+ * <p>
+ * The simulation can be made harder with a round trip time added to every
+ * response, a bandwidth limit per connection, a storm of option negotiations
+ * in front of every response, and pager markers every page of output, until
+ * paging is turned off or a window size is negotiated. Commands answer with
+ * the output added by <code>addCommand</code>, which can be repeated to
+ * produce outputs of any size without keeping them in memory.
+ * </p>
+ * <p>
+ * Configure the simulator before it is started, only the commands may be
+ * changed while it is running.
+ * </p>
+ */
+public class DeviceSimulator implements Closeable {
+
+    /**
+     * Login flows and prompts of the supported vendors. The sessions skip the
+     * first line when connecting, so every banner starts with a line break.
+     */
+    public enum Vendor {
+        CISCO("\r\nUser Access Verification\r\n\r\n", "Username: ", "Password: ", ">", "#", " --More-- ", "terminal length 0"),
+        BROCADE("\r\n", "User:", "Password:", ">", "#", "--More--, next page: Space, next line: Return key, quit: Control-c", "terminal length 0"),
+        OMNISTACK("\r\n", "User Name:", "Password:", ">", "#", "More: <space>,  Quit: q, One line: <return> ", "terminal datadump"),
+        ALLIED_TELESIS("\r\n", "Login:", "Password:", "-->", null, "--More--", null);
+
+        final String banner;
+        final String userPrompt;
+        final String passwordPrompt;
+        final String execPrompt;
+        final String enabledPrompt;
+        final String pager;
+        final String pagingOff;
+
+        Vendor(String banner, String userPrompt, String passwordPrompt, String execPrompt, String enabledPrompt, String pager, String pagingOff) {
+            this.banner = banner;
+            this.userPrompt = userPrompt;
+            this.passwordPrompt = passwordPrompt;
+            this.execPrompt = execPrompt;
+            this.enabledPrompt = enabledPrompt;
+            this.pager = pager;
+            this.pagingOff = pagingOff;
+        }
+    }
+
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final int STORM_FIRST_OPTION = 32;
+
+    private final Vendor vendor;
+    private final Map<String, Output> commands = new ConcurrentHashMap<String, Output>();
+    private String username = "admin";
+    private String password = "secret";
+    private String enablePassword = "enable";
+    private long rtt = 0;
+    private int bandwidth = 0;
+    private int optionStorm = 0;
+    private int pageLength = 24;
+    private boolean naws = true;
+
+    private final AtomicInteger connected = new AtomicInteger();
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong executed = new AtomicLong();
+    private final PriorityQueue<Wakeup> wakeups = new PriorityQueue<Wakeup>();
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(16 * 1024);
+    private ServerSocketChannel server;
+    private Selector selector;
+    private Thread thread;
+    private volatile boolean running;
+
+    /**
+     * Create a simulator of devices from a vendor
+     * @param vendor vendor of the simulated devices
+     */
+    public DeviceSimulator(Vendor vendor) {
+        this.vendor = vendor;
+    }
+
+    /**
+     * Set the credentials accepted by the devices, defaults to admin/secret/enable.
+     * @param username username
+     * @param password password
+     * @param enablePassword enable secret
+     */
+    public void setCredentials(String username, String password, String enablePassword) {
+        this.username = username;
+        this.password = password;
+        this.enablePassword = enablePassword;
+    }
+
+    /**
+     * Delay every response, defaults to none.
+     * @param rtt round trip time in milliseconds
+     */
+    public void setRtt(int rtt) {
+        this.rtt = rtt * 1000000L;
+    }
+
+    /**
+     * Limit the rate of sending, for each connection, defaults to unlimited.
+     * @param bandwidth max. bytes per second, 0 for unlimited
+     */
+    public void setBandwidth(int bandwidth) {
+        this.bandwidth = bandwidth;
+    }
+
+    /**
+     * Send a number of option negotiations, and an unknown subnegotiation,
+     * in front of the banner and of every response, defaults to none.
+     * @param negotiations number of negotiations
+     */
+    public void setOptionStorm(int negotiations) {
+        this.optionStorm = negotiations;
+    }
+
+    /**
+     * Set the number of lines of output between pager markers, defaults to 24.
+     * @param pageLength lines per page, 0 to never page
+     */
+    public void setPageLength(int pageLength) {
+        this.pageLength = pageLength;
+    }
+
+    /**
+     * Ask the client for its window size, and use the height instead of the
+     * page length. Defaults to true.
+     * @param naws true to negotiate the window size
+     */
+    public void setNaws(boolean naws) {
+        this.naws = naws;
+    }
+
+    /**
+     * Add a command to the devices
+     * @param command command line
+     * @param output output of the command, lines separated by newlines
+     */
+    public void addCommand(String command, String output) {
+        addCommand(command, output, 1);
+    }
+
+    /**
+     * Add a command with a large output, repeating the given output
+     * @param command command line
+     * @param output output to repeat, lines separated by newlines
+     * @param repeat number of times the output is repeated
+     */
+    public void addCommand(String command, String output, int repeat) {
+        String[] lines = output.split("\r?\n");
+        byte[][] data = new byte[lines.length][];
+        for (int i = 0; i < lines.length; i++) {
+            data[i] = lines[i].getBytes(StandardCharsets.ISO_8859_1);
+        }
+        commands.put(command, new Output(data, repeat));
+    }
+
+    /**
+     * Start accepting connections on a free port of 127.0.0.1
+     * @return the port
+     * @throws IOException If unable to listen
+     */
+    public int start() throws IOException {
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress("127.0.0.1", 0), 4096);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loop();
+            }
+        }, "DeviceSimulator-" + vendor);
+        thread.setDaemon(true);
+        thread.start();
+        return getPort();
+    }
+
+    /**
+     * @return the port the simulator listens on
+     */
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    /**
+     * @return number of open connections
+     */
+    public int getConnected() {
+        return connected.get();
+    }
+
+    /**
+     * @return number of connections accepted
+     */
+    public long getAccepted() {
+        return accepted.get();
+    }
+
+    /**
+     * @return number of command lines executed, including logins
+     */
+    public long getExecuted() {
+        return executed.get();
+    }
+
+    /**
+     * Stop the simulator, closing all connections
+     */
+    @Override
+    public void close() {
+        running = false;
+        if (selector == null) return;
+        selector.wakeup();
+        try {
+            thread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ----------------------------------------------------------- Selector loop
+    private void loop() {
+        try {
+            while (running) {
+                Wakeup next = wakeups.peek();
+                long timeout = next == null ? 0 : Math.max(1, (next.at - System.nanoTime()) / 1000000);
+                selector.select(timeout);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        Device device = (Device) key.attachment();
+                        if (key.isReadable()) device.read();
+                        if (key.isValid() && key.isWritable()) device.pump();
+                    }
+                }
+                long now = System.nanoTime();
+                while ((next = wakeups.peek()) != null && next.at <= now) {
+                    wakeups.poll();
+                    if (next.device.wakeAt == next.at) {
+                        next.device.wakeAt = 0;
+                        next.device.pump();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // Selector failed, nothing left to serve
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                try {
+                    key.channel().close();
+                } catch (IOException ignored) {
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = server.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            Device device = new Device(channel, "sim" + accepted.incrementAndGet());
+            device.key = channel.register(selector, SelectionKey.OP_READ, device);
+            connected.incrementAndGet();
+            device.greet();
+        }
+    }
+
+    /**
+     * Output of a command, the lines repeated a number of times.
+     */
+    private static final class Output {
+        final byte[][] lines;
+        final int repeat;
+
+        Output(byte[][] lines, int repeat) {
+            this.lines = lines;
+            this.repeat = repeat;
+        }
+
+        int size() {
+            return lines.length * repeat;
+        }
+    }
+
+    /**
+     * Time a device has something to do, after a delay or a throttle.
+     */
+    private static final class Wakeup implements Comparable<Wakeup> {
+        final long at;
+        final Device device;
+
+        Wakeup(long at, Device device) {
+            this.at = at;
+            this.device = device;
+        }
+
+        @Override
+        public int compareTo(Wakeup o) {
+            return Long.compare(at, o.at);
+        }
+    }
+
+    private enum State { USER, PASSWORD, EXEC, ENABLE, PAGED }
+
+    /**
+     * A connection, simulating one device. Only used by the selector thread.
+     */
+    private final class Device {
+        private final SocketChannel channel;
+        private final String hostname;
+        private SelectionKey key;
+        private State state = State.USER;
+        private boolean enabled = false;
+        private boolean config = false;
+        private boolean paging = true;
+        private boolean closing = false;
+        private int windowHeight = 0;
+        private String user;
+
+        // Input
+        private final StringBuilder line = new StringBuilder();
+        private final ArrayDeque<String> lines = new ArrayDeque<String>();
+        private int iacState = 0;
+        private int verb;
+        private final ByteBuffer sb = ByteBuffer.allocate(64);
+
+        // Output
+        private ByteBuffer out = ByteBuffer.allocate(4096);
+        private Output output;
+        private int outputLine;
+        private int pageLine;
+        private byte[] tail;
+        private long readyAt = 0;
+        private long sendAt = 0;
+        long wakeAt = 0;
+
+        Device(SocketChannel channel, String hostname) {
+            this.channel = channel;
+            this.hostname = hostname;
+        }
+
+        void greet() {
+            put(new byte[]{(byte) TelnetDecoder.IAC, (byte) TelnetDecoder.WILL, 1,
+                    (byte) TelnetDecoder.IAC, (byte) TelnetDecoder.WILL, 3});
+            if (naws) put(new byte[]{(byte) TelnetDecoder.IAC, (byte) TelnetDecoder.DO, (byte) TelnetDecoder.OPT_NAWS});
+            storm();
+            tail = bytes(vendor.banner + vendor.userPrompt);
+            pump();
+        }
+
+        // ------------------------------------------------------------- Input
+        void read() {
+            readBuffer.clear();
+            int n;
+            try {
+                n = channel.read(readBuffer);
+            } catch (IOException e) {
+                n = -1;
+            }
+            if (n == -1) {
+                close();
+                return;
+            }
+            for (int i = 0; i < n; i++) {
+                receive(readBuffer.get(i) & 0xFF);
+            }
+            pump();
+        }
+
+        private void receive(int b) {
+            switch (iacState) {
+                case 0:
+                    if (b == TelnetDecoder.IAC) {
+                        iacState = 1;
+                    } else {
+                        data(b);
+                    }
+                    return;
+                case 1: // IAC
+                    if (b == TelnetDecoder.IAC) {
+                        iacState = 0;
+                        data(b);
+                    } else if (b == TelnetDecoder.SB) {
+                        sb.clear();
+                        iacState = 3;
+                    } else if (b >= TelnetDecoder.WILL) {
+                        verb = b;
+                        iacState = 2;
+                    } else {
+                        iacState = 0;
+                    }
+                    return;
+                case 2: // IAC verb option, the client only answers what we asked for
+                    iacState = 0;
+                    return;
+                case 3: // SB data
+                    if (b == TelnetDecoder.IAC) {
+                        iacState = 4;
+                    } else if (sb.hasRemaining()) {
+                        sb.put((byte) b);
+                    }
+                    return;
+                case 4: // SB IAC
+                    if (b == TelnetDecoder.SE) {
+                        iacState = 0;
+                        subnegotiation();
+                    } else {
+                        iacState = 3;
+                        if (sb.hasRemaining()) sb.put((byte) b);
+                    }
+                    return;
+                default:
+                    iacState = 0;
+            }
+        }
+
+        private void subnegotiation() {
+            if (sb.position() == 5 && sb.get(0) == TelnetDecoder.OPT_NAWS) {
+                windowHeight = (sb.get(3) & 0xFF) << 8 | (sb.get(4) & 0xFF);
+            }
+        }
+
+        private void data(int b) {
+            if (state == State.PAGED && lines.isEmpty() && line.length() == 0) {
+                // The pager reacts to a single key
+                if (b == ' ') {
+                    page(pageLength());
+                } else if (b == '\r') {
+                    page(1);
+                } else if (b == 'q' || b == 3) {
+                    page(0);
+                    output = null;
+                }
+                return;
+            }
+            if (b == '\n') {
+                lines.add(line.toString());
+                line.setLength(0);
+            } else if (b != '\r' && b != 0) {
+                line.append((char) b);
+            }
+        }
+
+        private void page(int length) {
+            for (int i = 0; i < vendor.pager.length(); i++) put((byte) '\b');
+            for (int i = 0; i < vendor.pager.length(); i++) put((byte) ' ');
+            for (int i = 0; i < vendor.pager.length(); i++) put((byte) '\b');
+            pageLine = pageLength() - length;
+            state = State.EXEC;
+        }
+
+        // ------------------------------------------------------------ Commands
+        private void execute(String command) {
+            executed.incrementAndGet();
+            switch (state) {
+                case USER:
+                    echo(command);
+                    user = command;
+                    state = State.PASSWORD;
+                    reply(null, vendor.passwordPrompt);
+                    return;
+                case PASSWORD:
+                    put(CRLF);
+                    if (username.equals(user) && password.equals(command)) {
+                        state = State.EXEC;
+                        reply(null, prompt());
+                    } else {
+                        state = State.USER;
+                        reply(null, "% Authentication failed\r\n\r\n" + vendor.userPrompt);
+                    }
+                    return;
+                case ENABLE:
+                    put(CRLF);
+                    state = State.EXEC;
+                    if (enablePassword.equals(command)) {
+                        enabled = true;
+                        reply(null, prompt());
+                    } else {
+                        reply(null, "% Access denied\r\n\r\n" + prompt());
+                    }
+                    return;
+                default:
+            }
+            echo(command);
+            String cmd = command.trim();
+            Output result = commands.get(cmd);
+            if (result != null) {
+                reply(result, prompt());
+            } else if (cmd.isEmpty()) {
+                reply(null, prompt());
+            } else if (cmd.equals(vendor.pagingOff)) {
+                paging = false;
+                reply(null, prompt());
+            } else if (cmd.equals("enable") && vendor.enabledPrompt != null) {
+                if (enabled) {
+                    reply(null, prompt());
+                } else {
+                    state = State.ENABLE;
+                    reply(null, vendor.passwordPrompt);
+                }
+            } else if (cmd.equals("disable") && vendor.enabledPrompt != null) {
+                enabled = false;
+                reply(null, prompt());
+            } else if ((cmd.equals("configure") || cmd.equals("configure terminal")) && enabled) {
+                config = true;
+                reply(null, prompt());
+            } else if (config && (cmd.equals("end") || cmd.equals("exit"))) {
+                config = false;
+                reply(null, prompt());
+            } else if (cmd.equals("exit") || cmd.equals("quit") || cmd.equals("logout")) {
+                closing = true;
+            } else {
+                reply(null, "% Invalid input detected at '^' marker.\r\n\r\n" + prompt());
+            }
+        }
+
+        private String prompt() {
+            if (config) return hostname + "(config)#";
+            return hostname + (enabled ? vendor.enabledPrompt : vendor.execPrompt);
+        }
+
+        private void echo(String command) {
+            put(bytes(command));
+            put(CRLF);
+        }
+
+        private void reply(Output output, String prompt) {
+            this.output = output;
+            this.outputLine = 0;
+            this.pageLine = 0;
+            this.tail = bytes(prompt);
+        }
+
+        private int pageLength() {
+            if (!paging || pageLength == 0) return Integer.MAX_VALUE;
+            return windowHeight > 1 ? windowHeight - 1 : pageLength;
+        }
+
+        // ------------------------------------------------------------ Output
+        /**
+         * Produce and send output, as far as the socket, the throttle and
+         * the simulated round trip time allows.
+         */
+        void pump() {
+            if (!channel.isOpen()) return;
+            long now = System.nanoTime();
+            while (true) {
+                produce();
+                if (!send(now)) return;
+                if (out.position() > 0 || state == State.PAGED) break;
+                if (output != null || tail != null) continue;
+                if (closing) {
+                    close();
+                    return;
+                }
+                if (lines.isEmpty()) break;
+                // Next command, after the round trip time
+                if (readyAt == 0) readyAt = now + rtt;
+                if (now < readyAt) {
+                    wakeup(readyAt);
+                    break;
+                }
+                readyAt = 0;
+                storm();
+                execute(lines.poll());
+            }
+        }
+
+        private void produce() {
+            if (state == State.PAGED) return;
+            while (output != null && outputLine < output.size()) {
+                if (pageLine == pageLength()) {
+                    if (out.remaining() < vendor.pager.length()) return;
+                    put(bytes(vendor.pager));
+                    state = State.PAGED;
+                    return;
+                }
+                byte[] data = output.lines[outputLine % output.lines.length];
+                if (out.remaining() < data.length + 2) {
+                    if (out.position() > 0) return;
+                    data = Arrays.copyOf(data, out.remaining() - 2); // Truncate lines longer than the buffer
+                }
+                out.put(data).put(CRLF);
+                outputLine++;
+                pageLine++;
+            }
+            output = null;
+            if (tail != null && out.remaining() >= tail.length) {
+                out.put(tail);
+                tail = null;
+            }
+        }
+
+        /**
+         * Send the output buffer
+         * @return false if the connection failed
+         */
+        private boolean send(long now) {
+            if (out.position() == 0) {
+                if ((key.interestOps() & SelectionKey.OP_WRITE) != 0) key.interestOps(SelectionKey.OP_READ);
+                return true;
+            }
+            if (bandwidth > 0 && now < sendAt) {
+                wakeup(sendAt);
+                return true;
+            }
+            out.flip();
+            int limit = out.limit();
+            if (bandwidth > 0) out.limit(Math.min(limit, Math.max(1, bandwidth / 100))); // 10ms worth of data
+            int n;
+            try {
+                n = channel.write(out);
+            } catch (IOException e) {
+                close();
+                return false;
+            }
+            out.limit(limit);
+            out.compact();
+            if (bandwidth > 0) sendAt = now + n * 1000000000L / bandwidth;
+            if (out.position() > 0) {
+                if (bandwidth > 0 && n > 0) {
+                    wakeup(sendAt);
+                } else {
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                }
+            } else {
+                key.interestOps(SelectionKey.OP_READ);
+            }
+            return true;
+        }
+
+        private void storm() {
+            for (int i = 0; i < optionStorm; i++) {
+                int option = STORM_FIRST_OPTION + i % 64;
+                put(new byte[]{(byte) TelnetDecoder.IAC, (byte) (TelnetDecoder.WILL + i % 4), (byte) option});
+            }
+            if (optionStorm > 0) {
+                put(new byte[]{(byte) TelnetDecoder.IAC, (byte) TelnetDecoder.SB, (byte) STORM_FIRST_OPTION, 1,
+                        (byte) TelnetDecoder.IAC, (byte) TelnetDecoder.IAC, (byte) TelnetDecoder.IAC, (byte) TelnetDecoder.SE});
+            }
+        }
+
+        private void put(byte b) {
+            ensure(1);
+            out.put(b);
+        }
+
+        private void put(byte[] data) {
+            ensure(data.length);
+            out.put(data);
+        }
+
+        private void ensure(int n) {
+            if (out.remaining() >= n) return;
+            // Echoes and negotiations are put without waiting for room
+            ByteBuffer grown = ByteBuffer.allocate(out.position() + n + 4096);
+            out.flip();
+            out = grown.put(out);
+        }
+
+        private void wakeup(long at) {
+            if (wakeAt != 0 && wakeAt <= at) return;
+            wakeAt = at;
+            wakeups.add(new Wakeup(at, this));
+        }
+
+        private void close() {
+            if (!channel.isOpen()) return;
+            connected.decrementAndGet();
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.ISO_8859_1);
+    }
+}
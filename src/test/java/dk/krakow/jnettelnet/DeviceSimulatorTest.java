@@ -0,0 +1,113 @@
+package dk.krakow.jnettelnet;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testcases running the vendor sessions against the device simulator
+ */
+public class DeviceSimulatorTest {
+
+    private DeviceSimulator simulator;
+
+    @After
+    public void tearDown() {
+        if (simulator != null) simulator.close();
+    }
+
+    private CommandSession login(DeviceSimulator.Vendor vendor, int port) throws Exception {
+        CommandSession s;
+        switch (vendor) {
+            case CISCO: s = new CiscoSession("127.0.0.1", port); break;
+            case BROCADE: s = new BrocadeSession("127.0.0.1", port); break;
+            case OMNISTACK: s = new OmniStackSession("127.0.0.1", port); break;
+            default: s = new AlliedTelesisSession("127.0.0.1", port);
+        }
+        s.connect();
+        s.login("admin", "secret");
+        return s;
+    }
+
+    @Test
+    public void all_vendors_login_and_run_commands() throws Exception {
+        for (DeviceSimulator.Vendor vendor : DeviceSimulator.Vendor.values()) {
+            simulator = new DeviceSimulator(vendor);
+            simulator.addCommand("show version", "Version 1.0\nUptime 1 week");
+            CommandSession s = login(vendor, simulator.start());
+            if (vendor != DeviceSimulator.Vendor.ALLIED_TELESIS) s.enable("enable");
+            assertEquals(vendor.toString(), Arrays.asList("Version 1.0", "Uptime 1 week"), Arrays.asList(s.cmd("show version")));
+            s.close();
+            simulator.close();
+        }
+    }
+
+    @Test(expected = SessionException.class)
+    public void wrong_password_fails() throws Exception {
+        simulator = new DeviceSimulator(DeviceSimulator.Vendor.CISCO);
+        simulator.setCredentials("admin", "other", "enable");
+        login(DeviceSimulator.Vendor.CISCO, simulator.start());
+    }
+
+    @Test
+    public void pages_and_option_storms_are_handled() throws Exception {
+        simulator = new DeviceSimulator(DeviceSimulator.Vendor.ALLIED_TELESIS);
+        simulator.setNaws(false);
+        simulator.setPageLength(5);
+        simulator.setOptionStorm(100);
+        simulator.addCommand("show log", "a\nb\nc", 4);
+        CommandSession s = login(DeviceSimulator.Vendor.ALLIED_TELESIS, simulator.start());
+        String[] output = s.cmd("show log");
+        assertEquals(12, output.length);
+        assertEquals("c", output[11]);
+        s.close();
+    }
+
+    @Test
+    public void rtt_and_bandwidth_delay_the_output() throws Exception {
+        simulator = new DeviceSimulator(DeviceSimulator.Vendor.CISCO);
+        simulator.setRtt(50);
+        simulator.setBandwidth(50000);
+        simulator.addCommand("show running", "0123456789012345678901234567890123456789012345678", 200);
+        CommandSession s = login(DeviceSimulator.Vendor.CISCO, simulator.start());
+        long start = System.nanoTime();
+        assertEquals(200, s.cmd("show running").length);
+        long elapsed = (System.nanoTime() - start) / 1000000;
+        assertTrue("elapsed " + elapsed, elapsed >= 50 + 150);
+        s.close();
+    }
+
+    @Test
+    public void many_concurrent_devices() throws Exception {
+        simulator = new DeviceSimulator(DeviceSimulator.Vendor.CISCO);
+        simulator.addCommand("show running", "interface GigabitEthernet0/1\n description uplink", 10);
+        int port = simulator.start();
+        SessionMultiplexer mux = new SessionMultiplexer(2);
+        try {
+            List<Future<String[]>> results = new ArrayList<Future<String[]>>();
+            List<Future<Void>> closed = new ArrayList<Future<Void>>();
+            for (int i = 0; i < 500; i++) {
+                NioSession ns = mux.open("127.0.0.1", port);
+                ns.connect();
+                ns.login("admin", "secret");
+                results.add(ns.cmd("show running"));
+                closed.add(ns.close());
+            }
+            for (Future<String[]> result : results) {
+                assertEquals(20, result.get().length);
+            }
+            for (Future<Void> close : closed) {
+                close.get();
+            }
+        } finally {
+            mux.close();
+        }
+        assertEquals(500, simulator.getAccepted());
+    }
+}
@@ -0,0 +1,157 @@
+package dk.krakow.jnettelnet;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testcases running a fleet of simulated devices
+ */
+public class FleetRunnerTest {
+
+    private final List<DeviceSimulator> simulators = new ArrayList<DeviceSimulator>();
+    /** Hosts are IP literals, so they are grouped into subnets, but connect to a simulator */
+    private final Map<String, Integer> ports = new HashMap<String, Integer>();
+    private final Credentials credentials = new Credentials("admin", "secret", null);
+
+    @After
+    public void tearDown() {
+        for (DeviceSimulator simulator : simulators) {
+            simulator.close();
+        }
+    }
+
+    private DeviceSimulator simulator(int rtt, String... hosts) throws Exception {
+        DeviceSimulator simulator = new DeviceSimulator(DeviceSimulator.Vendor.CISCO);
+        simulator.setRtt(rtt);
+        simulator.addCommand("show version", "Version 1.0");
+        int port = simulator.start();
+        simulators.add(simulator);
+        for (String host : hosts) {
+            ports.put(host, port);
+        }
+        return simulator;
+    }
+
+    private SessionFactory factory() {
+        return new SessionFactory() {
+            @Override
+            public CommandSession create(String hostname, Integer port) {
+                return new CiscoSession("127.0.0.1", ports.get(hostname));
+            }
+        };
+    }
+
+    private static List<FleetResult> all(Iterator<FleetResult> it) {
+        List<FleetResult> results = new ArrayList<FleetResult>();
+        while (it.hasNext()) {
+            results.add(it.next());
+        }
+        return results;
+    }
+
+    @Test
+    public void results_are_returned_in_order_of_completion() throws Exception {
+        simulator(200, "10.0.0.1");
+        simulator(0, "10.0.1.1");
+        FleetRunner runner = new FleetRunner(factory());
+        List<FleetResult> results = all(runner.run(Arrays.asList("10.0.0.1", "10.0.1.1"), credentials, "show version"));
+        runner.shutdown();
+        assertEquals("10.0.1.1", results.get(0).getHostname());
+        assertEquals("10.0.0.1", results.get(1).getHostname());
+        for (FleetResult r : results) {
+            assertTrue(r.isSuccess());
+            assertEquals("Version 1.0", r.getOutput("show version")[0]);
+        }
+    }
+
+    @Test
+    public void busy_subnet_does_not_starve_others() throws Exception {
+        DeviceSimulator busy = simulator(50, "10.0.0.1", "10.0.0.2", "10.0.0.3", "10.0.0.4");
+        simulator(0, "10.0.1.1");
+        // Sessions to the busy subnet open at the same time, counted by the client
+        final AtomicInteger open = new AtomicInteger();
+        final AtomicInteger maxOpen = new AtomicInteger();
+        FleetRunner runner = new FleetRunner(new SessionFactory() {
+            @Override
+            public CommandSession create(final String hostname, Integer port) {
+                final boolean counted = hostname.startsWith("10.0.0.");
+                return new CiscoSession("127.0.0.1", ports.get(hostname)) {
+                    @Override
+                    public void connect() throws SessionException {
+                        if (counted) {
+                            int n = open.incrementAndGet();
+                            int max;
+                            while (n > (max = maxOpen.get()) && !maxOpen.compareAndSet(max, n)) {
+                            }
+                        }
+                        super.connect();
+                    }
+
+                    @Override
+                    public void close() {
+                        super.close();
+                        if (counted) open.decrementAndGet();
+                    }
+                };
+            }
+        });
+        runner.setVirtualThreads(false);
+        runner.setMaxConcurrency(2);
+        runner.setMaxPerSubnet(1, 24);
+
+        List<FleetResult> results = all(runner.run(
+                Arrays.asList("10.0.0.1", "10.0.0.2", "10.0.0.3", "10.0.0.4", "10.0.1.1"), credentials, "show version"));
+        runner.shutdown();
+
+        assertEquals(5, results.size());
+        assertEquals(1, maxOpen.get());
+        assertEquals(4, busy.getAccepted());
+        // The host of the idle subnet is not queued behind the busy one
+        assertTrue(results.get(0).getHostname().equals("10.0.1.1") || results.get(1).getHostname().equals("10.0.1.1"));
+    }
+
+    @Test
+    public void pooled_sessions_are_reused() throws Exception {
+        DeviceSimulator simulator = simulator(0, "10.0.0.1", "10.0.0.2");
+        SessionPool pool = new SessionPool(factory());
+        FleetRunner runner = new FleetRunner(factory());
+        runner.setSessionPool(pool);
+        for (int i = 0; i < 3; i++) {
+            for (FleetResult r : all(runner.run(Arrays.asList("10.0.0.1", "10.0.0.2"), credentials, "show version"))) {
+                assertTrue(r.isSuccess());
+            }
+        }
+        runner.shutdown();
+        pool.close();
+        assertEquals(2, simulator.getAccepted());
+    }
+
+    @Test
+    public void failures_are_reported_per_host() throws Exception {
+        DeviceSimulator simulator = simulator(0, "10.0.0.1");
+        simulator.setCredentials("admin", "other", null);
+        ports.put("10.0.0.2", 1); // Nothing listening
+        SessionPool pool = new SessionPool(factory());
+        FleetRunner runner = new FleetRunner(factory());
+        runner.setSessionPool(pool);
+        List<FleetResult> results = all(runner.run(Arrays.asList("10.0.0.1", "10.0.0.2"), credentials, "show version"));
+        runner.shutdown();
+        pool.close();
+        assertEquals(2, results.size());
+        for (FleetResult r : results) {
+            assertFalse(r.isSuccess());
+            assertTrue(r.getException() instanceof SessionException);
+            assertNull(r.getOutput("show version"));
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package dk.krakow.jnettelnet;
+
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testcases for decoding the text of a line
+ */
+public class LineBufferTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Test
+    public void ascii_is_not_decoded() {
+        LineBuffer line = line(UTF8, "description uplink\r\n".getBytes(UTF8));
+        assertSame(line, line.text());
+        assertEquals("description uplink", line.toLine());
+    }
+
+    @Test
+    public void utf8_is_decoded() {
+        LineBuffer line = line(UTF8, "description Køge Ø\r\n".getBytes(UTF8));
+        assertEquals("description Køge Ø\r\n", line.text().toString());
+        assertEquals("description Køge Ø", line.toLine());
+        assertEquals(22, line.length()); // raw bytes, for prompt matching
+    }
+
+    @Test
+    public void latin1_by_default() {
+        LineBuffer line = line(null, "Køge".getBytes(LineBuffer.LATIN1));
+        assertSame(line, line.text());
+        assertEquals("Køge", line.toLine());
+    }
+
+    private static LineBuffer line(Charset charset, byte[] bytes) {
+        LineBuffer line = new LineBuffer(4);
+        if (charset != null) line.setCharset(charset);
+        for (byte b : bytes) {
+            line.append(b & 0xFF);
+        }
+        return line;
+    }
+}
@@ -0,0 +1,64 @@
+package dk.krakow.jnettelnet;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testcases for the latency histogram and the metrics collected from a session
+ */
+public class MetricsRegistryTest {
+
+    @Test
+    public void histogram_percentiles_are_within_precision() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 1; i <= 10000; i++) {
+            h.record(i * 1000L);
+        }
+        assertEquals(10000, h.getCount());
+        assertEquals(10000000L, h.getMax());
+        assertEquals(5000500.0, h.getMean(), 0.1);
+        assertEquals(5000000.0, h.getValueAtPercentile(50), 5000000 * 0.04);
+        assertEquals(9900000.0, h.getValueAtPercentile(99), 9900000 * 0.04);
+        assertEquals(10000000L, h.getValueAtPercentile(100));
+        for (long v : new long[]{0, 63, 64, 65, 1000, 123456789, Long.MAX_VALUE}) {
+            int i = LatencyHistogram.index(v);
+            assertTrue(v + " in bucket " + i, LatencyHistogram.highest(i) >= v);
+            assertTrue(v + " in bucket " + i, i == 0 || LatencyHistogram.highest(i - 1) < v);
+        }
+    }
+
+    @Test
+    public void session_reports_to_registry() throws Exception {
+        DeviceSimulator simulator = new DeviceSimulator(DeviceSimulator.Vendor.CISCO);
+        simulator.addCommand("show version", "Version 1.0\nUptime 1 week");
+        int port = simulator.start();
+        try {
+            MetricsRegistry metrics = new MetricsRegistry();
+            CiscoSession s = new CiscoSession("127.0.0.1", port);
+            s.setMetrics(metrics);
+            s.connect();
+            s.login("admin", "secret");
+            s.cmd("show version");
+            s.cmd("show version");
+            s.close();
+            s.connect();
+            s.close();
+
+            MetricsRegistry.Stats host = metrics.getHost("127.0.0.1");
+            assertEquals(2, host.getConnects());
+            assertEquals(1, host.getReconnects());
+            assertEquals(1, host.getLogins());
+            assertEquals(2, host.getCommands()); // the login is not a command
+            assertEquals(2, metrics.getCommandLatency().getCount());
+            assertTrue(host.getLines() >= 6);
+            assertTrue(host.getBytesIn() > 0);
+            assertTrue(host.getBytesOut() > 0);
+            assertTrue(host.getOptions() > 0); // NAWS
+            assertEquals(0, host.getTimeouts());
+            assertEquals(host.getBytesIn(), metrics.getTotal().getBytesIn());
+        } finally {
+            simulator.close();
+        }
+    }
+}
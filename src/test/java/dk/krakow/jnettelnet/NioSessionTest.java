@@ -0,0 +1,90 @@
+package dk.krakow.jnettelnet;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testcases for sessions run by a SessionMultiplexer
+ */
+public class NioSessionTest {
+
+    private SessionMultiplexer mux;
+    private DeviceSimulator simulator;
+
+    @After
+    public void tearDown() {
+        if (mux != null) mux.close();
+        if (simulator != null) simulator.close();
+    }
+
+    private static Throwable failure(SessionFuture<?> future) throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+        } catch (ExecutionException ex) {
+            return ex.getCause();
+        }
+        fail("Future did not fail");
+        return null;
+    }
+
+    @Test
+    public void login_cmd_and_close() throws Exception {
+        simulator = new DeviceSimulator(DeviceSimulator.Vendor.CISCO);
+        simulator.addCommand("show version", "Version 1.0\nUptime 1 week");
+        mux = new SessionMultiplexer(1);
+        NioSession s = mux.open("127.0.0.1", simulator.start());
+        s.connect();
+        SessionFuture<Void> login = s.login("admin", "secret");
+        SessionFuture<Void> enable = s.enable("enable");
+        SessionFuture<String[]> output = s.cmd("show version");
+        SessionFuture<Void> close = s.close();
+        login.get(5, TimeUnit.SECONDS);
+        assertTrue(s.isAuthenticated());
+        enable.get(5, TimeUnit.SECONDS);
+        assertTrue(s.isEnabled());
+        assertEquals(Arrays.asList("Version 1.0", "Uptime 1 week"), Arrays.asList(output.get(5, TimeUnit.SECONDS)));
+        close.get(5, TimeUnit.SECONDS);
+        assertTrue(failure(s.cmd("show version")) instanceof SessionException);
+    }
+
+    @Test
+    public void silent_host_times_out() throws Exception {
+        ServerSocket server = new ServerSocket(0);
+        try {
+            mux = new SessionMultiplexer(1);
+            NioSession s = mux.open("127.0.0.1", server.getLocalPort());
+            s.setTimeout(200);
+            s.connect();
+            SessionFuture<Void> login = s.login("admin", "secret");
+            SessionFuture<String[]> output = s.cmd("show version");
+            Socket accepted = server.accept();
+            long start = System.nanoTime();
+            Throwable cause = failure(login);
+            assertTrue(cause instanceof SessionException);
+            assertEquals("Did not find Prompt in read data", cause.getMessage());
+            assertTrue((System.nanoTime() - start) / 1000000 >= 100);
+            // Queued operations fail along with the one timing out
+            assertTrue(failure(output) instanceof SessionException);
+            accepted.close();
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void operations_fail_once_closed() throws Exception {
+        mux = new SessionMultiplexer(1);
+        NioSession s = mux.open("127.0.0.1", 23);
+        mux.close();
+        Throwable cause = failure(s.cmd("show version"));
+        assertEquals("Multiplexer closed", cause.getMessage());
+    }
+}
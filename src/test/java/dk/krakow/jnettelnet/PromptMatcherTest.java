@@ -0,0 +1,66 @@
+package dk.krakow.jnettelnet;
+
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testcases for the incremental prompt detection
+ */
+public class PromptMatcherTest {
+
+    private static final Pattern CISCO = Pattern.compile("([Uu]sername:|[Uu]ser:|[Pp]assword:|\\w+[>#]|\\w+\\(config\\)#|\\w+\\(config-\\w+\\)#)\\s?$");
+    private static final Pattern ALLIED = Pattern.compile("(Login:|Password:|-->)$");
+    private static final Pattern DEFAULT = Pattern.compile(".*[#\\$:]$");
+
+    @Test
+    public void end_chars_of_vendor_patterns() {
+        assertEndChars(CISCO, "#>: \t\r\n", "aZ0-]");
+        assertEndChars(ALLIED, ":>", "-# a");
+        assertEndChars(DEFAULT, "#$:", "a >");
+        assertEndChars(Pattern.compile("(?:[a-c]+|x\\d)$"), "abc0123456789", "dx");
+        assertEndChars(Pattern.compile("login:\\s*$"), ": ", "n");
+    }
+
+    @Test
+    public void unknown_end_chars() {
+        assertNull(PromptMatcher.endChars(Pattern.compile("prompt.$")));
+        assertNull(PromptMatcher.endChars(Pattern.compile("prompt[^a]$")));
+        assertNull(PromptMatcher.endChars(Pattern.compile("(?i)login:$")));
+        assertNull(PromptMatcher.endChars(Pattern.compile("(login:|)$")));
+        assertNull(PromptMatcher.endChars(Pattern.compile("login:$", Pattern.CASE_INSENSITIVE)));
+    }
+
+    @Test
+    public void finds_prompt_at_tail_only() {
+        StringBuilder line = new StringBuilder();
+        PromptMatcher pm = new PromptMatcher(CISCO, line);
+        for (char c : "router#".toCharArray()) {
+            assertFalse(pm.find());
+            line.append(c);
+        }
+        assertTrue(pm.find());
+        line.append("sh");
+        assertFalse(pm.find());
+        line.setLength(0);
+        line.append("core-sw(config-if)# ");
+        assertTrue(pm.find());
+    }
+
+    @Test
+    public void long_lines_only_examine_window() {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < 10000; i++) line.append('x');
+        line.append("Password:");
+        assertTrue(new PromptMatcher(CISCO, line, 16).find());
+        assertTrue(new PromptMatcher(DEFAULT, line, 16).find());
+    }
+
+    private static void assertEndChars(Pattern p, String can, String cannot) {
+        PromptMatcher pm = new PromptMatcher(p, "");
+        for (char c : can.toCharArray()) assertTrue(p + " should end with '" + c + "'", pm.canEndWith(c));
+        for (char c : cannot.toCharArray()) assertFalse(p + " should not end with '" + c + "'", pm.canEndWith(c));
+    }
+}
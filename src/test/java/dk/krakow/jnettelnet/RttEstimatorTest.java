@@ -0,0 +1,37 @@
+package dk.krakow.jnettelnet;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testcases for the adaptive timeout estimate
+ */
+public class RttEstimatorTest {
+
+    private static final long MS = 1000000L;
+
+    @Test
+    public void ceiling_until_enough_samples() {
+        RttEstimator rtt = new RttEstimator();
+        for (int i = 1; i < RttEstimator.MIN_SAMPLES; i++) {
+            rtt.sample(10 * MS);
+            assertEquals(5000, rtt.timeout(100, 5000));
+        }
+        rtt.sample(10 * MS);
+        assertTrue(rtt.timeout(100, 5000) < 5000);
+    }
+
+    @Test
+    public void steady_host_gets_floor_uneven_host_more() {
+        RttEstimator steady = new RttEstimator();
+        RttEstimator uneven = new RttEstimator();
+        for (int i = 0; i < 50; i++) {
+            steady.sample(20 * MS);
+            uneven.sample((i % 2 == 0 ? 20 : 600) * MS);
+        }
+        assertEquals(100, steady.timeout(100, 5000));
+        int t = uneven.timeout(100, 5000);
+        assertTrue("timeout " + t, t > 600 && t < 5000);
+    }
+}
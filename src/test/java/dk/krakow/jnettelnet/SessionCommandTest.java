@@ -0,0 +1,99 @@
+package dk.krakow.jnettelnet;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testcases for streaming, raw and batched command execution
+ */
+public class SessionCommandTest {
+
+    private DeviceSimulator simulator;
+
+    @After
+    public void tearDown() {
+        if (simulator != null) simulator.close();
+    }
+
+    @Test
+    public void output_is_streamed_without_echo() throws Exception {
+        CiscoSession s = new CiscoSession("localhost", 23);
+        s.input = new ChunkedInputStream("show ver\r\nline 1\r\nli", "ne 2\r\nrouter#");
+        s.output = new ByteArrayOutputStream();
+
+        final List<String> lines = new ArrayList<String>();
+        String prompt = s.cmd("show ver", new LineHandler() {
+            @Override
+            public void onLine(CharSequence line) {
+                lines.add(line.toString());
+            }
+        });
+        assertEquals(Arrays.asList("line 1", "line 2"), lines);
+        assertEquals("router#", prompt);
+    }
+
+    @Test
+    public void raw_output_is_written_to_sink() throws Exception {
+        CiscoSession s = new CiscoSession("localhost", 23);
+        s.input = new ChunkedInputStream("show run\r\n!\r\nhostname ro", "uter\r\n\r\nrouter#");
+        s.output = new ByteArrayOutputStream();
+
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        long written = s.cmdTo("show run", Channels.newChannel(sink));
+        assertEquals("!\r\nhostname router\r\n\r\n", sink.toString("ISO-8859-1"));
+        assertEquals(sink.size(), written);
+    }
+
+    @Test
+    public void batch_output_is_split_by_prompt() throws Exception {
+        ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        CiscoSession s = new CiscoSession("localhost", 23);
+        s.input = new ChunkedInputStream(
+                "show a\r\na1\r\na2\r\nrou",
+                "ter#show b\r\nrouter#sh",
+                "ow c\r\nc1\r\nrouter#");
+        s.output = sent;
+
+        List<String[]> results = s.cmdBatch(Arrays.asList("show a", "show b", "show c"), 2);
+        assertEquals(3, results.size());
+        assertEquals(Arrays.asList("a1", "a2"), Arrays.asList(results.get(0)));
+        assertEquals(0, results.get(1).length);
+        assertEquals(Arrays.asList("c1"), Arrays.asList(results.get(2)));
+        assertEquals("show a\r\nshow b\r\nshow c\r\n", sent.toString("ISO-8859-1"));
+    }
+
+    @Test
+    public void batch_is_pipelined_to_device() throws Exception {
+        simulator = new DeviceSimulator(DeviceSimulator.Vendor.CISCO);
+        simulator.setRtt(20);
+        simulator.addCommand("show a", "a1\na2");
+        simulator.addCommand("show b", "b1");
+        simulator.addCommand("show c", "c1\nc2\nc3");
+        simulator.addCommand("show d", "d1");
+        CiscoSession s = new CiscoSession("127.0.0.1", simulator.start());
+        MetricsRegistry metrics = new MetricsRegistry();
+        s.setMetrics(metrics);
+        s.connect();
+        s.login("admin", "secret");
+        long commands = metrics.getTotal().getCommands();
+
+        List<String[]> results = s.cmdBatch(Arrays.asList("show a", "show b", "show c", "show d"), 2);
+        assertEquals(Arrays.asList("a1", "a2"), Arrays.asList(results.get(0)));
+        assertEquals(Arrays.asList("b1"), Arrays.asList(results.get(1)));
+        assertEquals(Arrays.asList("c1", "c2", "c3"), Arrays.asList(results.get(2)));
+        assertEquals(Arrays.asList("d1"), Arrays.asList(results.get(3)));
+        assertEquals(4, metrics.getTotal().getCommands() - commands);
+
+        // The session is back in step with the device
+        assertEquals(Arrays.asList("b1"), Arrays.asList(s.cmd("show b")));
+        s.close();
+    }
+}
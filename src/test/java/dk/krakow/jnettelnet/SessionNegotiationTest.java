@@ -0,0 +1,125 @@
+package dk.krakow.jnettelnet;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testcases for the Terminal size and type negotiated by a session
+ */
+public class SessionNegotiationTest {
+
+    private static final String IAC = "\u00ff";
+    private static final String SE = "\u00f0";
+    private static final String SB = "\u00fa";
+    private static final String WILL = "\u00fb";
+    private static final String DO = "\u00fd";
+    private static final String DONT = "\u00fe";
+    private static final String TTYPE = "\u0018";
+    private static final String NAWS = "\u001f";
+
+    private ServerSocket server;
+
+    @After
+    public void tearDown() throws IOException {
+        if (server != null) server.close();
+    }
+
+    @Test
+    public void window_size_and_type_are_sent_and_paging_is_left_on() throws Exception {
+        Host host = new Host(IAC + DO + NAWS + IAC + DO + TTYPE + IAC + SB + TTYPE + "\u0001" + IAC + SE);
+        CiscoSession s = new CiscoSession("127.0.0.1", host.port);
+        s.setTerminalType("VT100");
+        s.connect();
+        s.login("admin", "secret");
+        s.close();
+
+        String sent = host.received();
+        assertTrue(sent.contains(IAC + WILL + NAWS));
+        assertTrue(sent.contains(IAC + WILL + TTYPE));
+        // 512 x 65535, with the 0xff bytes escaped
+        assertTrue(sent.contains(IAC + SB + NAWS + "\u0002\u0000" + IAC + IAC + IAC + IAC + IAC + SE));
+        assertTrue(sent.contains(IAC + SB + TTYPE + "\u0000VT100" + IAC + SE));
+        assertFalse(sent.contains("terminal length 0"));
+    }
+
+    @Test
+    public void paging_is_turned_off_when_window_size_is_refused() throws Exception {
+        Host host = new Host(IAC + DONT + NAWS);
+        CiscoSession s = new CiscoSession("127.0.0.1", host.port);
+        s.connect();
+        s.login("admin", "secret");
+        s.close();
+
+        String sent = host.received();
+        assertFalse(sent.contains(IAC + SB + NAWS));
+        assertTrue(sent.contains("terminal length 0\r\n"));
+    }
+
+    /**
+     * Host sending some options in front of the banner, and answering a
+     * Cisco login. Everything received is recorded.
+     */
+    private class Host extends Thread {
+        final int port;
+        private final String options;
+        private final ByteArrayOutputStream received = new ByteArrayOutputStream();
+
+        Host(String options) throws IOException {
+            this.options = options;
+            server = new ServerSocket(0);
+            port = server.getLocalPort();
+            start();
+        }
+
+        @Override
+        public void run() {
+            try {
+                Socket socket = server.accept();
+                try {
+                    InputStream in = socket.getInputStream();
+                    OutputStream out = socket.getOutputStream();
+                    out.write(bytes(options + "\r\nUsername: "));
+                    StringBuilder line = new StringBuilder();
+                    int b;
+                    while ((b = in.read()) != -1) {
+                        received.write(b);
+                        if (b != '\n') {
+                            line.append((char) b);
+                            continue;
+                        }
+                        String command = line.toString().trim();
+                        line.setLength(0);
+                        if (command.endsWith("admin")) {
+                            out.write(bytes("admin\r\nPassword: "));
+                        } else if (command.endsWith("secret")) {
+                            out.write(bytes("\r\nrouter#"));
+                        } else {
+                            out.write(bytes(command + "\r\nrouter#"));
+                        }
+                    }
+                } finally {
+                    socket.close();
+                }
+            } catch (IOException ignored) {
+            }
+        }
+
+        String received() throws Exception {
+            join(5000);
+            return received.toString("ISO-8859-1");
+        }
+
+        private byte[] bytes(String s) throws IOException {
+            return s.getBytes("ISO-8859-1");
+        }
+    }
+}
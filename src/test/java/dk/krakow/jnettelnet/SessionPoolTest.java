@@ -0,0 +1,109 @@
+package dk.krakow.jnettelnet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testcases for borrowing, probing and evicting pooled sessions
+ */
+public class SessionPoolTest {
+
+    private DeviceSimulator simulator;
+    private SessionPool pool;
+    private int port;
+    private final Credentials credentials = new Credentials("admin", "secret", "enable");
+
+    @Before
+    public void setUp() throws Exception {
+        simulator = new DeviceSimulator(DeviceSimulator.Vendor.CISCO);
+        simulator.addCommand("show version", "Version 1.0");
+        port = simulator.start();
+        pool = new SessionPool(CiscoSession.class);
+    }
+
+    @After
+    public void tearDown() {
+        pool.close();
+        simulator.close();
+    }
+
+    private void awaitConnected(int connected) throws InterruptedException {
+        long end = System.currentTimeMillis() + 5000;
+        while (simulator.getConnected() != connected && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        assertEquals(connected, simulator.getConnected());
+    }
+
+    @Test
+    public void probe_checks_the_session() throws Exception {
+        CiscoSession s = new CiscoSession("127.0.0.1", port);
+        s.connect();
+        s.login("admin", "secret");
+        assertTrue(s.probe());
+        assertEquals("Version 1.0", s.cmd("show version")[0]);
+        s.close();
+        assertFalse(s.probe());
+    }
+
+    @Test
+    public void released_session_is_reused() throws Exception {
+        CommandSession s = pool.borrow("127.0.0.1", port, credentials);
+        assertTrue(((CiscoSession) s).isEnabled());
+        pool.release(s);
+        CommandSession again = pool.borrow("127.0.0.1", port, credentials);
+        assertSame(s, again);
+        // Other credentials get a session of their own
+        CommandSession other = pool.borrow("127.0.0.1", port, new Credentials("admin", "secret", null));
+        assertNotSame(s, other);
+        pool.release(other);
+        pool.release(again);
+        assertEquals(2, simulator.getAccepted());
+        try {
+            pool.release(again);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void invalidated_and_dead_sessions_are_replaced() throws Exception {
+        CommandSession s = pool.borrow("127.0.0.1", port, credentials);
+        pool.invalidate(s);
+        awaitConnected(0);
+        CommandSession dead = pool.borrow("127.0.0.1", port, credentials);
+        assertNotSame(s, dead);
+        dead.close();
+        pool.release(dead);
+        // The idle session fails its probe
+        CommandSession fresh = pool.borrow("127.0.0.1", port, credentials);
+        assertNotSame(dead, fresh);
+        assertEquals("Version 1.0", fresh.cmd("show version")[0]);
+        pool.release(fresh);
+        assertEquals(3, simulator.getAccepted());
+    }
+
+    @Test
+    public void idle_sessions_are_bounded_and_evicted() throws Exception {
+        pool.setMaxIdlePerKey(2);
+        pool.setMaxIdle(100);
+        CommandSession a = pool.borrow("127.0.0.1", port, credentials);
+        CommandSession b = pool.borrow("127.0.0.1", port, credentials);
+        CommandSession c = pool.borrow("127.0.0.1", port, credentials);
+        pool.release(a);
+        pool.release(b);
+        pool.release(c);
+        awaitConnected(2);
+        Thread.sleep(150);
+        pool.evictIdle();
+        awaitConnected(0);
+        CommandSession d = pool.borrow("127.0.0.1", port, credentials);
+        assertNotSame(a, d);
+        assertNotSame(b, d);
+        pool.release(d);
+        assertEquals(4, simulator.getAccepted());
+    }
+}
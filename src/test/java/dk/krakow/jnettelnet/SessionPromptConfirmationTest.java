@@ -0,0 +1,78 @@
+package dk.krakow.jnettelnet;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testcases for confirming prompts matched by the broad default pattern
+ */
+public class SessionPromptConfirmationTest {
+
+    private static final String[] OUTPUT = {
+            "show interface\r\n  Description:",
+            " uplink\r\n  Media type: copper\r\nrouter#"
+    };
+
+    @Test
+    public void unconfirmed_prompt_truncates_output() throws Exception {
+        Session s = session(OUTPUT);
+        assertEquals(Arrays.asList("show interface"), Arrays.asList(s.read()));
+    }
+
+    @Test
+    public void confirmed_prompt_reads_all_output() throws Exception {
+        Session s = session(OUTPUT);
+        s.setPromptConfirmation(true);
+        assertEquals(Arrays.asList("show interface", "  Description: uplink", "  Media type: copper"), Arrays.asList(s.read()));
+    }
+
+    @Test
+    public void confirmation_waits_out_a_pause_in_the_output() throws Exception {
+        final ServerSocket server = new ServerSocket(0);
+        Thread host = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Socket socket = server.accept();
+                    OutputStream out = socket.getOutputStream();
+                    out.write("\r\n".getBytes("ISO-8859-1"));
+                    out.write(OUTPUT[0].getBytes("ISO-8859-1"));
+                    out.flush();
+                    Thread.sleep(50);
+                    out.write(OUTPUT[1].getBytes("ISO-8859-1"));
+                    out.flush();
+                    // Keep the connection open, the prompt is confirmed by silence
+                    socket.getInputStream().read();
+                    socket.close();
+                } catch (Exception ignored) {
+                }
+            }
+        };
+        host.start();
+        try {
+            Session s = new Session("127.0.0.1", server.getLocalPort());
+            s.setPromptConfirmation(true);
+            s.setQuietPeriod(200);
+            s.connect();
+            assertEquals(Arrays.asList("show interface", "  Description: uplink", "  Media type: copper"), Arrays.asList(s.read()));
+            s.close();
+            host.join(5000);
+        } finally {
+            server.close();
+        }
+    }
+
+    private static Session session(String... chunks) {
+        Session s = new Session("localhost");
+        s.input = new ChunkedInputStream(chunks);
+        s.output = new ByteArrayOutputStream();
+        return s;
+    }
+}
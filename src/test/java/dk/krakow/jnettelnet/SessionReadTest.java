@@ -0,0 +1,52 @@
+package dk.krakow.jnettelnet;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testcases for reading lines and prompts from data arriving in chunks
+ */
+public class SessionReadTest {
+
+    private static final String IAC = "\u00ff";
+
+    @Test
+    public void prompt_split_across_reads() throws Exception {
+        Session s = session("show\r\noutput\r\nrou", "ter", "#");
+        Session.ReadData read = s._read2prompt();
+        assertEquals(Arrays.asList("show", "output"), read);
+        assertEquals("router#", read.getPrompt());
+    }
+
+    @Test
+    public void cr_and_lf_in_separate_reads() throws Exception {
+        Session s = session("line 1\r", "\nline 2\r", "\n\r", "\nrouter#");
+        Session.ReadData read = s._read2prompt();
+        assertEquals(Arrays.asList("line 1", "line 2", ""), read);
+        assertEquals("router#", read.getPrompt());
+    }
+
+    @Test
+    public void line_spans_reads() throws Exception {
+        Session s = session("interface Giga", "bitEthernet0/1 descr", "iption uplink\r\nrouter#");
+        assertEquals(Arrays.asList("interface GigabitEthernet0/1 description uplink"), s._read2prompt());
+    }
+
+    @Test
+    public void iac_at_read_boundary() throws Exception {
+        // A NOP and a WILL ECHO, each split after the IAC, and an escaped 0xff split between its IACs
+        Session s = session("line" + IAC, "\u00f1 1\r\nline 2" + IAC, "\u00fb\u0001\r\n" + IAC, IAC + "\r\nrouter#");
+        assertEquals(Arrays.asList("line 1", "line 2", "\u00ff"), s._read2prompt());
+    }
+
+    private static Session session(String... chunks) {
+        Session s = new Session("localhost");
+        s.input = new ChunkedInputStream(chunks);
+        s.output = new ByteArrayOutputStream();
+        return s;
+    }
+}
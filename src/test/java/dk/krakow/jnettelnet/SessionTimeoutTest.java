@@ -0,0 +1,91 @@
+package dk.krakow.jnettelnet;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testcases for command deadlines and adaptive timeouts
+ */
+public class SessionTimeoutTest {
+
+    private DeviceSimulator simulator;
+
+    @After
+    public void tearDown() {
+        if (simulator != null) simulator.close();
+    }
+
+    private CiscoSession login() throws Exception {
+        CiscoSession s = new CiscoSession("127.0.0.1", simulator.start());
+        s.connect();
+        s.login("admin", "secret");
+        return s;
+    }
+
+    @Test
+    public void trickling_output_fails_at_the_deadline() throws Exception {
+        simulator = new DeviceSimulator(DeviceSimulator.Vendor.CISCO);
+        simulator.setBandwidth(1000);
+        simulator.addCommand("show log", "0123456789012345678901234567890123456789", 100);
+        CiscoSession s = login();
+
+        long start = System.nanoTime();
+        try {
+            s.cmd("show log", Duration.ofMillis(300));
+            fail("Output trickling in for 4s finished within the deadline");
+        } catch (SessionException expected) {
+            assertEquals("Deadline exceeded", expected.getCause().getMessage());
+        }
+        long elapsed = (System.nanoTime() - start) / 1000000;
+        assertTrue("failed after " + elapsed + "ms", elapsed >= 250 && elapsed < 2000);
+        s.close();
+    }
+
+    @Test
+    public void socket_timeout_is_restored_after_deadline() throws Exception {
+        simulator = new DeviceSimulator(DeviceSimulator.Vendor.CISCO);
+        simulator.setBandwidth(2000);
+        simulator.addCommand("show clock", "12:00:00");
+        simulator.addCommand("show log", "0123456789012345678901234567890123456789", 30);
+        CiscoSession s = login();
+
+        assertArrayEquals(new String[] {"12:00:00"}, s.cmd("show clock", Duration.ofMillis(500)));
+        Thread.sleep(600);
+        // Takes about 600ms, longer than the deadline of the previous command
+        long start = System.nanoTime();
+        assertEquals(30, s.cmd("show log").length);
+        assertTrue((System.nanoTime() - start) / 1000000 > 500);
+        assertEquals(5000, s.socket.getSoTimeout());
+        s.close();
+    }
+
+    @Test
+    public void responsive_host_without_prompt_fails_fast() throws Exception {
+        simulator = new DeviceSimulator(DeviceSimulator.Vendor.CISCO);
+        simulator.addCommand("show clock", "12:00:00");
+        simulator.addCommand("show log", "a\nb\nc", 10);
+        CiscoSession s = login();
+        s.setAdaptiveTimeout(true);
+        for (int i = 0; i < RttEstimator.MIN_SAMPLES; i++) {
+            s.cmd("show clock");
+        }
+
+        // Unanswered pager markers are not prompts, the output stops at the first page
+        s.setPagerPattern(null);
+        s.setWindowSize(80, 10);
+        long start = System.nanoTime();
+        try {
+            s.cmd("show log");
+            fail("Found a prompt in paged output");
+        } catch (SessionException expected) {
+            assertEquals("Read timed out", expected.getCause().getMessage());
+        }
+        long elapsed = (System.nanoTime() - start) / 1000000;
+        assertTrue("failed after " + elapsed + "ms", elapsed >= 900 && elapsed < 3000);
+        s.close();
+    }
+}
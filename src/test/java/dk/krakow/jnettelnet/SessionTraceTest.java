@@ -0,0 +1,175 @@
+package dk.krakow.jnettelnet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testcases for recording, dumping and reading session traces
+ */
+public class SessionTraceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void ring_keeps_the_newest_records() {
+        SessionTrace trace = new SessionTrace(1024);
+        for (int i = 0; i < 500; i++) {
+            byte[] data = ("record " + i).getBytes();
+            trace.record(SessionTrace.RX, data, 0, data.length);
+        }
+        List<SessionTrace.Record> records = trace.records();
+        assertTrue(records.size() > 10);
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals("record " + (500 - records.size() + i), new String(records.get(i).getData()));
+        }
+        assertTrue(records.get(0).getTime() <= records.get(records.size() - 1).getTime());
+    }
+
+    @Test
+    public void records_are_consistent_while_recording() throws Exception {
+        final SessionTrace trace = new SessionTrace(1024);
+        Thread session = new Thread() {
+            @Override
+            public void run() {
+                byte[] data = new byte[100];
+                for (int i = 0; i < 200000; i++) {
+                    int len = 1 + i % data.length;
+                    Arrays.fill(data, 0, len, (byte) i);
+                    trace.record(SessionTrace.RX, data, 0, len);
+                }
+            }
+        };
+        session.start();
+        while (session.isAlive()) {
+            List<SessionTrace.Record> records = trace.records();
+            for (int i = 0; i < records.size(); i++) {
+                byte[] data = records.get(i).getData();
+                int first = data[0] & 0xFF;
+                for (byte b : data) {
+                    assertEquals(first, b & 0xFF);
+                }
+                if (i > 0) {
+                    // No record is lost or torn in between
+                    assertEquals((records.get(i - 1).getData()[0] + 1) & 0xFF, first);
+                }
+            }
+        }
+        session.join();
+    }
+
+    @Test
+    public void dumps_are_consistent_while_recording() throws Exception {
+        final SessionTrace trace = new SessionTrace(1024);
+        Thread session = new Thread() {
+            @Override
+            public void run() {
+                byte[] data = new byte[64];
+                for (int i = 0; i < 200000; i++) {
+                    // The length follows from the content, so a length read from the wrong record shows
+                    int len = 1 + (i & 0xFF) % data.length;
+                    Arrays.fill(data, 0, len, (byte) i);
+                    trace.record(SessionTrace.TX, data, 0, len);
+                }
+            }
+        };
+        session.start();
+        while (session.isAlive()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            trace.dump(out);
+            List<SessionTrace.Record> records = SessionTrace.read(new ByteArrayInputStream(out.toByteArray()));
+            for (SessionTrace.Record record : records) {
+                byte[] data = record.getData();
+                int value = data[0] & 0xFF;
+                assertEquals(1 + value % 64, data.length);
+                for (byte b : data) {
+                    assertEquals(value, b & 0xFF);
+                }
+            }
+        }
+        session.join();
+    }
+
+    @Test
+    public void large_data_is_split() {
+        SessionTrace trace = new SessionTrace(4096);
+        byte[] data = new byte[2000];
+        trace.record(SessionTrace.TX, data, 0, data.length);
+        List<SessionTrace.Record> records = trace.records();
+        int total = 0;
+        for (SessionTrace.Record r : records) {
+            total += r.getData().length;
+        }
+        assertEquals(2, records.size());
+        assertEquals(2000, total);
+    }
+
+    @Test
+    public void session_traffic_is_recorded() throws Exception {
+        DeviceSimulator simulator = new DeviceSimulator(DeviceSimulator.Vendor.CISCO);
+        simulator.addCommand("show version", "Version 1.0");
+        int port = simulator.start();
+        try {
+            CiscoSession s = new CiscoSession("127.0.0.1", port);
+            SessionTrace trace = new SessionTrace();
+            s.setTrace(trace);
+            s.connect();
+            s.login("admin", "secret");
+            s.cmd("show version");
+            s.close();
+            StringBuilder rx = new StringBuilder();
+            StringBuilder tx = new StringBuilder();
+            boolean naws = false;
+            for (SessionTrace.Record r : trace.records()) {
+                if (r.getType() == SessionTrace.RX) rx.append(new String(r.getData(), "ISO-8859-1"));
+                if (r.getType() == SessionTrace.TX) tx.append(new String(r.getData(), "ISO-8859-1"));
+                if (r.getType() == SessionTrace.OPTION && r.getData()[0] == TelnetDecoder.OPT_NAWS) naws = true;
+            }
+            assertTrue(rx.toString().contains("Username: "));
+            assertTrue(rx.toString().contains("Version 1.0\r\nsim1>"));
+            assertTrue(tx.toString().contains("show version"));
+            assertTrue(naws);
+        } finally {
+            simulator.close();
+        }
+    }
+
+    @Test
+    public void trace_is_dumped_on_failure() throws Exception {
+        CiscoSession s = new CiscoSession("localhost", 23);
+        s.input = new ChunkedInputStream("show version\r\n", "Version 1.0\r\n");
+        s.output = new java.io.ByteArrayOutputStream();
+        SessionTrace trace = new SessionTrace();
+        trace.setDumpDirectory(folder.getRoot());
+        s.setTrace(trace);
+        try {
+            s.cmd("show version");
+            fail();
+        } catch (SessionException expected) {
+        }
+        File[] dumps = folder.getRoot().listFiles();
+        assertEquals(1, dumps.length);
+        assertTrue(dumps[0].getName().startsWith("localhost-"));
+
+        InputStream in = new FileInputStream(dumps[0]);
+        List<SessionTrace.Record> records = SessionTrace.read(in);
+        in.close();
+        assertEquals(4, records.size());
+        assertEquals(SessionTrace.TX, records.get(0).getType());
+        assertEquals("show version\r\n", new String(records.get(0).getData(), "ISO-8859-1"));
+        assertEquals("Version 1.0\r\n", new String(records.get(2).getData(), "ISO-8859-1"));
+        assertEquals(SessionTrace.EVENT, records.get(3).getType());
+        assertEquals("failed: Did not find Prompt in read data", new String(records.get(3).getData(), "UTF-8"));
+    }
+}
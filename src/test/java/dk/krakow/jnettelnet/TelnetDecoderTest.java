@@ -0,0 +1,95 @@
+package dk.krakow.jnettelnet;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testcases for the Telnet protocol decoder
+ */
+public class TelnetDecoderTest {
+
+    private static final int IAC = 255, SB = 250, SE = 240, WILL = 251, WONT = 252, DO = 253, DONT = 254;
+
+    private final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+    private final List<String> subnegotiations = new ArrayList<String>();
+    private final TelnetDecoder decoder = new TelnetDecoder(new TelnetDecoder.Listener() {
+        public boolean acceptLocal(int option) {
+            return option == 24;
+        }
+
+        public boolean acceptRemote(int option) {
+            return option == 1;
+        }
+
+        public void onOptionChanged(int option, boolean local, boolean enabled) {
+        }
+
+        public void onSubnegotiation(int option, byte[] data, int off, int len) {
+            subnegotiations.add(option + ":" + Arrays.toString(Arrays.copyOfRange(data, off, off + len)));
+        }
+
+        public void send(byte[] data, int off, int len) {
+            sent.write(data, off, len);
+        }
+    });
+
+    @Test
+    public void removes_commands_from_data() throws Exception {
+        assertEquals("abÿc", decode('a', IAC, 241, 'b', IAC, IAC, 'c'));
+        assertEquals("x\r\ny\rz", decode('x', '\r', '\n', 'y', '\r', 0, 'z'));
+    }
+
+    @Test
+    public void commands_split_across_buffers() throws Exception {
+        assertEquals("a", decode('a', IAC));
+        assertEquals("", decode(DO));
+        assertEquals("b", decode(24, 'b'));
+        assertArrayEquals(bytes(IAC, WILL, 24), sent.toByteArray());
+    }
+
+    @Test
+    public void subnegotiation_is_unescaped() throws Exception {
+        assertEquals("ab", decode('a', IAC, SB, 24, 1, IAC, IAC, 2, IAC, SE, 'b'));
+        assertEquals(Arrays.asList("24:[1, -1, 2]"), subnegotiations);
+    }
+
+    @Test
+    public void subnegotiation_sent_is_escaped() throws Exception {
+        decoder.sendSubnegotiation(31, bytes(2, 0, 255, 255));
+        assertArrayEquals(bytes(IAC, SB, 31, 2, 0, IAC, IAC, IAC, IAC, IAC, SE), sent.toByteArray());
+    }
+
+    @Test
+    public void negotiation_does_not_loop() throws Exception {
+        decode(IAC, DO, 5, IAC, WILL, 3, IAC, WILL, 1, IAC, WILL, 1);
+        assertArrayEquals(bytes(IAC, WONT, 5, IAC, DONT, 3, IAC, DO, 1), sent.toByteArray());
+        assertTrue(decoder.isRemoteEnabled(1));
+
+        // Our own request is acknowledged, and not answered
+        sent.reset();
+        decoder.requestLocal(31, true);
+        decode(IAC, DO, 31);
+        assertArrayEquals(bytes(IAC, WILL, 31), sent.toByteArray());
+        assertTrue(decoder.isLocalEnabled(31));
+    }
+
+    private String decode(int... data) throws Exception {
+        byte[] buf = bytes(data);
+        int n = decoder.decode(buf, 0, buf.length);
+        return new String(buf, 0, n, "ISO-8859-1");
+    }
+
+    private static byte[] bytes(int... data) {
+        byte[] buf = new byte[data.length];
+        for (int i = 0; i < data.length; i++) {
+            buf[i] = (byte) data[i];
+        }
+        return buf;
+    }
+}
@@ -0,0 +1,42 @@
+package dk.krakow.jnettelnet;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testcases for encoding lines sent to the remote host
+ */
+public class TelnetEncoderTest {
+
+    @Test
+    public void ascii_lines_are_appended() {
+        TelnetEncoder enc = new TelnetEncoder(Charset.forName("UTF-8"));
+        ByteBuffer buf = ByteBuffer.allocate(4);
+        buf = enc.encodeLine("show clock", buf);
+        buf = enc.encodeLine("", buf);
+        assertArrayEquals("show clock\r\n\r\n".getBytes(), bytes(buf));
+    }
+
+    @Test
+    public void iac_is_escaped() {
+        TelnetEncoder enc = new TelnetEncoder(Charset.forName("ISO-8859-1"));
+        ByteBuffer buf = enc.encodeLine("aÿb", ByteBuffer.allocate(16));
+        assertArrayEquals(new byte[] {'a', (byte) 0xFF, (byte) 0xFF, 'b', '\r', '\n'}, bytes(buf));
+    }
+
+    @Test
+    public void non_ascii_is_encoded() {
+        TelnetEncoder enc = new TelnetEncoder(Charset.forName("UTF-8"));
+        ByteBuffer buf = enc.encodeLine("description Køge", ByteBuffer.allocate(8));
+        assertArrayEquals("description Køge\r\n".getBytes(Charset.forName("UTF-8")), bytes(buf));
+    }
+
+    private static byte[] bytes(ByteBuffer buf) {
+        return Arrays.copyOf(buf.array(), buf.position());
+    }
+}
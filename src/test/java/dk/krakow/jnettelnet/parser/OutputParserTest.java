@@ -0,0 +1,190 @@
+package dk.krakow.jnettelnet.parser;
+
+import dk.krakow.jnettelnet.CiscoSession;
+import dk.krakow.jnettelnet.DeviceSimulator;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testcases for parsing show command output into records
+ */
+public class OutputParserTest {
+
+    private static <T> RecordHandler<T> into(final List<T> records) {
+        return new RecordHandler<T>() {
+            @Override
+            public void onRecord(T record) {
+                records.add(record);
+            }
+        };
+    }
+
+    private static void feed(OutputParser<?> parser, String... lines) throws IOException {
+        for (String line : lines) {
+            parser.onLine(line);
+        }
+        parser.finish();
+    }
+
+    @Test
+    public void tokenizer_splits_in_place() {
+        Tokenizer t = new Tokenizer();
+        t.reset("   1    0011.2233.4455    DYNAMIC     Gi0/1, Gi0/2\r");
+        assertEquals(3, t.indent());
+        assertTrue(t.next());
+        assertEquals(1, t.number());
+        assertTrue(t.next());
+        assertEquals(0x001122334455L, t.mac());
+        assertTrue(t.nextIs("DYNAMIC"));
+        String dynamic = t.token();
+        assertTrue(t.last());
+        assertEquals("Gi0/2", t.token());
+        assertFalse(t.next());
+        t.reset("2 DYNAMIC");
+        t.next();
+        assertEquals(-1, t.mac());
+        t.next();
+        assertSame(dynamic, t.token());
+        assertTrue(new Tokenizer().isBlank());
+    }
+
+    @Test
+    public void mac_table() throws Exception {
+        List<MacEntry> entries = new ArrayList<MacEntry>();
+        feed(new MacTableParser(into(entries)),
+                "          Mac Address Table",
+                "-------------------------------------------",
+                "",
+                "Vlan    Mac Address       Type        Ports",
+                "----    -----------       --------    -----",
+                " All    0100.0ccc.cccc    STATIC      CPU",
+                "   1    0011.2233.4455    DYNAMIC     Gi0/1",
+                "*  20  00:11:22:33:44:66   dynamic  Yes        0   Te1/1",
+                "Total Mac Addresses for this criterion: 3");
+        assertEquals(3, entries.size());
+        assertEquals(0, entries.get(0).getVlan());
+        assertEquals("CPU", entries.get(0).getPort());
+        assertEquals("0011.2233.4455", entries.get(1).getMacAddress());
+        assertEquals(20, entries.get(2).getVlan());
+        assertEquals("dynamic", entries.get(2).getType());
+        assertEquals("Te1/1", entries.get(2).getPort());
+    }
+
+    @Test
+    public void vlans() throws Exception {
+        List<VlanEntry> vlans = new ArrayList<VlanEntry>();
+        feed(new VlanParser(into(vlans)),
+                "VLAN Name                             Status    Ports",
+                "---- -------------------------------- --------- -------------------------------",
+                "1    default                          active    Gi0/1, Gi0/2, Gi0/3",
+                "                                                Gi0/4",
+                "10   users                            active    ",
+                "1002 fddi-default                     act/unsup ",
+                "",
+                "VLAN Type  SAID       MTU   Parent RingNo BridgeNo Stp  BrdgMode Trans1 Trans2",
+                "---- ----- ---------- ----- ------ ------ -------- ---- -------- ------ ------",
+                "1    enet  100001     1500  -      -      -        -    -        0      0");
+        assertEquals(3, vlans.size());
+        assertEquals(Arrays.asList("Gi0/1", "Gi0/2", "Gi0/3", "Gi0/4"), vlans.get(0).getPorts());
+        assertEquals("act/unsup", vlans.get(2).getStatus());
+        assertEquals("users", vlans.get(1).getName());
+        assertEquals("active", vlans.get(1).getStatus());
+        assertTrue(vlans.get(1).getPorts().isEmpty());
+    }
+
+    @Test
+    public void interfaces() throws Exception {
+        List<InterfaceEntry> interfaces = new ArrayList<InterfaceEntry>();
+        feed(new InterfaceParser(into(interfaces)),
+                "Vlan1 is administratively down, line protocol is down ",
+                "  Hardware is EtherSVI, address is 0011.2233.4440 (bia 0011.2233.4440)",
+                "  Internet address is 10.0.0.1/24",
+                "GigabitEthernet0/1 is up, line protocol is up (connected)",
+                "  Hardware is Gigabit Ethernet, address is 0011.2233.4401 (bia 0011.2233.4401)",
+                "  Description: uplink, to core",
+                "  MTU 1500 bytes, BW 1000000 Kbit/sec, DLY 10 usec,",
+                "     reliability 255/255, txload 1/255, rxload 1/255",
+                "  5 minute input rate 2000 bits/sec, 3 packets/sec",
+                "     1234567 packets input, 98765432 bytes, 0 no buffer",
+                "     Received 1234 broadcasts (1000 multicasts)",
+                "     5 input errors, 2 CRC, 0 frame, 0 overrun, 0 ignored",
+                "     0 watchdog, 1000 multicast, 0 pause input",
+                "     7654321 packets output, 12345678 bytes, 0 underruns",
+                "     1 output errors, 0 collisions, 3 interface resets");
+        assertEquals(2, interfaces.size());
+        InterfaceEntry vlan = interfaces.get(0);
+        assertEquals("administratively down", vlan.getStatus());
+        assertEquals("down", vlan.getProtocol());
+        assertEquals(-1, vlan.getMtu());
+        assertEquals(0x001122334440L, vlan.getMac());
+        InterfaceEntry gi = interfaces.get(1);
+        assertEquals("GigabitEthernet0/1", gi.getName());
+        assertEquals("up", gi.getStatus());
+        assertEquals("up", gi.getProtocol());
+        assertEquals("uplink, to core", gi.getDescription());
+        assertEquals(0x001122334401L, gi.getMac());
+        assertEquals(1500, gi.getMtu());
+        assertEquals(1000000, gi.getBandwidth());
+        assertEquals(1234567, gi.getInputPackets());
+        assertEquals(98765432, gi.getInputBytes());
+        assertEquals(5, gi.getInputErrors());
+        assertEquals(2, gi.getCrc());
+        assertEquals(7654321, gi.getOutputPackets());
+        assertEquals(12345678, gi.getOutputBytes());
+        assertEquals(1, gi.getOutputErrors());
+    }
+
+    @Test
+    public void version() throws Exception {
+        List<VersionInfo> info = new ArrayList<VersionInfo>();
+        feed(new VersionParser(into(info)),
+                "Cisco IOS Software, C2960 Software (C2960-LANBASEK9-M), Version 15.0(2)SE11, RELEASE SOFTWARE (fc3)",
+                "Technical Support: http://www.cisco.com/techsupport",
+                "sw1 uptime is 1 week, 2 days, 3 hours, 4 minutes",
+                "System returned to ROM by power-on",
+                "System image file is \"flash:/c2960-lanbasek9-mz.150-2.SE11.bin\"",
+                "cisco WS-C2960-24TT-L (PowerPC405) processor (revision B0) with 65536K bytes of memory.",
+                "Processor board ID FOC1234X5YZ",
+                "Model number                    : WS-C2960-24TT-L",
+                "System serial number            : FOC1234X5YZ");
+        assertEquals(1, info.size());
+        VersionInfo v = info.get(0);
+        assertEquals("15.0(2)SE11", v.getVersion());
+        assertEquals("sw1", v.getHostname());
+        assertEquals(9 * 86400 + 3 * 3600 + 4 * 60, v.getUptime());
+        assertEquals("flash:/c2960-lanbasek9-mz.150-2.SE11.bin", v.getImage());
+        assertEquals("WS-C2960-24TT-L", v.getModel());
+        assertEquals("FOC1234X5YZ", v.getSerialNumber());
+    }
+
+    @Test
+    public void records_are_streamed_from_session() throws Exception {
+        DeviceSimulator simulator = new DeviceSimulator(DeviceSimulator.Vendor.CISCO);
+        simulator.addCommand("show mac address-table",
+                "   1    0011.2233.4455    DYNAMIC     Gi0/1\n  20    0011.2233.4466    DYNAMIC     Gi0/2", 5000);
+        int port = simulator.start();
+        try {
+            CiscoSession s = new CiscoSession("127.0.0.1", port);
+            s.connect();
+            s.login("admin", "secret");
+            final int[] counts = new int[2];
+            new MacTableParser(new RecordHandler<MacEntry>() {
+                @Override
+                public void onRecord(MacEntry entry) {
+                    counts[entry.getVlan() == 1 ? 0 : 1]++;
+                }
+            }).parse(s);
+            s.close();
+            assertEquals(5000, counts[0]);
+            assertEquals(5000, counts[1]);
+        } finally {
+            simulator.close();
+        }
+    }
+}
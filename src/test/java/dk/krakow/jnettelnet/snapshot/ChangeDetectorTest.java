@@ -0,0 +1,91 @@
+package dk.krakow.jnettelnet.snapshot;
+
+import dk.krakow.jnettelnet.CiscoSession;
+import dk.krakow.jnettelnet.CommandCache;
+import dk.krakow.jnettelnet.DeviceSimulator;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testcases for skipping fetches of unchanged outputs
+ */
+public class ChangeDetectorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void unchanged_output_is_not_fetched() throws Exception {
+        DeviceSimulator simulator = new DeviceSimulator(DeviceSimulator.Vendor.CISCO);
+        simulator.addCommand(ChangeDetector.CISCO_PROBE, "! Last configuration change at 10:00:00 UTC Mon Oct 16 2026 by admin");
+        simulator.addCommand("show running-config", "! Last configuration change at 10:00:00 UTC Mon Oct 16 2026 by admin\n"
+                + "! NVRAM config last updated at 10:01:00 UTC Mon Oct 16 2026\nhostname sim1\nntp clock-period 17179840");
+        int port = simulator.start();
+        try {
+            CiscoSession s = new CiscoSession("127.0.0.1", port);
+            s.connect();
+            s.login("admin", "secret");
+            SnapshotStore store = new SnapshotStore(folder.getRoot());
+            ChangeDetector detector = new ChangeDetector(store);
+
+            Snapshot first = detector.fetch(s, "sim1", "show running-config");
+            assertEquals(Arrays.asList("hostname sim1", "ntp clock-period 17179840"), Arrays.asList(store.load(first)));
+            assertSame(first, detector.fetch(s, "sim1", "show running-config"));
+            assertEquals(1, detector.getFetched());
+            assertEquals(1, detector.getSkipped());
+
+            // Changed back and saved, only the volatile lines differ
+            simulator.addCommand(ChangeDetector.CISCO_PROBE, "! Last configuration change at 11:00:00 UTC Mon Oct 16 2026 by admin");
+            simulator.addCommand("show running-config", "! Last configuration change at 11:00:00 UTC Mon Oct 16 2026 by admin\n"
+                + "! NVRAM config last updated at 11:01:00 UTC Mon Oct 16 2026\nhostname sim1\nntp clock-period 17179840");
+            Snapshot second = detector.fetch(s, "sim1", "show running-config");
+            assertEquals(first.getHash(), second.getHash());
+            assertEquals(2, detector.getFetched());
+
+            simulator.addCommand(ChangeDetector.CISCO_PROBE, "! Last configuration change at 12:00:00 UTC Mon Oct 16 2026 by admin");
+            simulator.addCommand("show running-config", "hostname core1");
+            Snapshot third = detector.fetch(s, "sim1", "show running-config");
+            assertEquals(Arrays.asList("hostname core1"), Arrays.asList(store.load(third)));
+            assertSame(third, detector.fetch(s, "sim1", "show running-config"));
+            assertEquals(3, store.history("sim1", "show running-config").size());
+            s.close();
+            store.close();
+        } finally {
+            simulator.close();
+        }
+    }
+
+    @Test
+    public void probe_is_not_cached() throws Exception {
+        DeviceSimulator simulator = new DeviceSimulator(DeviceSimulator.Vendor.CISCO);
+        simulator.addCommand(ChangeDetector.CISCO_PROBE, "! Last configuration change at 10:00:00 UTC Mon Oct 16 2026 by admin");
+        simulator.addCommand("show running-config", "hostname sim1");
+        int port = simulator.start();
+        try {
+            CiscoSession s = new CiscoSession("127.0.0.1", port);
+            CommandCache cache = new CommandCache(1024 * 1024);
+            cache.setDefaultTtl(60000);
+            s.setCommandCache(cache);
+            s.connect();
+            s.login("admin", "secret");
+            SnapshotStore store = new SnapshotStore(folder.getRoot());
+            ChangeDetector detector = new ChangeDetector(store);
+
+            detector.fetch(s, "sim1", "show running-config");
+            simulator.addCommand(ChangeDetector.CISCO_PROBE, "! Last configuration change at 11:00:00 UTC Mon Oct 16 2026 by admin");
+            simulator.addCommand("show running-config", "hostname core1");
+            Snapshot changed = detector.fetch(s, "sim1", "show running-config");
+            assertEquals(Arrays.asList("hostname core1"), Arrays.asList(store.load(changed)));
+            assertEquals(2, detector.getFetched());
+            s.close();
+            store.close();
+        } finally {
+            simulator.close();
+        }
+    }
+}
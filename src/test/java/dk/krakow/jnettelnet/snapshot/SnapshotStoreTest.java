@@ -0,0 +1,117 @@
+package dk.krakow.jnettelnet.snapshot;
+
+import dk.krakow.jnettelnet.CiscoSession;
+import dk.krakow.jnettelnet.DeviceSimulator;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Testcases for storing, deduplicating and loading snapshots
+ */
+public class SnapshotStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static String[] config(int lines, String hostname) {
+        String[] config = new String[lines];
+        config[0] = "hostname " + hostname;
+        for (int i = 1; i < lines; i++) {
+            config[i] = "interface GigabitEthernet0/" + i + " description port " + i;
+        }
+        return config;
+    }
+
+    @Test
+    public void identical_output_is_stored_once() throws Exception {
+        SnapshotStore store = new SnapshotStore(folder.getRoot());
+        Snapshot a = store.store("sw1", "show running", config(500, "sw"));
+        Snapshot b = store.store("sw1", "show running", config(500, "sw"));
+        Snapshot c = store.store("sw2", "show running", config(500, "sw"));
+        assertEquals(a.getHash(), b.getHash());
+        assertEquals(a.getHash(), c.getHash());
+        assertEquals(1, store.getBlobCount());
+        assertEquals(2, store.history("sw1", "show running").size());
+        assertSame(c, store.latest("sw2", "show running"));
+        store.close();
+    }
+
+    @Test
+    public void changes_are_stored_as_deltas() throws Exception {
+        SnapshotStore store = new SnapshotStore(folder.getRoot());
+        store.setMaxDeltaChain(2);
+        String[] config = config(500, "sw1");
+        Snapshot first = store.store("sw1", "show running", config);
+        long full = store.getBlobBytes();
+        Snapshot[] versions = new Snapshot[5];
+        for (int i = 0; i < versions.length; i++) {
+            config = config.clone();
+            config[100 + i] = "interface GigabitEthernet0/" + i + " shutdown";
+            long before = store.getBlobBytes();
+            versions[i] = store.store("sw1", "show running", config);
+            if (i < 2) assertTrue(store.getBlobBytes() - before < full / 10);
+        }
+        assertEquals(6, store.getBlobCount());
+        assertArrayEquals(config(500, "sw1"), store.load(first));
+        assertArrayEquals(config, store.load(versions[4]));
+        store.close();
+    }
+
+    @Test
+    public void store_is_reopened() throws Exception {
+        File dir = folder.getRoot();
+        SnapshotStore store = new SnapshotStore(dir);
+        store.setMaxSegmentSize(100);
+        store.store("sw1", "show running", config(50, "sw1"));
+        Snapshot s = store.store("sw1", "show running", config(60, "sw1"));
+        store.store("sw2", "show running", config(50, "sw2"));
+        store.close();
+        assertTrue(new File(dir, "segment-000001.dat").exists());
+
+        // A record cut short by a crash is dropped
+        RandomAccessFile index = new RandomAccessFile(new File(dir, "index"), "rw");
+        index.setLength(index.length() - 3);
+        index.close();
+
+        store = new SnapshotStore(dir);
+        assertEquals(s.getHash(), store.latest("sw1", "show running").getHash());
+        assertArrayEquals(config(60, "sw1"), store.load(store.latest("sw1", "show running")));
+        assertNull(store.latest("sw2", "show running"));
+        Snapshot again = store.store("sw2", "show running", config(50, "sw2"));
+        assertEquals(3, store.getBlobCount());
+        store.close();
+
+        store = new SnapshotStore(dir);
+        assertArrayEquals(config(50, "sw2"), store.load(again));
+        store.close();
+    }
+
+    @Test
+    public void output_is_captured_from_session() throws Exception {
+        DeviceSimulator simulator = new DeviceSimulator(DeviceSimulator.Vendor.CISCO);
+        simulator.addCommand("show running", "hostname sim1\ninterface Vlan1\n ip address dhcp");
+        int port = simulator.start();
+        try {
+            CiscoSession s = new CiscoSession("127.0.0.1", port);
+            s.connect();
+            s.login("admin", "secret");
+            SnapshotStore store = new SnapshotStore(folder.getRoot());
+            Snapshot captured = store.capture(s, "sim1", "show running");
+            s.close();
+            String[] lines = {"hostname sim1", "interface Vlan1", " ip address dhcp"};
+            assertEquals(Arrays.asList(lines), Arrays.asList(store.load(captured)));
+            assertEquals(captured.getHash(), store.store("sim1", "show running", lines).getHash());
+            assertEquals(1, store.getBlobCount());
+            store.close();
+        } finally {
+            simulator.close();
+        }
+    }
+}